@@ -30,13 +30,18 @@ package org.opentelecoms.util.crypto;
 
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
-import java.util.logging.Logger;
+import java.util.logging.Level;
 
 import javax.net.ssl.X509TrustManager;
 
 public class AlwaysAcceptTrustManager implements X509TrustManager {
 	
-	Logger logger = Logger.getLogger(getClass().getName());
+	static final ThrottledLog.Event clientTrusted = ThrottledLog.event(AlwaysAcceptTrustManager.class,
+			Level.WARNING, "Trusting a client certificate without verification");
+	static final ThrottledLog.Event serverTrusted = ThrottledLog.event(AlwaysAcceptTrustManager.class,
+			Level.WARNING, "Trusting a server certificate without verification");
+	static final ThrottledLog.Event noIssuers = ThrottledLog.event(AlwaysAcceptTrustManager.class,
+			Level.WARNING, "Not returning any accepted issuer list");
 
 	public AlwaysAcceptTrustManager() {
 	}
@@ -44,20 +49,20 @@ public class AlwaysAcceptTrustManager implements X509TrustManager {
 	@Override
 	public void checkClientTrusted(X509Certificate[] arg0, String arg1)
 			throws CertificateException {
-		logger.warning("Trusting a client certificate without verification");
+		clientTrusted.log();
 	}
 
 	@Override
 	public void checkServerTrusted(X509Certificate[] arg0, String arg1)
 			throws CertificateException {
-		logger.warning("Trusting a server certificate without verification");
+		serverTrusted.log();
 		
 	}
 
 	@Override
 	public X509Certificate[] getAcceptedIssuers() {
 		// FIXME - should we return something here?
-		logger.warning("Not returning any accepted issuer list");
+		noIssuers.log();
 		return null;
 	}
 	
@@ -28,11 +28,16 @@
 
 package org.opentelecoms.util.crypto;
 
+import java.nio.ByteBuffer;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.net.ssl.TrustManager;
@@ -41,58 +46,251 @@ import javax.net.ssl.X509TrustManager;
 
 public class AppendingTrustManager implements X509TrustManager {
 	
-	Logger logger = Logger.getLogger(getClass().getName());
+	static final Logger logger = Logger.getLogger(AppendingTrustManager.class.getName());
+
+	static final ThrottledLog.Event clientTrustedLocally = ThrottledLog.event(AppendingTrustManager.class,
+			Level.INFO, "Trusting a client certificate based on local trust store");
+	static final ThrottledLog.Event serverTrustedLocally = ThrottledLog.event(AppendingTrustManager.class,
+			Level.INFO, "Trusting a server certificate based on local trust store");
+	static final ThrottledLog.Event notTrustedLocally = ThrottledLog.event(AppendingTrustManager.class,
+			Level.WARNING, "Not trusted locally either");
 	
+	/*
+	 * The local trust manager together with everything derived from the
+	 * two stores.  It is never modified, only replaced as a whole, so a
+	 * handshake always sees a consistent set.
+	 */
+	static final class TrustStores {
+		final X509TrustManager local;
+		final X509Certificate[] issuers;
+		final IssuerIndex index;
+
+		TrustStores(X509TrustManager tm, X509TrustManager local) {
+			this.local = local;
+			X509Certificate[] _a1 = tm.getAcceptedIssuers();
+			X509Certificate[] _a2 = local.getAcceptedIssuers();
+			Set<X509Certificate> _all = new LinkedHashSet<X509Certificate>();
+			if(_a1 != null)
+				_all.addAll(Arrays.asList(_a1));
+			if(_a2 != null)
+				_all.addAll(Arrays.asList(_a2));
+			issuers = _all.toArray(new X509Certificate[_all.size()]);
+			index = new IssuerIndex(_a1, _a2);
+		}
+	}
+
 	X509TrustManager _tm;
-	X509TrustManager _local;
+	volatile TrustStores _stores;
+	TrustVerdictCache _cache;
+	TrustManagerMetrics _metrics;
 	
 	public AppendingTrustManager(X509TrustManager tm, KeyStore ks) throws NoSuchAlgorithmException, KeyStoreException {
 		this._tm = tm;
-		
+		_stores = new TrustStores(_tm, localTrustManager(ks));
+	}
+
+	static X509TrustManager localTrustManager(KeyStore ks) throws NoSuchAlgorithmException, KeyStoreException {
 		TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
 		tmf.init(ks);
 		TrustManager[] tm2 = tmf.getTrustManagers();
-	    _local = (X509TrustManager)tm2[0];
+		return (X509TrustManager)tm2[0];
+	}
+
+	/**
+	 * Replace the local trust store.  The new trust manager is built in
+	 * the calling thread and then swapped in, so handshakes in progress
+	 * carry on with the old one and are never blocked.
+	 */
+	public void setLocalKeyStore(KeyStore ks) throws NoSuchAlgorithmException, KeyStoreException {
+		swap(localTrustManager(ks));
+	}
+
+	/**
+	 * Rebuild the accepted issuer list and issuer index, for example
+	 * after the platform trust store has changed.
+	 */
+	public void refresh() {
+		swap(_stores.local);
+	}
+
+	synchronized void swap(X509TrustManager local) {
+		_stores = new TrustStores(_tm, local);
+		TrustVerdictCache cache = _cache;
+		if(cache != null)
+			cache.clear();
+	}
+
+	/**
+	 * Remember the verdict for each chain in cache, so that a chain seen
+	 * again is not validated again until the verdict expires.
+	 */
+	public void setVerdictCache(TrustVerdictCache cache) {
+		this._cache = cache;
+	}
+
+	/**
+	 * Report the latency and outcome of every check to metrics.
+	 */
+	public void setMetrics(TrustManagerMetrics metrics) {
+		this._metrics = metrics;
 	}
 
 	@Override
 	public void checkClientTrusted(X509Certificate[] arg0, String arg1)
 			throws CertificateException {
+		check(arg0, arg1, true);
+	}
+
+	@Override
+	public void checkServerTrusted(X509Certificate[] arg0, String arg1)
+			throws CertificateException {
+		check(arg0, arg1, false);
+	}
+
+	private void check(X509Certificate[] chain, String authType, boolean client)
+			throws CertificateException {
+		TrustManagerMetrics metrics = _metrics;
+		if(metrics == null) {
+			cachedCheck(chain, authType, client, null);
+			return;
+		}
+		long start = System.nanoTime();
+		int source;
+		try {
+			source = cachedCheck(chain, authType, client, metrics);
+		} catch (CertificateException ce) {
+			metrics.rejected(client, ce, System.nanoTime() - start);
+			throw ce;
+		}
+		metrics.trusted(client, source, System.nanoTime() - start);
+	}
+
+	/**
+	 * @return the TrustManagerMetrics source that trusted the chain
+	 */
+	private int cachedCheck(X509Certificate[] chain, String authType, boolean client,
+			TrustManagerMetrics metrics) throws CertificateException {
+		TrustVerdictCache cache = _cache;
+		if(cache == null)
+			return doCheck(chain, authType, client);
+		ByteBuffer key = cache.key(chain, authType, client);
+		boolean hit;
+		try {
+			hit = cache.check(key);
+		} catch (CertificateException ce) {
+			if(metrics != null)
+				metrics.cacheLookup(true);
+			throw ce;
+		}
+		if(metrics != null)
+			metrics.cacheLookup(hit);
+		if(hit)
+			return TrustManagerMetrics.CACHE;
+		// taken before doCheck() reads _stores, so that a verdict from
+		// stores that swap() has since replaced is not kept
+		long generation = cache.generation();
+		int source;
+		try {
+			source = doCheck(chain, authType, client);
+		} catch (CertificateException ce) {
+			cache.rejected(key, ce, generation);
+			throw ce;
+		}
+		cache.trusted(key, chain, generation);
+		return source;
+	}
+
+	private int doCheck(X509Certificate[] chain, String authType, boolean client)
+			throws CertificateException {
+		boolean local = client ? doCheckClientTrusted(chain, authType) :
+				doCheckServerTrusted(chain, authType);
+		return local ? TrustManagerMetrics.LOCAL : TrustManagerMetrics.PRIMARY;
+	}
+
+	/*
+	 * Chains issued by a CA that is only in the local store go to _local
+	 * first, so that they don't pay for a failed validation against _tm.
+	 *
+	 * Returns true if the chain was trusted by _local.
+	 */
+	boolean doCheckClientTrusted(X509Certificate[] arg0, String arg1)
+			throws CertificateException {
+		TrustStores s = _stores;
+		X509TrustManager _local = s.local;
+		if(s.index.route(arg0) == IssuerIndex.LOCAL) {
+			try {
+				_local.checkClientTrusted(arg0, arg1);
+				clientTrustedLocally.log();
+				return true;
+			} catch (CertificateException ce) {
+				try {
+					_tm.checkClientTrusted(arg0, arg1);
+					return false;
+				} catch (CertificateException ce2) {
+					throw ce;
+				}
+			}
+		}
 		try {
 			_tm.checkClientTrusted(arg0, arg1);
+			return false;
 		} catch (CertificateException ce) {
 			_local.checkClientTrusted(arg0, arg1);
-			logger.info("Trusting a client certificate based on local trust store");
+			clientTrustedLocally.log();
+			return true;
 		}
 	}
 
-	@Override
-	public void checkServerTrusted(X509Certificate[] arg0, String arg1)
+	boolean doCheckServerTrusted(X509Certificate[] arg0, String arg1)
 			throws CertificateException {
+		TrustStores s = _stores;
+		X509TrustManager _local = s.local;
+		if(s.index.route(arg0) == IssuerIndex.LOCAL) {
+			try {
+				_local.checkServerTrusted(arg0, arg1);
+				serverTrustedLocally.log();
+				return true;
+			} catch (CertificateException ce) {
+				try {
+					_tm.checkServerTrusted(arg0, arg1);
+					return false;
+				} catch (CertificateException ce2) {
+					notTrustedLocally.log(ce.getMessage());
+					throw ce;
+				}
+			}
+		}
 		try {
 			_tm.checkServerTrusted(arg0, arg1);
+			return false;
 		} catch (CertificateException ce) {
 			try {
 				_local.checkServerTrusted(arg0, arg1);
-				logger.info("Trusting a server certificate based on local trust store");
+				serverTrustedLocally.log();
+				return true;
 			} catch (CertificateException ce2) {
-				logger.warning("Not trusted locally either: " + ce2.getMessage());
+				notTrustedLocally.log(ce2.getMessage());
 				throw ce2;
 			}
 		}
 	}
 
+	/**
+	 * Returns the issuers of both trust stores without duplicates, in a
+	 * new array as the JDK's trust managers do.  The merged list itself
+	 * is only rebuilt when the stores change.
+	 */
 	@Override
 	public X509Certificate[] getAcceptedIssuers() {
-		X509Certificate[] _a1 = _tm.getAcceptedIssuers();
-		X509Certificate[] _a2 = _local.getAcceptedIssuers();
-		int count = _a1.length + _a2.length;
-		X509Certificate[] _all = new X509Certificate[count];
-		for(int i = 0; i < _a1.length; i++)
-			_all[i] = _a1[i];
-		for(int i = 0; i < _a2.length; i++)
-			_all[_a1.length + i] = _a2[i];
-		return _all;
+		return _stores.issuers.clone();
+	}
+
+	/*
+	 * The merged issuers of the current stores, shared and not to be
+	 * modified.  A new array is returned once the stores are swapped.
+	 */
+	X509Certificate[] issuers() {
+		return _stores.issuers;
 	}
 	
 }
@@ -0,0 +1,252 @@
+/*
+ *  A TrustManager that authenticates servers with their DNS TLSA
+ *  records (DANE, RFC 6698) and uses another TrustManager for servers
+ *  that don't publish any
+ *
+ *  Copyright 2026 agent <agent@local>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opentelecoms.util.crypto;
+
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.cert.CertPathValidator;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.PKIXParameters;
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Logger;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.X509ExtendedTrustManager;
+import javax.net.ssl.X509TrustManager;
+
+import org.opentelecoms.util.dns.TLSAAssociation;
+import org.opentelecoms.util.dns.TLSACache;
+
+/**
+ * Checks server chains against the TLSA records of the endpoint, found
+ * at _port._tcp.host where host and port are those of the connection
+ * (the SRV target, when SRV records were used).  Create the
+ * {@link org.opentelecoms.util.dns.SRVRecordHelper} with the same
+ * TLSACache so the records are already cached when the handshake
+ * starts.
+ *
+ * A chain is trusted if it satisfies any usable record:
+ * <ul>
+ * <li>DANE-EE (3): the leaf matches; nothing else is checked</li>
+ * <li>DANE-TA (2): a certificate in the chain matches and the chain
+ * validates up to it; the host name must match the leaf</li>
+ * <li>PKIX-EE (1) and PKIX-TA (0): the fallback trust manager trusts
+ * the chain and the leaf, or a CA certificate in the chain, matches</li>
+ * </ul>
+ * If the endpoint publishes usable records and none is satisfied the
+ * chain is rejected.  Endpoints without records, client chains and
+ * checks without a connection go to the fallback, typically an
+ * {@link AppendingTrustManager}.  So does an endpoint whose TLSA lookup
+ * failed, as dnsjava can't tell a failure from an attack, and one whose
+ * records were not authenticated with DNSSEC, which the TLSACache
+ * reports as having none.  When the fallback is a plain
+ * X509TrustManager the peer host is matched against the leaf, as JSSE
+ * would do, if the connection asks for endpoint identification.
+ */
+public class DANETrustManager extends X509ExtendedTrustManager {
+
+	Logger logger = Logger.getLogger(getClass().getName());
+
+	final TLSACache cache;
+	final X509TrustManager fallback;
+
+	public DANETrustManager(TLSACache cache, X509TrustManager fallback) {
+		this.cache = cache;
+		this.fallback = fallback;
+	}
+
+	@Override
+	public void checkClientTrusted(X509Certificate[] chain, String authType)
+			throws CertificateException {
+		fallback.checkClientTrusted(chain, authType);
+	}
+
+	@Override
+	public void checkServerTrusted(X509Certificate[] chain, String authType)
+			throws CertificateException {
+		fallback.checkServerTrusted(chain, authType);
+	}
+
+	@Override
+	public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket)
+			throws CertificateException {
+		EndpointIdentity.checkClientTrusted(fallback, chain, authType, socket);
+	}
+
+	@Override
+	public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine)
+			throws CertificateException {
+		EndpointIdentity.checkClientTrusted(fallback, chain, authType, engine);
+	}
+
+	@Override
+	public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket)
+			throws CertificateException {
+		SSLSession session = socket instanceof SSLSocket ?
+				((SSLSocket)socket).getHandshakeSession() : null;
+		checkServer(chain, authType, session, socket, null);
+	}
+
+	@Override
+	public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine)
+			throws CertificateException {
+		SSLSession session = engine == null ? null : engine.getHandshakeSession();
+		checkServer(chain, authType, session, null, engine);
+	}
+
+	@Override
+	public X509Certificate[] getAcceptedIssuers() {
+		return fallback.getAcceptedIssuers();
+	}
+
+	private void checkServer(X509Certificate[] chain, String authType, SSLSession session,
+			Socket socket, SSLEngine engine) throws CertificateException {
+		String host = session == null ? null : session.getPeerHost();
+		int port = session == null ? -1 : session.getPeerPort();
+		List<TLSAAssociation> records = null;
+		// an address literal has no TLSA records
+		if(host != null && port > 0 && !EndpointIdentity.isLiteral(host)) {
+			try {
+				records = cache.lookup(port, "tcp", host);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new CertificateException("Interrupted during TLSA lookup for " + host);
+			}
+		}
+		if(records == null || !checkDANE(chain, authType, host, records, socket, engine))
+			checkFallback(chain, authType, socket, engine);
+	}
+
+	/**
+	 * @return true if the chain satisfies a record, false if there are
+	 *         no usable records
+	 * @throws CertificateException if there are usable records and the
+	 *         chain satisfies none of them
+	 */
+	boolean checkDANE(X509Certificate[] chain, String authType, String host,
+			List<TLSAAssociation> records, Socket socket, SSLEngine engine)
+			throws CertificateException {
+		if(chain == null || chain.length == 0)
+			throw new CertificateException("Empty chain");
+		boolean usable = false;
+		/* the fallback's verdict, computed once for the PKIX usages */
+		CertificateException pkixFailure = null;
+		boolean pkixChecked = false;
+		for(TLSAAssociation r : records) {
+			if(r.getUsage() > TLSAAssociation.DANE_EE || r.getSelector() > TLSAAssociation.SPKI
+					|| r.getMatchingType() > TLSAAssociation.SHA512)
+				continue;
+			usable = true;
+			switch(r.getUsage()) {
+			case TLSAAssociation.DANE_EE:
+				if(matches(r, chain[0]))
+					return true;
+				break;
+			case TLSAAssociation.DANE_TA:
+				for(int i = 1; i < chain.length; i++) {
+					if(matches(r, chain[i]) && validates(chain, i)) {
+						EndpointIdentity.verifyHost(chain[0], host);
+						return true;
+					}
+				}
+				break;
+			default:
+				boolean matched = false;
+				if(r.getUsage() == TLSAAssociation.PKIX_EE) {
+					matched = matches(r, chain[0]);
+				} else {
+					for(int i = 1; i < chain.length && !matched; i++)
+						matched = matches(r, chain[i]);
+				}
+				if(!matched)
+					break;
+				if(!pkixChecked) {
+					pkixChecked = true;
+					try {
+						checkFallback(chain, authType, socket, engine);
+					} catch (CertificateException ce) {
+						pkixFailure = ce;
+					}
+				}
+				if(pkixFailure == null)
+					return true;
+			}
+		}
+		if(!usable)
+			return false;
+		if(pkixFailure != null)
+			throw pkixFailure;
+		throw new CertificateException("No TLSA record for " + host + " matches the certificate chain");
+	}
+
+	static boolean matches(TLSAAssociation r, X509Certificate cert) throws CertificateException {
+		byte[] selected = r.getSelector() == TLSAAssociation.CERT ?
+				cert.getEncoded() : cert.getPublicKey().getEncoded();
+		try {
+			switch(r.getMatchingType()) {
+			case TLSAAssociation.SHA256:
+				selected = MessageDigest.getInstance("SHA-256").digest(selected);
+				break;
+			case TLSAAssociation.SHA512:
+				selected = MessageDigest.getInstance("SHA-512").digest(selected);
+				break;
+			}
+		} catch (GeneralSecurityException ex) {
+			throw new CertificateException(ex);
+		}
+		return r.matches(selected);
+	}
+
+	/*
+	 * Validates chain[0, anchor) with chain[anchor] as the trust anchor.
+	 */
+	private boolean validates(X509Certificate[] chain, int anchor) {
+		try {
+			PKIXParameters params = new PKIXParameters(
+					Collections.singleton(new TrustAnchor(chain[anchor], null)));
+			params.setRevocationEnabled(false);
+			CertPathValidator.getInstance("PKIX").validate(
+					CertificateFactory.getInstance("X.509").generateCertPath(
+							Arrays.asList(chain).subList(0, anchor)), params);
+			return true;
+		} catch (GeneralSecurityException ex) {
+			logger.fine("Chain does not validate to the DANE-TA certificate: " + ex.getMessage());
+			return false;
+		}
+	}
+
+	private void checkFallback(X509Certificate[] chain, String authType, Socket socket,
+			SSLEngine engine) throws CertificateException {
+		if(socket != null)
+			EndpointIdentity.checkServerTrusted(fallback, chain, authType, socket);
+		else
+			EndpointIdentity.checkServerTrusted(fallback, chain, authType, engine);
+	}
+}
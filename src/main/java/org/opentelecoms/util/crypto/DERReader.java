@@ -0,0 +1,126 @@
+/*
+ *  A minimal reader for the DER encoded structures found in
+ *  certificate extensions and OCSP responses
+ *
+ *  Copyright 2026 agent <agent@local>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opentelecoms.util.crypto;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Walks the elements of one level of a DER encoding.  next() reads the
+ * tag and length of the following element, after which its content is
+ * buf[start, start + length); enter() returns a reader for the content
+ * of a constructed element.
+ *
+ * Only the definite-length, single byte tag forms used by X.509 and
+ * OCSP are supported.
+ */
+final class DERReader {
+
+	static final int INTEGER = 0x02;
+	static final int BIT_STRING = 0x03;
+	static final int OCTET_STRING = 0x04;
+	static final int OID = 0x06;
+	static final int ENUMERATED = 0x0a;
+	static final int GENERALIZED_TIME = 0x18;
+	static final int SEQUENCE = 0x30;
+	static final int CONTEXT_0 = 0xa0;
+	static final int CONTEXT_1 = 0xa1;
+
+	final byte[] buf;
+	final int end;
+	int pos;
+	int tag;
+	int start;
+	int length;
+
+	DERReader(byte[] buf) {
+		this(buf, 0, buf.length);
+	}
+
+	DERReader(byte[] buf, int offset, int end) {
+		this.buf = buf;
+		this.pos = offset;
+		this.end = end;
+	}
+
+	/**
+	 * Reads the header of the next element and moves past it.
+	 *
+	 * @return false if there are no more elements at this level
+	 */
+	boolean next() throws IOException {
+		if(pos >= end)
+			return false;
+		if(end - pos < 2)
+			throw new IOException("truncated DER element");
+		tag = buf[pos++] & 0xff;
+		if((tag & 0x1f) == 0x1f)
+			throw new IOException("multi-byte DER tags are not supported");
+		int len = buf[pos++] & 0xff;
+		if(len >= 0x80) {
+			int n = len & 0x7f;
+			if(n == 0 || n > 3 || end - pos < n)
+				throw new IOException("unsupported DER length");
+			len = 0;
+			for(int i = 0; i < n; i++)
+				len = (len << 8) | (buf[pos++] & 0xff);
+		}
+		if(len > end - pos)
+			throw new IOException("truncated DER element");
+		start = pos;
+		length = len;
+		pos += len;
+		return true;
+	}
+
+	/**
+	 * Reads the next element and checks its tag.
+	 */
+	void expect(int expectedTag) throws IOException {
+		if(!next() || tag != expectedTag)
+			throw new IOException("expected DER tag " + Integer.toHexString(expectedTag));
+	}
+
+	/**
+	 * @return a reader for the content of the current element
+	 */
+	DERReader enter() {
+		return new DERReader(buf, start, start + length);
+	}
+
+	/**
+	 * @return a copy of the content of the current element
+	 */
+	byte[] content() {
+		return Arrays.copyOfRange(buf, start, start + length);
+	}
+
+	/**
+	 * Unwraps the OCTET STRING returned by X509Certificate.getExtensionValue().
+	 *
+	 * @return a reader positioned before the extension's own value
+	 */
+	static DERReader extension(byte[] value) throws IOException {
+		DERReader r = new DERReader(value);
+		r.expect(OCTET_STRING);
+		return r.enter();
+	}
+}
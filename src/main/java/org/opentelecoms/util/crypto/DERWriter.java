@@ -0,0 +1,56 @@
+/*
+ *  Builds the small DER structures needed for OCSP requests
+ *
+ *  Copyright 2026 agent <agent@local>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opentelecoms.util.crypto;
+
+/**
+ * Encodes DER elements, the counterpart of {@link DERReader}.
+ */
+final class DERWriter {
+
+	private DERWriter() {
+	}
+
+	/**
+	 * @return the element with the given tag whose content is the
+	 *         concatenation of contents
+	 */
+	static byte[] encode(int tag, byte[]... contents) {
+		int len = 0;
+		for(byte[] c : contents)
+			len += c.length;
+		int header = len < 0x80 ? 2 : (len < 0x100 ? 3 : (len < 0x10000 ? 4 : 5));
+		byte[] out = new byte[header + len];
+		out[0] = (byte)tag;
+		if(len < 0x80) {
+			out[1] = (byte)len;
+		} else {
+			int n = header - 2;
+			out[1] = (byte)(0x80 | n);
+			for(int i = 0; i < n; i++)
+				out[2 + i] = (byte)(len >>> (8 * (n - 1 - i)));
+		}
+		int pos = header;
+		for(byte[] c : contents) {
+			System.arraycopy(c, 0, out, pos, c.length);
+			pos += c.length;
+		}
+		return out;
+	}
+}
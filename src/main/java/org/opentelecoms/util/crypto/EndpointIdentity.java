@@ -0,0 +1,224 @@
+/*
+ *  Endpoint identification for trust managers that wrap a plain
+ *  X509TrustManager
+ *
+ *  Copyright 2026 agent <agent@local>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opentelecoms.util.crypto;
+
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateParsingException;
+import java.security.cert.X509Certificate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+import javax.naming.InvalidNameException;
+import javax.naming.ldap.LdapName;
+import javax.naming.ldap.Rdn;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.X509ExtendedTrustManager;
+import javax.net.ssl.X509TrustManager;
+
+/**
+ * JSSE leaves endpoint identification to an X509ExtendedTrustManager,
+ * so one that passes a connection on to a plain X509TrustManager, such
+ * as {@link AppendingTrustManager}, must do it itself, as JSSE does when
+ * it wraps a plain trust manager: when the SSLParameters of the
+ * connection name an endpoint identification algorithm, the peer host
+ * of the session is matched against the leaf certificate.  The check
+ * methods here do that for a plain delegate and pass the connection on
+ * to an extended one, which identifies the endpoint itself.
+ */
+final class EndpointIdentity {
+
+	private static final int SAN_DNS = 2;
+	private static final int SAN_IP = 7;
+
+	private EndpointIdentity() {
+	}
+
+	static void checkClientTrusted(X509TrustManager tm, X509Certificate[] chain,
+			String authType, Socket socket) throws CertificateException {
+		if(tm instanceof X509ExtendedTrustManager) {
+			((X509ExtendedTrustManager)tm).checkClientTrusted(chain, authType, socket);
+			return;
+		}
+		tm.checkClientTrusted(chain, authType);
+		check(chain, handshakeSession(socket), algorithm(socket));
+	}
+
+	static void checkServerTrusted(X509TrustManager tm, X509Certificate[] chain,
+			String authType, Socket socket) throws CertificateException {
+		if(tm instanceof X509ExtendedTrustManager) {
+			((X509ExtendedTrustManager)tm).checkServerTrusted(chain, authType, socket);
+			return;
+		}
+		tm.checkServerTrusted(chain, authType);
+		check(chain, handshakeSession(socket), algorithm(socket));
+	}
+
+	static void checkClientTrusted(X509TrustManager tm, X509Certificate[] chain,
+			String authType, SSLEngine engine) throws CertificateException {
+		if(tm instanceof X509ExtendedTrustManager) {
+			((X509ExtendedTrustManager)tm).checkClientTrusted(chain, authType, engine);
+			return;
+		}
+		tm.checkClientTrusted(chain, authType);
+		check(chain, handshakeSession(engine), algorithm(engine));
+	}
+
+	static void checkServerTrusted(X509TrustManager tm, X509Certificate[] chain,
+			String authType, SSLEngine engine) throws CertificateException {
+		if(tm instanceof X509ExtendedTrustManager) {
+			((X509ExtendedTrustManager)tm).checkServerTrusted(chain, authType, engine);
+			return;
+		}
+		tm.checkServerTrusted(chain, authType);
+		check(chain, handshakeSession(engine), algorithm(engine));
+	}
+
+	static SSLSession handshakeSession(Socket socket) {
+		if(socket instanceof SSLSocket && socket.isConnected())
+			return ((SSLSocket)socket).getHandshakeSession();
+		return null;
+	}
+
+	static SSLSession handshakeSession(SSLEngine engine) {
+		return engine == null ? null : engine.getHandshakeSession();
+	}
+
+	static String algorithm(Socket socket) {
+		if(socket instanceof SSLSocket)
+			return ((SSLSocket)socket).getSSLParameters().getEndpointIdentificationAlgorithm();
+		return null;
+	}
+
+	static String algorithm(SSLEngine engine) {
+		return engine == null ? null : engine.getSSLParameters().getEndpointIdentificationAlgorithm();
+	}
+
+	/**
+	 * Matches the peer host of session against the leaf if algorithm is
+	 * set.  Both HTTPS and LDAPS are treated the same way.
+	 */
+	static void check(X509Certificate[] chain, SSLSession session, String algorithm)
+			throws CertificateException {
+		if(algorithm == null || algorithm.length() == 0 || session == null)
+			return;
+		String host = session.getPeerHost();
+		if(host == null)
+			throw new CertificateException("No peer host for endpoint identification");
+		if(chain == null || chain.length == 0)
+			throw new CertificateException("Empty chain");
+		verifyHost(chain[0], host);
+	}
+
+	/**
+	 * Matches host against the DNS and IP address subject alternative
+	 * names of the leaf, falling back to the most specific CN when there
+	 * are no DNS names.  A wildcard may only be the whole leftmost label.
+	 */
+	static void verifyHost(X509Certificate leaf, String host) throws CertificateException {
+		if(host.startsWith("[") && host.endsWith("]"))
+			host = host.substring(1, host.length() - 1);
+		boolean literal = isLiteral(host);
+		boolean hasDNS = false;
+		Collection<List<?>> names = subjectAltNames(leaf);
+		if(names != null) {
+			for(List<?> san : names) {
+				int type = ((Integer)san.get(0)).intValue();
+				String value = (String)san.get(1);
+				if(literal && type == SAN_IP && sameAddress(host, value))
+					return;
+				if(type == SAN_DNS) {
+					hasDNS = true;
+					if(!literal && matchName(host, value))
+						return;
+				}
+			}
+		}
+		if(!literal && !hasDNS) {
+			String cn = commonName(leaf.getSubjectX500Principal().getName());
+			if(cn != null && matchName(host, cn))
+				return;
+		}
+		throw new CertificateException("No name matching " + host + " found");
+	}
+
+	/**
+	 * @return true if host is an IPv4 or IPv6 address literal
+	 */
+	static boolean isLiteral(String host) {
+		return host.indexOf(':') >= 0 || host.matches("[0-9.]+");
+	}
+
+	private static Collection<List<?>> subjectAltNames(X509Certificate cert)
+			throws CertificateException {
+		try {
+			return cert.getSubjectAlternativeNames();
+		} catch (CertificateParsingException ex) {
+			throw new CertificateException(ex);
+		}
+	}
+
+	private static boolean sameAddress(String host, String value) {
+		try {
+			return InetAddress.getByName(host).equals(InetAddress.getByName(value));
+		} catch (UnknownHostException ex) {
+			// both are literals, so this can't happen
+			return false;
+		}
+	}
+
+	static boolean matchName(String host, String name) {
+		host = host.toLowerCase(Locale.ENGLISH);
+		name = name.toLowerCase(Locale.ENGLISH);
+		if(host.endsWith("."))
+			host = host.substring(0, host.length() - 1);
+		if(name.endsWith("."))
+			name = name.substring(0, name.length() - 1);
+		if(!name.startsWith("*."))
+			return host.equals(name);
+		// the wildcard covers exactly one label and not a public suffix alone
+		String suffix = name.substring(1);
+		if(suffix.indexOf('.', 1) < 0)
+			return false;
+		int dot = host.indexOf('.');
+		return dot > 0 && host.substring(dot).equals(suffix);
+	}
+
+	private static String commonName(String subject) {
+		try {
+			List<Rdn> rdns = new LdapName(subject).getRdns();
+			// getRdns() is ordered from the least to the most specific
+			for(int i = rdns.size() - 1; i >= 0; i--) {
+				Rdn rdn = rdns.get(i);
+				if(rdn.getType().equalsIgnoreCase("CN"))
+					return rdn.getValue().toString();
+			}
+		} catch (InvalidNameException ex) {
+			// fall through
+		}
+		return null;
+	}
+}
@@ -0,0 +1,242 @@
+/*
+ *  Fetches OCSP responses and CRLs over HTTP, from the locations given
+ *  in each certificate or from configured URLs
+ *
+ *  Copyright 2026 agent <agent@local>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opentelecoms.util.crypto;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+
+/**
+ * Queries the OCSP responder named in the certificate's Authority
+ * Information Access extension and downloads the CRL named in its CRL
+ * Distribution Points extension.  Either location can be overridden,
+ * for example to point at a local stand-in responder in tests or at an
+ * internal mirror.
+ */
+public class HttpRevocationFetcher implements RevocationFetcher {
+
+	public static final int DEFAULT_TIMEOUT = 5000;
+
+	/* Largest OCSP response or CRL that will be read */
+	static final int MAX_RESPONSE_SIZE = 16 * 1024 * 1024;
+
+	private static final String AUTHORITY_INFO_ACCESS = "1.3.6.1.5.5.7.1.1";
+	private static final String CRL_DISTRIBUTION_POINTS = "2.5.29.31";
+	/* id-ad-ocsp 1.3.6.1.5.5.7.48.1 */
+	private static final byte[] ID_AD_OCSP = { 0x2b, 0x06, 0x01, 0x05, 0x05, 0x07, 0x30, 0x01 };
+	/* AlgorithmIdentifier for SHA-1 with NULL parameters */
+	private static final byte[] SHA1_ALGORITHM = {
+		0x30, 0x09, 0x06, 0x05, 0x2b, 0x0e, 0x03, 0x02, 0x1a, 0x05, 0x00 };
+	/* GeneralName uniformResourceIdentifier [6] IMPLICIT IA5String */
+	private static final int URI_TAG = 0x86;
+
+	private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+	URL ocspResponder;
+	URL crlLocation;
+	int timeout = DEFAULT_TIMEOUT;
+
+	/**
+	 * Send every OCSP request to responder instead of the location in
+	 * the certificate.
+	 */
+	public void setOCSPResponderURL(URL responder) {
+		this.ocspResponder = responder;
+	}
+
+	/**
+	 * Download every CRL from location instead of the location in the
+	 * certificate.
+	 */
+	public void setCRLURL(URL location) {
+		this.crlLocation = location;
+	}
+
+	/**
+	 * @param timeout the connect and read timeout, in milliseconds
+	 */
+	public void setTimeout(int timeout) {
+		this.timeout = timeout;
+	}
+
+	@Override
+	public byte[] fetchOCSPResponse(X509Certificate cert, X509Certificate issuer) throws IOException {
+		URL url = ocspResponder;
+		if(url == null) {
+			String location = ocspLocation(cert);
+			if(location == null)
+				return null;
+			url = new URL(location);
+		}
+		byte[] request = ocspRequest(cert, issuer);
+		HttpURLConnection conn = (HttpURLConnection)url.openConnection();
+		try {
+			conn.setConnectTimeout(timeout);
+			conn.setReadTimeout(timeout);
+			conn.setDoOutput(true);
+			conn.setRequestMethod("POST");
+			conn.setRequestProperty("Content-Type", "application/ocsp-request");
+			conn.setRequestProperty("Accept", "application/ocsp-response");
+			conn.setFixedLengthStreamingMode(request.length);
+			OutputStream out = conn.getOutputStream();
+			try {
+				out.write(request);
+			} finally {
+				out.close();
+			}
+			return read(conn);
+		} finally {
+			conn.disconnect();
+		}
+	}
+
+	@Override
+	public byte[] fetchCRL(X509Certificate cert, X509Certificate issuer) throws IOException {
+		URL url = crlLocation;
+		if(url == null) {
+			String location = crlLocation(cert);
+			if(location == null)
+				return null;
+			url = new URL(location);
+		}
+		HttpURLConnection conn = (HttpURLConnection)url.openConnection();
+		try {
+			conn.setConnectTimeout(timeout);
+			conn.setReadTimeout(timeout);
+			return read(conn);
+		} finally {
+			conn.disconnect();
+		}
+	}
+
+	private static byte[] read(HttpURLConnection conn) throws IOException {
+		if(conn.getResponseCode() != HttpURLConnection.HTTP_OK)
+			throw new IOException("HTTP " + conn.getResponseCode() + " from " + conn.getURL());
+		InputStream in = conn.getInputStream();
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buf = new byte[8192];
+			int n;
+			while((n = in.read(buf)) > 0) {
+				out.write(buf, 0, n);
+				if(out.size() > MAX_RESPONSE_SIZE)
+					throw new IOException("response too large from " + conn.getURL());
+			}
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Builds an OCSPRequest (RFC 6960) for a single certificate,
+	 * identified by SHA-1 hashes of the issuer's name and key.
+	 */
+	static byte[] ocspRequest(X509Certificate cert, X509Certificate issuer) throws IOException {
+		MessageDigest sha1;
+		try {
+			sha1 = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IOException(ex);
+		}
+		byte[] nameHash = sha1.digest(issuer.getSubjectX500Principal().getEncoded());
+
+		// SubjectPublicKeyInfo ::= SEQUENCE { algorithm, subjectPublicKey BIT STRING }
+		DERReader spki = new DERReader(issuer.getPublicKey().getEncoded());
+		spki.expect(DERReader.SEQUENCE);
+		spki = spki.enter();
+		spki.expect(DERReader.SEQUENCE);
+		spki.expect(DERReader.BIT_STRING);
+		// skip the unused bits byte
+		sha1.update(spki.buf, spki.start + 1, spki.length - 1);
+		byte[] keyHash = sha1.digest();
+
+		byte[] certId = DERWriter.encode(DERReader.SEQUENCE,
+			SHA1_ALGORITHM,
+			DERWriter.encode(DERReader.OCTET_STRING, nameHash),
+			DERWriter.encode(DERReader.OCTET_STRING, keyHash),
+			DERWriter.encode(DERReader.INTEGER, cert.getSerialNumber().toByteArray()));
+		byte[] request = DERWriter.encode(DERReader.SEQUENCE, certId);
+		byte[] requestList = DERWriter.encode(DERReader.SEQUENCE, request);
+		byte[] tbsRequest = DERWriter.encode(DERReader.SEQUENCE, requestList);
+		return DERWriter.encode(DERReader.SEQUENCE, tbsRequest);
+	}
+
+	/**
+	 * @return the first OCSP responder URI in the Authority Information
+	 *         Access extension, or null
+	 */
+	static String ocspLocation(X509Certificate cert) throws IOException {
+		byte[] ext = cert.getExtensionValue(AUTHORITY_INFO_ACCESS);
+		if(ext == null)
+			return null;
+		// AuthorityInfoAccessSyntax ::= SEQUENCE OF AccessDescription
+		// AccessDescription ::= SEQUENCE { accessMethod OID, accessLocation GeneralName }
+		DERReader r = DERReader.extension(ext);
+		r.expect(DERReader.SEQUENCE);
+		DERReader list = r.enter();
+		while(list.next()) {
+			DERReader ad = list.enter();
+			ad.expect(DERReader.OID);
+			boolean ocsp = Arrays.equals(ad.content(), ID_AD_OCSP);
+			if(ocsp && ad.next() && ad.tag == URI_TAG)
+				return new String(ad.content(), US_ASCII);
+		}
+		return null;
+	}
+
+	/**
+	 * @return the first URI in the CRL Distribution Points extension, or null
+	 */
+	static String crlLocation(X509Certificate cert) throws IOException {
+		byte[] ext = cert.getExtensionValue(CRL_DISTRIBUTION_POINTS);
+		if(ext == null)
+			return null;
+		// CRLDistributionPoints ::= SEQUENCE OF DistributionPoint
+		// DistributionPoint ::= SEQUENCE { distributionPoint [0] DistributionPointName OPTIONAL, ... }
+		// DistributionPointName ::= CHOICE { fullName [0] GeneralNames, ... }
+		DERReader r = DERReader.extension(ext);
+		r.expect(DERReader.SEQUENCE);
+		DERReader list = r.enter();
+		while(list.next()) {
+			DERReader dp = list.enter();
+			if(!dp.next() || dp.tag != DERReader.CONTEXT_0)
+				continue;
+			DERReader dpName = dp.enter();
+			if(!dpName.next() || dpName.tag != DERReader.CONTEXT_0)
+				continue;
+			DERReader names = dpName.enter();
+			while(names.next()) {
+				if(names.tag == URI_TAG)
+					return new String(names.content(), US_ASCII);
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,126 @@
+/*
+ *  An index of the accepted issuers of two trust managers, used to
+ *  send each chain straight to the trust manager that can anchor it
+ *
+ *  Copyright 2026 agent <agent@local>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opentelecoms.util.crypto;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.cert.X509Certificate;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.security.auth.x500.X500Principal;
+
+/**
+ * Maps the subject DN and subject key identifier of every accepted
+ * issuer to the trust manager(s) it came from.  A chain is routed by
+ * looking up the issuer DN and authority key identifier of each
+ * certificate, starting from the top of the chain.
+ *
+ * The index is immutable once built.
+ */
+final class IssuerIndex {
+
+	static final int NONE = 0;
+	static final int PRIMARY = 1;
+	static final int LOCAL = 2;
+	static final int BOTH = PRIMARY | LOCAL;
+
+	private static final String SUBJECT_KEY_IDENTIFIER = "2.5.29.14";
+	private static final String AUTHORITY_KEY_IDENTIFIER = "2.5.29.35";
+
+	final Map<X500Principal, Integer> bySubject = new HashMap<X500Principal, Integer>();
+	final Map<ByteBuffer, Integer> byKeyId = new HashMap<ByteBuffer, Integer>();
+
+	IssuerIndex(X509Certificate[] primary, X509Certificate[] local) {
+		add(primary, PRIMARY);
+		add(local, LOCAL);
+	}
+
+	private void add(X509Certificate[] issuers, int owner) {
+		if(issuers == null)
+			return;
+		for(X509Certificate cert : issuers) {
+			merge(bySubject, cert.getSubjectX500Principal(), owner);
+			ByteBuffer keyId = subjectKeyId(cert);
+			if(keyId != null)
+				merge(byKeyId, keyId, owner);
+		}
+	}
+
+	private static <K> void merge(Map<K, Integer> map, K key, int owner) {
+		Integer old = map.get(key);
+		map.put(key, Integer.valueOf(old == null ? owner : (old.intValue() | owner)));
+	}
+
+	/**
+	 * @return PRIMARY or LOCAL if only that trust manager holds an
+	 *         issuer of the chain, otherwise NONE or BOTH
+	 */
+	int route(X509Certificate[] chain) {
+		if(chain == null)
+			return NONE;
+		for(int i = chain.length - 1; i >= 0; i--) {
+			X509Certificate cert = chain[i];
+			ByteBuffer keyId = authorityKeyId(cert);
+			if(keyId != null) {
+				Integer owner = byKeyId.get(keyId);
+				if(owner != null)
+					return owner.intValue();
+			}
+			Integer owner = bySubject.get(cert.getIssuerX500Principal());
+			if(owner != null)
+				return owner.intValue();
+		}
+		return NONE;
+	}
+
+	static ByteBuffer subjectKeyId(X509Certificate cert) {
+		byte[] ext = cert.getExtensionValue(SUBJECT_KEY_IDENTIFIER);
+		if(ext == null)
+			return null;
+		try {
+			// SubjectKeyIdentifier ::= KeyIdentifier ::= OCTET STRING
+			DERReader r = DERReader.extension(ext);
+			r.expect(DERReader.OCTET_STRING);
+			return ByteBuffer.wrap(r.content());
+		} catch (IOException ex) {
+			return null;
+		}
+	}
+
+	static ByteBuffer authorityKeyId(X509Certificate cert) {
+		byte[] ext = cert.getExtensionValue(AUTHORITY_KEY_IDENTIFIER);
+		if(ext == null)
+			return null;
+		try {
+			// AuthorityKeyIdentifier ::= SEQUENCE {
+			//     keyIdentifier [0] IMPLICIT KeyIdentifier OPTIONAL, ... }
+			DERReader r = DERReader.extension(ext);
+			r.expect(DERReader.SEQUENCE);
+			DERReader seq = r.enter();
+			if(seq.next() && seq.tag == 0x80)
+				return ByteBuffer.wrap(seq.content());
+		} catch (IOException ex) {
+			// treat a malformed extension as absent
+		}
+		return null;
+	}
+}
@@ -0,0 +1,239 @@
+/*
+ *  A TrustManager that accepts known peers by the SHA-256 fingerprint
+ *  of their certificate and passes everyone else to another
+ *  TrustManager
+ *
+ *  Copyright 2026 agent <agent@local>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opentelecoms.util.crypto;
+
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import javax.net.ssl.ExtendedSSLSession;
+import javax.net.ssl.SNIHostName;
+import javax.net.ssl.SNIServerName;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.X509ExtendedTrustManager;
+import javax.net.ssl.X509TrustManager;
+
+/**
+ * Accepts a chain for a pinned host if the SHA-256 fingerprint of its
+ * leaf certificate is one of the pins for that host, without any PKIX
+ * validation.  A pinned host presenting any other certificate is
+ * rejected.  Chains for hosts without pins go to the delegate, for
+ * example an {@link AppendingTrustManager}.
+ *
+ * The host is the SNI name of the connection: the name sent by this
+ * side when checking a server, or the name requested by the client
+ * when checking a client.  When checking a server without SNI the peer
+ * host of the session is used.  The two argument check methods have no
+ * connection, so they always use the delegate.  When the delegate is a
+ * plain X509TrustManager, the peer host is matched against the leaf
+ * here if the connection asks for endpoint identification, as JSSE
+ * would do for the delegate on its own.
+ *
+ * The fingerprint of each certificate is remembered, so a certificate
+ * object that is seen again is not hashed again.
+ */
+public class PinningTrustManager extends X509ExtendedTrustManager {
+
+	final X509TrustManager delegate;
+	/* Replaced as a whole when pins change, never modified */
+	volatile Map<String, Set<ByteBuffer>> pins = Collections.emptyMap();
+	final Map<X509Certificate, ByteBuffer> fingerprints =
+			new WeakHashMap<X509Certificate, ByteBuffer>();
+
+	public PinningTrustManager(X509TrustManager delegate) {
+		this.delegate = delegate;
+	}
+
+	/**
+	 * Adds a pin for host.
+	 *
+	 * @param sha256 the SHA-256 digest of the DER encoded leaf certificate
+	 */
+	public synchronized void addPin(String host, byte[] sha256) {
+		if(sha256.length != 32)
+			throw new IllegalArgumentException("a SHA-256 pin is 32 bytes");
+		String key = host.toLowerCase(Locale.ENGLISH);
+		Map<String, Set<ByteBuffer>> _pins = new HashMap<String, Set<ByteBuffer>>(pins);
+		Set<ByteBuffer> set = new HashSet<ByteBuffer>();
+		Set<ByteBuffer> old = _pins.get(key);
+		if(old != null)
+			set.addAll(old);
+		set.add(ByteBuffer.wrap(sha256.clone()));
+		_pins.put(key, set);
+		pins = _pins;
+	}
+
+	/**
+	 * Adds a pin for host, given as hex digits optionally separated by
+	 * colons, as printed by keytool and openssl.
+	 */
+	public void addPin(String host, String sha256) {
+		String hex = sha256.replace(":", "");
+		if(hex.length() != 64)
+			throw new IllegalArgumentException("a SHA-256 pin is 64 hex digits");
+		byte[] b = new byte[32];
+		for(int i = 0; i < b.length; i++)
+			b[i] = (byte)Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+		addPin(host, b);
+	}
+
+	/**
+	 * Removes all the pins for host, so it goes to the delegate again.
+	 */
+	public synchronized void removePins(String host) {
+		Map<String, Set<ByteBuffer>> _pins = new HashMap<String, Set<ByteBuffer>>(pins);
+		_pins.remove(host.toLowerCase(Locale.ENGLISH));
+		pins = _pins;
+	}
+
+	ByteBuffer fingerprint(X509Certificate cert) throws CertificateException {
+		ByteBuffer fp;
+		synchronized(fingerprints) {
+			fp = fingerprints.get(cert);
+		}
+		if(fp == null) {
+			fp = TrustVerdictCache.fingerprint(cert);
+			synchronized(fingerprints) {
+				fingerprints.put(cert, fp);
+			}
+		}
+		return fp;
+	}
+
+	/**
+	 * @return true if host is pinned and the leaf matches a pin
+	 * @throws CertificateException if host is pinned and the leaf
+	 *         doesn't match
+	 */
+	boolean checkPinned(X509Certificate[] chain, String host) throws CertificateException {
+		if(host == null)
+			return false;
+		Set<ByteBuffer> hostPins = pins.get(host.toLowerCase(Locale.ENGLISH));
+		if(hostPins == null)
+			return false;
+		if(chain == null || chain.length == 0)
+			throw new CertificateException("Empty chain for pinned host " + host);
+		if(!hostPins.contains(fingerprint(chain[0])))
+			throw new CertificateException("Certificate for " + host + " does not match its pins");
+		chain[0].checkValidity();
+		return true;
+	}
+
+	@Override
+	public void checkClientTrusted(X509Certificate[] chain, String authType)
+			throws CertificateException {
+		delegate.checkClientTrusted(chain, authType);
+	}
+
+	@Override
+	public void checkServerTrusted(X509Certificate[] chain, String authType)
+			throws CertificateException {
+		delegate.checkServerTrusted(chain, authType);
+	}
+
+	@Override
+	public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket)
+			throws CertificateException {
+		SSLSession session = socket instanceof SSLSocket ?
+				((SSLSocket)socket).getHandshakeSession() : null;
+		if(checkPinned(chain, requestedHost(session)))
+			return;
+		EndpointIdentity.checkClientTrusted(delegate, chain, authType, socket);
+	}
+
+	@Override
+	public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket)
+			throws CertificateException {
+		String host = null;
+		if(socket instanceof SSLSocket) {
+			SSLSocket s = (SSLSocket)socket;
+			host = sniHost(s.getSSLParameters(), s.getHandshakeSession());
+		}
+		if(checkPinned(chain, host))
+			return;
+		EndpointIdentity.checkServerTrusted(delegate, chain, authType, socket);
+	}
+
+	@Override
+	public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine)
+			throws CertificateException {
+		if(checkPinned(chain, requestedHost(engine == null ? null : engine.getHandshakeSession())))
+			return;
+		EndpointIdentity.checkClientTrusted(delegate, chain, authType, engine);
+	}
+
+	@Override
+	public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine)
+			throws CertificateException {
+		String host = engine == null ? null :
+				sniHost(engine.getSSLParameters(), engine.getHandshakeSession());
+		if(checkPinned(chain, host))
+			return;
+		EndpointIdentity.checkServerTrusted(delegate, chain, authType, engine);
+	}
+
+	/*
+	 * The name this client sends in SNI, or the host it connected to.
+	 */
+	private static String sniHost(SSLParameters params, SSLSession session) {
+		String host = hostName(params.getServerNames());
+		if(host == null && session != null)
+			host = session.getPeerHost();
+		return host;
+	}
+
+	/*
+	 * The name the client asked this server for.
+	 */
+	private static String requestedHost(SSLSession session) {
+		if(session instanceof ExtendedSSLSession)
+			return hostName(((ExtendedSSLSession)session).getRequestedServerNames());
+		return null;
+	}
+
+	private static String hostName(List<SNIServerName> names) {
+		if(names == null)
+			return null;
+		for(SNIServerName name : names) {
+			if(name instanceof SNIHostName)
+				return ((SNIHostName)name).getAsciiName();
+		}
+		return null;
+	}
+
+	@Override
+	public X509Certificate[] getAcceptedIssuers() {
+		return delegate.getAcceptedIssuers();
+	}
+}
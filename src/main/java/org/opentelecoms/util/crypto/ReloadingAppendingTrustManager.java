@@ -0,0 +1,147 @@
+/*
+ *  An AppendingTrustManager whose local KeyStore is read from a file
+ *  and reloaded whenever the file changes, without building a new
+ *  SSLContext
+ *
+ *  Copyright 2026 agent <agent@local>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opentelecoms.util.crypto;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.X509TrustManager;
+
+/**
+ * Polls a KeyStore file and, when its size or modification time
+ * changes, loads it and swaps the new local trust store in with
+ * {@link AppendingTrustManager#setLocalKeyStore(KeyStore)}.  The
+ * loading is done on a background thread, so handshakes never wait for
+ * it.  A KeyStore can also be pushed at any time with setLocalKeyStore().
+ *
+ * If the file can't be read or parsed (for example while it is being
+ * rewritten) the previous trust store stays in use and the file is
+ * tried again at the next poll.
+ */
+public class ReloadingAppendingTrustManager extends AppendingTrustManager {
+
+	public static final long DEFAULT_POLL_INTERVAL = 30 * 1000L;
+
+	private static final ThreadFactory daemonThreads = new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "ReloadingAppendingTrustManager");
+			t.setDaemon(true);
+			return t;
+		}
+	};
+
+	final File file;
+	final String type;
+	final char[] password;
+	final ScheduledExecutorService executor;
+	final ScheduledFuture<?> poller;
+	long lastModified;
+	long lastLength;
+
+	public ReloadingAppendingTrustManager(X509TrustManager tm, File file, String type,
+			char[] password) throws GeneralSecurityException, IOException {
+		this(tm, file, type, password, DEFAULT_POLL_INTERVAL);
+	}
+
+	/**
+	 * @param tm the platform trust manager
+	 * @param file the KeyStore file holding the local CAs
+	 * @param type the KeyStore type, for example "JKS"
+	 * @param password the KeyStore password, or null
+	 * @param pollInterval how often to check the file, in milliseconds
+	 */
+	public ReloadingAppendingTrustManager(X509TrustManager tm, File file, String type,
+			char[] password, long pollInterval) throws GeneralSecurityException, IOException {
+		this(tm, file, type, password, pollInterval, stat(file));
+	}
+
+	/*
+	 * stat is taken before the file is loaded, so that a rewrite landing
+	 * in between is seen as a change by the next poll.
+	 */
+	private ReloadingAppendingTrustManager(X509TrustManager tm, File file, String type,
+			char[] password, long pollInterval, long[] stat) throws GeneralSecurityException, IOException {
+		super(tm, load(file, type, password));
+		this.file = file;
+		this.type = type;
+		this.password = password == null ? null : password.clone();
+		lastModified = stat[0];
+		lastLength = stat[1];
+		executor = Executors.newSingleThreadScheduledExecutor(daemonThreads);
+		poller = executor.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				poll();
+			}
+		}, pollInterval, pollInterval, TimeUnit.MILLISECONDS);
+	}
+
+	static KeyStore load(File file, String type, char[] password)
+			throws GeneralSecurityException, IOException {
+		KeyStore ks = KeyStore.getInstance(type);
+		InputStream in = new FileInputStream(file);
+		try {
+			ks.load(in, password);
+		} finally {
+			in.close();
+		}
+		return ks;
+	}
+
+	private static long[] stat(File file) {
+		return new long[] { file.lastModified(), file.length() };
+	}
+
+	/**
+	 * Reloads the file if it has changed since it was last loaded.  The
+	 * file is looked at before it is loaded, as in the constructor.
+	 */
+	void poll() {
+		long[] stat = stat(file);
+		if(stat[0] == lastModified && stat[1] == lastLength)
+			return;
+		try {
+			setLocalKeyStore(load(file, type, password));
+			lastModified = stat[0];
+			lastLength = stat[1];
+			logger.info("Reloaded local trust store from " + file);
+		} catch (Exception ex) {
+			logger.warning("Failed to reload local trust store from " + file + ": " + ex.getMessage());
+		}
+	}
+
+	/**
+	 * Stops watching the file.  The trust store last loaded stays in use.
+	 */
+	public void close() {
+		poller.cancel(false);
+		executor.shutdown();
+	}
+}
@@ -0,0 +1,586 @@
+/*
+ *  Caches OCSP responses and CRLs in memory and on disk, for as long
+ *  as they are valid, and refreshes them in the background
+ *
+ *  Copyright 2026 agent <agent@local>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opentelecoms.util.crypto;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertPath;
+import java.security.cert.CertPathValidator;
+import java.security.cert.CertPathValidatorException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.PKIXParameters;
+import java.security.cert.PKIXRevocationChecker;
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import javax.security.auth.x500.X500Principal;
+
+/**
+ * Holds the revocation status of certificates, taken from OCSP
+ * responses (stapled or fetched) or from the CRL of their issuer.
+ *
+ * Every response is verified before it is used: OCSP responses with a
+ * PKIXRevocationChecker anchored at the issuer, CRLs with the issuer's
+ * public key.  Each is kept until its nextUpdate time, or for
+ * defaultValidity if it has none.  When a directory is given, the
+ * verified responses are also written there, so a restart begins with
+ * a warm cache.  The directory is listed once, when the cache is
+ * created, and each file in it is read at most once, on the first
+ * lookup of its certificate or issuer; a file that is expired or can't
+ * be verified then is not read again.
+ *
+ * {@link #status(X509Certificate, X509Certificate)} never does network
+ * I/O: on a miss it queues a fetch and returns UNKNOWN.  A background
+ * task fetches each entry again once three quarters of its validity
+ * has passed, and forgets entries that have not been used for
+ * idleTimeout.
+ */
+public class RevocationCache {
+
+	public static final int GOOD = 0;
+	public static final int REVOKED = 1;
+	public static final int UNKNOWN = 2;
+
+	public static final long DEFAULT_VALIDITY = 3600 * 1000L;
+	public static final long DEFAULT_IDLE_TIMEOUT = 24 * 3600 * 1000L;
+	public static final long DEFAULT_REFRESH_INTERVAL = 60 * 1000L;
+
+	private static final ThreadFactory daemonThreads = new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "RevocationCache");
+			t.setDaemon(true);
+			return t;
+		}
+	};
+
+	static class Entry {
+		final X509Certificate cert;
+		final X509Certificate issuer;
+		final byte[] encoded;
+		final X509CRL crl;
+		final boolean revoked;
+		final long fetchedAt;
+		final long expires;
+		volatile long lastUsed;
+
+		Entry(X509Certificate cert, X509Certificate issuer, byte[] encoded, X509CRL crl,
+				boolean revoked, long fetchedAt, long expires) {
+			this.cert = cert;
+			this.issuer = issuer;
+			this.encoded = encoded;
+			this.crl = crl;
+			this.revoked = revoked;
+			this.fetchedAt = fetchedAt;
+			this.expires = expires;
+			this.lastUsed = fetchedAt;
+		}
+
+		boolean refreshDue(long now) {
+			return now >= fetchedAt + (expires - fetchedAt) * 3 / 4;
+		}
+	}
+
+	Logger logger = Logger.getLogger(getClass().getName());
+
+	final RevocationFetcher fetcher;
+	final File dir;
+	final long defaultValidity;
+	final long idleTimeout;
+	final Map<ByteBuffer, Entry> ocsp = new HashMap<ByteBuffer, Entry>();
+	final Map<X500Principal, Entry> crls = new HashMap<X500Principal, Entry>();
+	final Set<Object> pending = new HashSet<Object>();
+	/* The files in dir that have not been read yet */
+	final Set<String> persisted = new HashSet<String>();
+	final ScheduledExecutorService executor;
+
+	public RevocationCache(RevocationFetcher fetcher, File dir) {
+		this(fetcher, dir, DEFAULT_VALIDITY, DEFAULT_IDLE_TIMEOUT, DEFAULT_REFRESH_INTERVAL);
+	}
+
+	/**
+	 * @param fetcher the source of OCSP responses and CRLs
+	 * @param dir the directory to keep responses in, or null to only
+	 *        keep them in memory
+	 * @param defaultValidity how long to keep a response that has no
+	 *        nextUpdate time, in milliseconds
+	 * @param idleTimeout how long to keep refreshing an entry that is
+	 *        not being used, in milliseconds
+	 * @param refreshInterval how often to look for entries to refresh,
+	 *        in milliseconds
+	 */
+	public RevocationCache(RevocationFetcher fetcher, File dir, long defaultValidity,
+			long idleTimeout, long refreshInterval) {
+		this.fetcher = fetcher;
+		this.dir = dir;
+		this.defaultValidity = defaultValidity;
+		this.idleTimeout = idleTimeout;
+		if(dir != null) {
+			dir.mkdirs();
+			String[] names = dir.list();
+			if(names != null) {
+				for(String name : names) {
+					if(name.endsWith(".der"))
+						persisted.add(name);
+				}
+			}
+		}
+		executor = Executors.newScheduledThreadPool(2, daemonThreads);
+		executor.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				refresh();
+			}
+		}, refreshInterval, refreshInterval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Looks up the status of cert in memory and then on disk.  On a
+	 * miss a fetch is queued and UNKNOWN is returned.
+	 *
+	 * @return GOOD, REVOKED or UNKNOWN
+	 */
+	public int status(X509Certificate cert, X509Certificate issuer) {
+		int status = cached(cert, issuer);
+		if(status == UNKNOWN)
+			fetchLater(cert, issuer);
+		return status;
+	}
+
+	/**
+	 * Looks up the status of cert and, on a miss, fetches it in the
+	 * calling thread.
+	 *
+	 * @return GOOD, REVOKED or UNKNOWN if no usable response could be
+	 *         obtained
+	 */
+	public int fetch(X509Certificate cert, X509Certificate issuer) {
+		int status = cached(cert, issuer);
+		if(status == UNKNOWN)
+			status = doFetch(cert, issuer);
+		return status;
+	}
+
+	/**
+	 * Verifies an OCSP response stapled by the peer and, if it is
+	 * usable, caches it.
+	 *
+	 * @return GOOD, REVOKED or UNKNOWN if the response is not usable
+	 */
+	public int staple(X509Certificate cert, X509Certificate issuer, byte[] response) {
+		try {
+			Entry e = ocspEntry(cert, issuer, response);
+			if(e == null)
+				return UNKNOWN;
+			putOCSP(e, true);
+			return e.revoked ? REVOKED : GOOD;
+		} catch (GeneralSecurityException ex) {
+			logger.fine("Ignoring stapled OCSP response: " + ex.getMessage());
+			return UNKNOWN;
+		}
+	}
+
+	private int cached(X509Certificate cert, X509Certificate issuer) {
+		long now = System.currentTimeMillis();
+		ByteBuffer key;
+		try {
+			key = TrustVerdictCache.fingerprint(cert);
+		} catch (CertificateEncodingException ex) {
+			return UNKNOWN;
+		}
+		X500Principal issuerName = issuer.getSubjectX500Principal();
+		Entry e;
+		Entry c;
+		synchronized(this) {
+			e = ocsp.get(key);
+			c = crls.get(issuerName);
+		}
+		if(e == null && dir != null) {
+			e = loadOCSP(cert, issuer);
+		}
+		if(e != null && e.expires > now) {
+			e.lastUsed = now;
+			return e.revoked ? REVOKED : GOOD;
+		}
+		if(c == null && dir != null) {
+			c = loadCRL(cert, issuer);
+		}
+		if(c != null && c.expires > now && c.issuer.equals(issuer)) {
+			c.lastUsed = now;
+			return c.crl.isRevoked(cert) ? REVOKED : GOOD;
+		}
+		return UNKNOWN;
+	}
+
+	private void fetchLater(final X509Certificate cert, final X509Certificate issuer) {
+		synchronized(this) {
+			if(!pending.add(cert))
+				return;
+		}
+		executor.execute(new Runnable() {
+			public void run() {
+				try {
+					doFetch(cert, issuer);
+				} finally {
+					synchronized(RevocationCache.this) {
+						pending.remove(cert);
+					}
+				}
+			}
+		});
+	}
+
+	/*
+	 * OCSP is tried first as the response is small; the CRL is the
+	 * fallback when there is no responder or its answer isn't usable.
+	 */
+	int doFetch(X509Certificate cert, X509Certificate issuer) {
+		try {
+			byte[] response = fetcher.fetchOCSPResponse(cert, issuer);
+			if(response != null) {
+				Entry e = ocspEntry(cert, issuer, response);
+				if(e != null) {
+					putOCSP(e, true);
+					return e.revoked ? REVOKED : GOOD;
+				}
+			}
+		} catch (IOException ex) {
+			logger.fine("OCSP fetch failed for " + cert.getSubjectX500Principal() + ": " + ex.getMessage());
+		} catch (GeneralSecurityException ex) {
+			logger.warning("Unusable OCSP response for " + cert.getSubjectX500Principal() + ": " + ex.getMessage());
+		}
+		try {
+			byte[] encoded = fetcher.fetchCRL(cert, issuer);
+			if(encoded != null) {
+				Entry c = crlEntry(cert, issuer, encoded);
+				putCRL(c, true);
+				return c.crl.isRevoked(cert) ? REVOKED : GOOD;
+			}
+		} catch (IOException ex) {
+			logger.fine("CRL fetch failed for " + cert.getSubjectX500Principal() + ": " + ex.getMessage());
+		} catch (GeneralSecurityException ex) {
+			logger.warning("Unusable CRL from " + issuer.getSubjectX500Principal() + ": " + ex.getMessage());
+		}
+		return UNKNOWN;
+	}
+
+	/**
+	 * @return the verified entry, or null if the responder doesn't know
+	 *         the certificate
+	 * @throws GeneralSecurityException if the response can't be verified
+	 */
+	Entry ocspEntry(X509Certificate cert, X509Certificate issuer, byte[] response)
+			throws GeneralSecurityException {
+		boolean revoked = false;
+		CertPathValidator cpv = CertPathValidator.getInstance("PKIX");
+		PKIXRevocationChecker rc = (PKIXRevocationChecker)cpv.getRevocationChecker();
+		rc.setOptions(EnumSet.of(PKIXRevocationChecker.Option.ONLY_END_ENTITY,
+				PKIXRevocationChecker.Option.NO_FALLBACK));
+		rc.setOcspResponses(Collections.singletonMap(cert, response));
+		PKIXParameters params = new PKIXParameters(
+				Collections.singleton(new TrustAnchor(issuer, null)));
+		// the checker added below is used regardless of this flag
+		params.setRevocationEnabled(false);
+		params.addCertPathChecker(rc);
+		CertPath path = CertificateFactory.getInstance("X.509").generateCertPath(
+				Collections.singletonList(cert));
+		try {
+			cpv.validate(path, params);
+		} catch (CertPathValidatorException ex) {
+			if(ex.getReason() == CertPathValidatorException.BasicReason.REVOKED)
+				revoked = true;
+			else if(ex.getReason() == CertPathValidatorException.BasicReason.UNDETERMINED_REVOCATION_STATUS)
+				return null;
+			else
+				throw ex;
+		}
+		long now = System.currentTimeMillis();
+		long nextUpdate = -1;
+		try {
+			nextUpdate = nextUpdate(response);
+		} catch (IOException ex) {
+			// the checker accepted it, so only the time is missing
+		}
+		long expires = nextUpdate > now ? nextUpdate : now + defaultValidity;
+		return new Entry(cert, issuer, response, null, revoked, now, expires);
+	}
+
+	/**
+	 * @param cert the certificate whose distribution point the CRL came
+	 *        from, used again to refresh it
+	 * @throws GeneralSecurityException if the CRL wasn't signed by issuer
+	 */
+	Entry crlEntry(X509Certificate cert, X509Certificate issuer, byte[] encoded) throws GeneralSecurityException {
+		X509CRL crl = (X509CRL)CertificateFactory.getInstance("X.509").generateCRL(
+				new ByteArrayInputStream(encoded));
+		if(!crl.getIssuerX500Principal().equals(issuer.getSubjectX500Principal()))
+			throw new GeneralSecurityException("CRL issued by " + crl.getIssuerX500Principal());
+		crl.verify(issuer.getPublicKey());
+		long now = System.currentTimeMillis();
+		long expires = crl.getNextUpdate() != null ? crl.getNextUpdate().getTime() : now + defaultValidity;
+		if(expires <= now)
+			throw new GeneralSecurityException("CRL expired at " + crl.getNextUpdate());
+		return new Entry(cert, issuer, encoded, crl, false, now, expires);
+	}
+
+	/**
+	 * Reads the nextUpdate time of the first SingleResponse.
+	 *
+	 * @return the time in milliseconds, or -1 if there is none
+	 */
+	static long nextUpdate(byte[] response) throws IOException {
+		// OCSPResponse ::= SEQUENCE { responseStatus ENUMERATED,
+		//     responseBytes [0] EXPLICIT SEQUENCE { responseType OID, response OCTET STRING } }
+		DERReader r = new DERReader(response);
+		r.expect(DERReader.SEQUENCE);
+		r = r.enter();
+		r.expect(DERReader.ENUMERATED);
+		r.expect(DERReader.CONTEXT_0);
+		r = r.enter();
+		r.expect(DERReader.SEQUENCE);
+		r = r.enter();
+		r.expect(DERReader.OID);
+		r.expect(DERReader.OCTET_STRING);
+		// BasicOCSPResponse ::= SEQUENCE { tbsResponseData ResponseData, ... }
+		r = r.enter();
+		r.expect(DERReader.SEQUENCE);
+		r = r.enter();
+		r.expect(DERReader.SEQUENCE);
+		// ResponseData ::= SEQUENCE { version [0] OPTIONAL, responderID,
+		//     producedAt, responses SEQUENCE OF SingleResponse, ... }
+		// only responses is a universal SEQUENCE
+		r = r.enter();
+		do {
+			if(!r.next())
+				throw new IOException("no responses in OCSP response");
+		} while(r.tag != DERReader.SEQUENCE);
+		r = r.enter();
+		r.expect(DERReader.SEQUENCE);
+		// SingleResponse ::= SEQUENCE { certID, certStatus, thisUpdate,
+		//     nextUpdate [0] EXPLICIT GeneralizedTime OPTIONAL, ... }
+		r = r.enter();
+		r.expect(DERReader.SEQUENCE);
+		r.next();
+		r.expect(DERReader.GENERALIZED_TIME);
+		if(!r.next() || r.tag != DERReader.CONTEXT_0)
+			return -1;
+		r = r.enter();
+		r.expect(DERReader.GENERALIZED_TIME);
+		String time = new String(r.content(), "US-ASCII");
+		if(time.length() < 14)
+			throw new IOException("malformed GeneralizedTime " + time);
+		SimpleDateFormat df = new SimpleDateFormat("yyyyMMddHHmmss");
+		df.setTimeZone(TimeZone.getTimeZone("UTC"));
+		try {
+			return df.parse(time.substring(0, 14)).getTime();
+		} catch (ParseException ex) {
+			throw new IOException("malformed GeneralizedTime " + time);
+		}
+	}
+
+	private void putOCSP(Entry e, boolean save) {
+		ByteBuffer key;
+		try {
+			key = TrustVerdictCache.fingerprint(e.cert);
+		} catch (CertificateEncodingException ex) {
+			return;
+		}
+		synchronized(this) {
+			ocsp.put(key, e);
+		}
+		if(save && dir != null)
+			save(file("ocsp-", key), e.encoded);
+	}
+
+	private void putCRL(Entry c, boolean save) {
+		synchronized(this) {
+			crls.put(c.issuer.getSubjectX500Principal(), c);
+		}
+		if(save && dir != null)
+			save(crlFile(c.issuer), c.encoded);
+	}
+
+	/*
+	 * Claims a file listed at start-up, so that it is only read once.
+	 * After that its entry is in memory, or it wasn't usable.
+	 */
+	private synchronized boolean unread(File f) {
+		return persisted.remove(f.getName());
+	}
+
+	private Entry loadOCSP(X509Certificate cert, X509Certificate issuer) {
+		try {
+			File f = file("ocsp-", TrustVerdictCache.fingerprint(cert));
+			if(!unread(f))
+				return null;
+			Entry e = ocspEntry(cert, issuer, read(f));
+			if(e != null)
+				putOCSP(e, false);
+			return e;
+		} catch (Exception ex) {
+			logger.fine("Ignoring cached OCSP response: " + ex.getMessage());
+			return null;
+		}
+	}
+
+	private Entry loadCRL(X509Certificate cert, X509Certificate issuer) {
+		try {
+			File f = crlFile(issuer);
+			if(!unread(f))
+				return null;
+			Entry c = crlEntry(cert, issuer, read(f));
+			putCRL(c, false);
+			return c;
+		} catch (Exception ex) {
+			logger.fine("Ignoring cached CRL: " + ex.getMessage());
+			return null;
+		}
+	}
+
+	private File crlFile(X509Certificate issuer) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-256");
+			return file("crl-", ByteBuffer.wrap(md.digest(issuer.getSubjectX500Principal().getEncoded())));
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	private File file(String prefix, ByteBuffer key) {
+		StringBuilder sb = new StringBuilder(prefix);
+		for(int i = key.position(); i < key.limit(); i++)
+			sb.append(String.format("%02x", key.get(i) & 0xff));
+		sb.append(".der");
+		return new File(dir, sb.toString());
+	}
+
+	private static byte[] read(File f) throws IOException {
+		byte[] buf = new byte[(int)f.length()];
+		InputStream in = new FileInputStream(f);
+		try {
+			int off = 0;
+			int n;
+			while(off < buf.length && (n = in.read(buf, off, buf.length - off)) > 0)
+				off += n;
+			if(off < buf.length)
+				throw new IOException("short read from " + f);
+		} finally {
+			in.close();
+		}
+		return buf;
+	}
+
+	/*
+	 * Written to a temporary file and renamed, so a reader never sees
+	 * half a response.
+	 */
+	private void save(File f, byte[] encoded) {
+		File tmp = new File(f.getPath() + ".tmp");
+		try {
+			OutputStream out = new FileOutputStream(tmp);
+			try {
+				out.write(encoded);
+			} finally {
+				out.close();
+			}
+			if(!tmp.renameTo(f)) {
+				f.delete();
+				if(!tmp.renameTo(f))
+					throw new IOException("can't rename " + tmp);
+			}
+		} catch (IOException ex) {
+			logger.warning("Failed to save " + f + ": " + ex.getMessage());
+			tmp.delete();
+		}
+	}
+
+	/**
+	 * Refetches entries that are due and in use, and drops idle ones.
+	 */
+	void refresh() {
+		long now = System.currentTimeMillis();
+		List<Entry> due = new ArrayList<Entry>();
+		synchronized(this) {
+			refresh(ocsp, now, due);
+			refresh(crls, now, due);
+		}
+		for(Entry e : due) {
+			if(e.crl == null) {
+				doFetch(e.cert, e.issuer);
+				continue;
+			}
+			try {
+				byte[] encoded = fetcher.fetchCRL(e.cert, e.issuer);
+				if(encoded != null)
+					putCRL(crlEntry(e.cert, e.issuer, encoded), true);
+			} catch (Exception ex) {
+				logger.fine("CRL refresh failed for " + e.issuer.getSubjectX500Principal() + ": " + ex.getMessage());
+			}
+		}
+	}
+
+	private <K> void refresh(Map<K, Entry> map, long now, List<Entry> due) {
+		for(Iterator<Entry> it = map.values().iterator(); it.hasNext(); ) {
+			Entry e = it.next();
+			if(now - e.lastUsed > idleTimeout)
+				it.remove();
+			else if(e.refreshDue(now))
+				due.add(e);
+		}
+	}
+
+	public synchronized int size() {
+		return ocsp.size() + crls.size();
+	}
+
+	/**
+	 * Stops the background refresh.
+	 */
+	public void close() {
+		executor.shutdown();
+	}
+}
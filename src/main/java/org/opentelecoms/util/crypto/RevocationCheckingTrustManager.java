@@ -0,0 +1,219 @@
+/*
+ *  An X509ExtendedTrustManager that validates chains with an
+ *  AppendingTrustManager and then checks them for revocation using
+ *  stapled OCSP responses and a RevocationCache
+ *
+ *  Copyright 2026 agent <agent@local>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opentelecoms.util.crypto;
+
+import java.lang.reflect.Method;
+import java.net.Socket;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import javax.net.ssl.ExtendedSSLSession;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.X509ExtendedTrustManager;
+import javax.security.auth.x500.X500Principal;
+
+/**
+ * Adds revocation checking to an {@link AppendingTrustManager} without
+ * any network I/O in the handshake.
+ *
+ * For the server's own certificate an OCSP response stapled in the
+ * handshake is preferred.  Every other certificate, and the leaf when
+ * nothing was stapled, is looked up in the {@link RevocationCache}.
+ * With soft fail (the default) a certificate whose status isn't cached
+ * yet is accepted and its status is fetched in the background; with
+ * hard fail it is fetched in the handshake and rejected if no status
+ * can be obtained, or if its issuer isn't in the chain or among the
+ * accepted issuers.  Only self-signed certificates are not checked.
+ *
+ * The platform revocation checking of the wrapped trust managers should
+ * be left disabled, otherwise it will still fetch CRLs and OCSP
+ * responses synchronously.
+ *
+ * Because this is an X509ExtendedTrustManager, JSSE leaves endpoint
+ * identification to it: when the SSLParameters of the connection name
+ * an endpoint identification algorithm, the peer host is matched
+ * against the leaf certificate's subject alternative names.
+ */
+public class RevocationCheckingTrustManager extends X509ExtendedTrustManager {
+
+	/* ExtendedSSLSession.getStatusResponses() only exists from Java 9 */
+	private static final Method getStatusResponses;
+	static {
+		Method m = null;
+		try {
+			m = ExtendedSSLSession.class.getMethod("getStatusResponses");
+		} catch (NoSuchMethodException ex) {
+			// no stapling support in this JRE
+		}
+		getStatusResponses = m;
+	}
+
+	Logger logger = Logger.getLogger(getClass().getName());
+
+	final AppendingTrustManager tm;
+	final RevocationCache cache;
+	boolean softFail = true;
+
+	/* The accepted issuers by subject, rebuilt when tm swaps its stores */
+	X509Certificate[] indexedIssuers;
+	Map<X500Principal, X509Certificate> issuersBySubject;
+
+	public RevocationCheckingTrustManager(AppendingTrustManager tm, RevocationCache cache) {
+		this.tm = tm;
+		this.cache = cache;
+	}
+
+	/**
+	 * @param softFail true to accept certificates whose status is not
+	 *        known, false to fetch it in the handshake and reject them if
+	 *        it can't be obtained
+	 */
+	public void setSoftFail(boolean softFail) {
+		this.softFail = softFail;
+	}
+
+	@Override
+	public void checkClientTrusted(X509Certificate[] chain, String authType)
+			throws CertificateException {
+		tm.checkClientTrusted(chain, authType);
+		checkRevocation(chain, null);
+	}
+
+	@Override
+	public void checkServerTrusted(X509Certificate[] chain, String authType)
+			throws CertificateException {
+		tm.checkServerTrusted(chain, authType);
+		checkRevocation(chain, null);
+	}
+
+	@Override
+	public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket)
+			throws CertificateException {
+		tm.checkClientTrusted(chain, authType);
+		SSLSession session = EndpointIdentity.handshakeSession(socket);
+		EndpointIdentity.check(chain, session, EndpointIdentity.algorithm(socket));
+		checkRevocation(chain, session);
+	}
+
+	@Override
+	public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket)
+			throws CertificateException {
+		tm.checkServerTrusted(chain, authType);
+		SSLSession session = EndpointIdentity.handshakeSession(socket);
+		EndpointIdentity.check(chain, session, EndpointIdentity.algorithm(socket));
+		checkRevocation(chain, session);
+	}
+
+	@Override
+	public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine)
+			throws CertificateException {
+		tm.checkClientTrusted(chain, authType);
+		SSLSession session = EndpointIdentity.handshakeSession(engine);
+		EndpointIdentity.check(chain, session, EndpointIdentity.algorithm(engine));
+		checkRevocation(chain, session);
+	}
+
+	@Override
+	public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine)
+			throws CertificateException {
+		tm.checkServerTrusted(chain, authType);
+		SSLSession session = EndpointIdentity.handshakeSession(engine);
+		EndpointIdentity.check(chain, session, EndpointIdentity.algorithm(engine));
+		checkRevocation(chain, session);
+	}
+
+	@Override
+	public X509Certificate[] getAcceptedIssuers() {
+		return tm.getAcceptedIssuers();
+	}
+
+	void checkRevocation(X509Certificate[] chain, SSLSession session)
+			throws CertificateException {
+		List<byte[]> staples = staples(session);
+		for(int i = 0; i < chain.length; i++) {
+			X509Certificate cert = chain[i];
+			// a self-signed anchor has no issuer to ask
+			if(cert.getIssuerX500Principal().equals(cert.getSubjectX500Principal()))
+				continue;
+			X509Certificate issuer = issuer(chain, i);
+			if(issuer == null) {
+				if(softFail)
+					continue;
+				throw new CertificateException("Revocation status unknown, issuer not found: "
+						+ cert.getSubjectX500Principal());
+			}
+			int status = RevocationCache.UNKNOWN;
+			if(staples != null && i < staples.size() && staples.get(i) != null
+					&& staples.get(i).length > 0)
+				status = cache.staple(cert, issuer, staples.get(i));
+			if(status == RevocationCache.UNKNOWN)
+				status = softFail ? cache.status(cert, issuer) : cache.fetch(cert, issuer);
+			if(status == RevocationCache.REVOKED)
+				throw new CertificateException("Certificate revoked: " + cert.getSubjectX500Principal());
+			if(status == RevocationCache.UNKNOWN && !softFail)
+				throw new CertificateException("Revocation status unknown: " + cert.getSubjectX500Principal());
+		}
+	}
+
+	/*
+	 * The next certificate in the chain or an accepted issuer, or null
+	 * if neither has the issuer's name.
+	 */
+	private X509Certificate issuer(X509Certificate[] chain, int i) {
+		X500Principal issuerName = chain[i].getIssuerX500Principal();
+		if(i + 1 < chain.length && chain[i + 1].getSubjectX500Principal().equals(issuerName))
+			return chain[i + 1];
+		X509Certificate[] issuers = tm.issuers();
+		synchronized(this) {
+			if(issuers != indexedIssuers) {
+				Map<X500Principal, X509Certificate> bySubject = new HashMap<X500Principal, X509Certificate>();
+				for(X509Certificate c : issuers)
+					bySubject.put(c.getSubjectX500Principal(), c);
+				issuersBySubject = bySubject;
+				indexedIssuers = issuers;
+			}
+			return issuersBySubject.get(issuerName);
+		}
+	}
+
+	/**
+	 * @return the OCSP responses stapled in the handshake, in chain
+	 *         order, or null if there are none
+	 */
+	@SuppressWarnings("unchecked")
+	private List<byte[]> staples(SSLSession session) {
+		if(getStatusResponses == null || !(session instanceof ExtendedSSLSession))
+			return null;
+		try {
+			List<byte[]> responses = (List<byte[]>)getStatusResponses.invoke(session);
+			return responses == null || responses.isEmpty() ? null : responses;
+		} catch (Exception ex) {
+			logger.fine("Can't read stapled OCSP responses: " + ex.getMessage());
+			return null;
+		}
+	}
+}
@@ -0,0 +1,43 @@
+/*
+ *  Obtains OCSP responses and CRLs for RevocationCache
+ *
+ *  Copyright 2026 agent <agent@local>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opentelecoms.util.crypto;
+
+import java.io.IOException;
+import java.security.cert.X509Certificate;
+
+/**
+ * The source of revocation data used by {@link RevocationCache}.  The
+ * usual implementation is {@link HttpRevocationFetcher}; tests can
+ * supply their own to act as a stand-in responder.
+ */
+public interface RevocationFetcher {
+
+	/**
+	 * @return the DER encoded OCSPResponse for cert, or null if there
+	 *         is no OCSP responder for it
+	 */
+	byte[] fetchOCSPResponse(X509Certificate cert, X509Certificate issuer) throws IOException;
+
+	/**
+	 * @return the DER encoded CRL covering cert, or null if there is no
+	 *         CRL distribution point for it
+	 */
+	byte[] fetchCRL(X509Certificate cert, X509Certificate issuer) throws IOException;
+}
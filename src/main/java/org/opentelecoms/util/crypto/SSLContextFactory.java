@@ -0,0 +1,304 @@
+/*
+ *  Builds client and server SSLContexts around a TrustManager, with the
+ *  session cache tuned for resumption, and counts resumed handshakes
+ *
+ *  Copyright 2026 agent <agent@local>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opentelecoms.util.crypto;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.HandshakeCompletedListener;
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+/**
+ * Creates SSLContexts that use a given trust manager, typically an
+ * {@link AppendingTrustManager}, with a larger session cache and a
+ * longer session timeout than the JSSE defaults, so that peers which
+ * reconnect often (for example SIP trunks after a network blip) resume
+ * their sessions instead of doing a full handshake and a full chain
+ * validation.
+ *
+ * Session tickets (RFC 5077) let a server resume TLS 1.2 sessions it
+ * no longer has in its cache; see {@link #enableSessionTickets()}.
+ *
+ * Every handshake reported to {@link #handshakeCompleted(SSLSession)}
+ * is counted as full or resumed.  Sockets from
+ * {@link #getSocketFactory(SSLContext)} are reported automatically;
+ * accepted server sockets can be passed to {@link #watch(SSLSocket)}
+ * and SSLEngine users can report the session when the handshake
+ * finishes.
+ *
+ * A session resumed from the cache by its ID is the same object as
+ * before, but one resumed from a TLS 1.2 session ticket or a TLS 1.3
+ * pre-shared key is a new session with a new ID.  What they all keep is
+ * the creation time of the original session, so a handshake is counted
+ * as resumed if a session with the same peer host and creation time has
+ * been counted already.  Two full handshakes with the same host in the
+ * same millisecond are therefore counted as one full and one resumed,
+ * and a session resumed after more than MAX_TRACKED_SESSIONS others
+ * have been counted, or after the session timeout, is counted as full.
+ * Where neither session tickets nor TLS 1.3 are used, as on Java 8 to
+ * 12 by default, every resumption is by ID and is counted exactly.
+ */
+public class SSLContextFactory {
+
+	public static final int DEFAULT_SESSION_CACHE_SIZE = 20000;
+	/* seconds */
+	public static final int DEFAULT_SESSION_TIMEOUT = 24 * 3600;
+
+	/* The number of sessions remembered for counting resumptions */
+	public static final int MAX_TRACKED_SESSIONS = 100000;
+
+	/* The session value that marks a session already counted */
+	private static final String SEEN = SSLContextFactory.class.getName() + ".seen";
+
+	final TrustManager[] trustManagers;
+	KeyManager[] keyManagers;
+	String protocol = "TLS";
+	int sessionCacheSize = DEFAULT_SESSION_CACHE_SIZE;
+	int sessionTimeout = DEFAULT_SESSION_TIMEOUT;
+	final AtomicLong fullHandshakes = new AtomicLong();
+	final AtomicLong resumedHandshakes = new AtomicLong();
+	/* The creation times of the sessions counted, by peer host and creation time */
+	final LinkedHashMap<String, Long> counted = new LinkedHashMap<String, Long>();
+
+	final HandshakeCompletedListener listener = new HandshakeCompletedListener() {
+		public void handshakeCompleted(HandshakeCompletedEvent event) {
+			SSLContextFactory.this.handshakeCompleted(event.getSession());
+		}
+	};
+
+	/**
+	 * @param tm the trust manager for both client and server contexts
+	 */
+	public SSLContextFactory(X509TrustManager tm) {
+		this.trustManagers = new TrustManager[] { tm };
+	}
+
+	/**
+	 * Enables TLS 1.2 session tickets for the whole JVM, by setting the
+	 * system properties jdk.tls.server.enableSessionTicketExtension and
+	 * jdk.tls.client.enableSessionTicketExtension to true unless they
+	 * have been set already.  The JDK reads them once, so this must be
+	 * called before any other use of JSSE.
+	 *
+	 * Only JDK 13 and later read these properties, and both already
+	 * default to true there.  Java 8 to 12 have no session ticket support
+	 * and ignore them.  TLS 1.3 resumes with its own pre-shared keys
+	 * either way.
+	 */
+	public static void enableSessionTickets() {
+		enable("jdk.tls.server.enableSessionTicketExtension");
+		enable("jdk.tls.client.enableSessionTicketExtension");
+	}
+
+	private static void enable(String property) {
+		if(System.getProperty(property) == null)
+			System.setProperty(property, "true");
+	}
+
+	/**
+	 * Sets the key managers holding this side's own certificate, needed
+	 * for server contexts and for client authentication.
+	 */
+	public void setKeyManagers(KeyManager[] keyManagers) {
+		this.keyManagers = keyManagers;
+	}
+
+	/**
+	 * @param protocol the SSLContext protocol, "TLS" by default
+	 */
+	public void setProtocol(String protocol) {
+		this.protocol = protocol;
+	}
+
+	/**
+	 * @param size the number of sessions to cache, 0 for no limit
+	 */
+	public void setSessionCacheSize(int size) {
+		this.sessionCacheSize = size;
+	}
+
+	/**
+	 * @param timeout how long a session can be resumed for, in seconds,
+	 *        0 for no limit
+	 */
+	public void setSessionTimeout(int timeout) {
+		this.sessionTimeout = timeout;
+	}
+
+	public SSLContext createClientContext() throws GeneralSecurityException {
+		SSLContext ctx = create();
+		configure(ctx.getClientSessionContext());
+		return ctx;
+	}
+
+	public SSLContext createServerContext() throws GeneralSecurityException {
+		SSLContext ctx = create();
+		configure(ctx.getServerSessionContext());
+		return ctx;
+	}
+
+	private SSLContext create() throws GeneralSecurityException {
+		SSLContext ctx = SSLContext.getInstance(protocol);
+		ctx.init(keyManagers, trustManagers, null);
+		return ctx;
+	}
+
+	private void configure(SSLSessionContext sessions) {
+		sessions.setSessionCacheSize(sessionCacheSize);
+		sessions.setSessionTimeout(sessionTimeout);
+	}
+
+	/**
+	 * Counts the handshakes of socket when they complete.
+	 */
+	public void watch(SSLSocket socket) {
+		socket.addHandshakeCompletedListener(listener);
+	}
+
+	/**
+	 * Counts a completed handshake as full or resumed.
+	 */
+	public void handshakeCompleted(SSLSession session) {
+		if(session.getValue(SEEN) != null) {
+			resumedHandshakes.incrementAndGet();
+			return;
+		}
+		session.putValue(SEEN, Boolean.TRUE);
+		long created = session.getCreationTime();
+		// JSSE reports an unknown peer host as null or as ""
+		String host = session.getPeerHost();
+		String key = (host == null ? "" : host) + "/" + created;
+		boolean resumed;
+		synchronized(counted) {
+			resumed = counted.containsKey(key);
+			if(!resumed) {
+				counted.put(key, Long.valueOf(created));
+				expire();
+			}
+		}
+		if(resumed)
+			resumedHandshakes.incrementAndGet();
+		else
+			fullHandshakes.incrementAndGet();
+	}
+
+	/*
+	 * Forgets the oldest sessions over the limit and those that can no
+	 * longer be resumed.  Sessions are counted roughly in order of
+	 * creation, so only the eldest need to be looked at.
+	 */
+	private void expire() {
+		long oldest = sessionTimeout > 0 ?
+				System.currentTimeMillis() - sessionTimeout * 1000L : Long.MIN_VALUE;
+		Iterator<Long> it = counted.values().iterator();
+		while(it.hasNext()) {
+			long created = it.next().longValue();
+			if(counted.size() <= MAX_TRACKED_SESSIONS && created >= oldest)
+				break;
+			it.remove();
+		}
+	}
+
+	public long getFullHandshakes() {
+		return fullHandshakes.get();
+	}
+
+	public long getResumedHandshakes() {
+		return resumedHandshakes.get();
+	}
+
+	/**
+	 * @return a socket factory for ctx whose sockets are watched
+	 */
+	public SSLSocketFactory getSocketFactory(SSLContext ctx) {
+		return new WatchingSocketFactory(ctx.getSocketFactory());
+	}
+
+	class WatchingSocketFactory extends SSLSocketFactory {
+		final SSLSocketFactory factory;
+
+		WatchingSocketFactory(SSLSocketFactory factory) {
+			this.factory = factory;
+		}
+
+		private Socket watched(Socket s) {
+			if(s instanceof SSLSocket)
+				watch((SSLSocket)s);
+			return s;
+		}
+
+		@Override
+		public String[] getDefaultCipherSuites() {
+			return factory.getDefaultCipherSuites();
+		}
+
+		@Override
+		public String[] getSupportedCipherSuites() {
+			return factory.getSupportedCipherSuites();
+		}
+
+		@Override
+		public Socket createSocket() throws IOException {
+			return watched(factory.createSocket());
+		}
+
+		@Override
+		public Socket createSocket(Socket s, String host, int port, boolean autoClose)
+				throws IOException {
+			return watched(factory.createSocket(s, host, port, autoClose));
+		}
+
+		@Override
+		public Socket createSocket(String host, int port) throws IOException {
+			return watched(factory.createSocket(host, port));
+		}
+
+		@Override
+		public Socket createSocket(String host, int port, InetAddress localHost, int localPort)
+				throws IOException {
+			return watched(factory.createSocket(host, port, localHost, localPort));
+		}
+
+		@Override
+		public Socket createSocket(InetAddress host, int port) throws IOException {
+			return watched(factory.createSocket(host, port));
+		}
+
+		@Override
+		public Socket createSocket(InetAddress address, int port, InetAddress localAddress,
+				int localPort) throws IOException {
+			return watched(factory.createSocket(address, port, localAddress, localPort));
+		}
+	}
+}
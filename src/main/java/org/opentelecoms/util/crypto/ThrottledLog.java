@@ -0,0 +1,150 @@
+/*
+ *  Counts frequent log events cheaply and only writes a sample of them
+ *  to the log
+ *
+ *  Copyright 2026 agent <agent@local>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opentelecoms.util.crypto;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Rate limited logging for messages that would otherwise be written on
+ * every handshake.  Each message is declared once as a static
+ * {@link Event}; logging it increments a counter and only writes a log
+ * record for the first occurrence, every sampleRate-th occurrence and
+ * the first occurrence after interval has passed since the last record.
+ * Each record says how many occurrences it stands for.
+ *
+ * The counters of all events can be read with {@link #getCounts()}.
+ * The sampling settings are shared by every event and can be set with
+ * the system properties org.opentelecoms.util.crypto.ThrottledLog.sampleRate
+ * and org.opentelecoms.util.crypto.ThrottledLog.interval (milliseconds)
+ * or with {@link #configure(int, long)}.
+ */
+public final class ThrottledLog {
+
+	public static final int DEFAULT_SAMPLE_RATE = 1000;
+	public static final long DEFAULT_INTERVAL = 60 * 1000L;
+
+	static volatile int sampleRate = Integer.getInteger(
+			ThrottledLog.class.getName() + ".sampleRate", DEFAULT_SAMPLE_RATE);
+	static volatile long intervalNanos = Long.getLong(
+			ThrottledLog.class.getName() + ".interval", DEFAULT_INTERVAL) * 1000000L;
+
+	static final Map<String, Event> events = new ConcurrentHashMap<String, Event>();
+
+	private ThrottledLog() {
+	}
+
+	/**
+	 * @param sampleRate write one record for every sampleRate events, or
+	 *        0 to only write records based on time
+	 * @param interval the longest time, in milliseconds, an event can
+	 *        go unreported while it keeps happening
+	 */
+	public static void configure(int sampleRate, long interval) {
+		ThrottledLog.sampleRate = sampleRate;
+		ThrottledLog.intervalNanos = interval * 1000000L;
+	}
+
+	/**
+	 * Declares an event.  Events with the same source and message share
+	 * a counter.
+	 */
+	public static Event event(Class<?> source, Level level, String message) {
+		String key = source.getName() + ": " + message;
+		Event e = events.get(key);
+		if(e == null) {
+			synchronized(events) {
+				e = events.get(key);
+				if(e == null) {
+					e = new Event(Logger.getLogger(source.getName()), level, message);
+					events.put(key, e);
+				}
+			}
+		}
+		return e;
+	}
+
+	/**
+	 * @return the number of times each event has happened, keyed by
+	 *         source class and message
+	 */
+	public static Map<String, Long> getCounts() {
+		Map<String, Long> counts = new LinkedHashMap<String, Long>();
+		for(Map.Entry<String, Event> e : events.entrySet())
+			counts.put(e.getKey(), Long.valueOf(e.getValue().getCount()));
+		return counts;
+	}
+
+	public static final class Event {
+		final Logger logger;
+		final Level level;
+		final String message;
+		final AtomicLong count = new AtomicLong();
+		/* count and System.nanoTime() when the last record was written */
+		final AtomicLong reportedCount = new AtomicLong();
+		volatile long reportedAt = System.nanoTime();
+
+		Event(Logger logger, Level level, String message) {
+			this.logger = logger;
+			this.level = level;
+			this.message = message;
+		}
+
+		public void log() {
+			log(null);
+		}
+
+		/**
+		 * @param detail appended to the message if a record is written
+		 */
+		public void log(String detail) {
+			long n = count.incrementAndGet();
+			int rate = sampleRate;
+			long now = 0;
+			if(n != 1 && (rate <= 0 || n % rate != 0)) {
+				now = System.nanoTime();
+				if(now - reportedAt < intervalNanos)
+					return;
+			}
+			long last = reportedCount.get();
+			// only one thread writes the record for a given range of events
+			if(n <= last || !reportedCount.compareAndSet(last, n))
+				return;
+			reportedAt = now == 0 ? System.nanoTime() : now;
+			if(!logger.isLoggable(level))
+				return;
+			StringBuilder sb = new StringBuilder(message);
+			if(detail != null)
+				sb.append(": ").append(detail);
+			if(n - last > 1)
+				sb.append(" (").append(n - last).append(" occurrences, ").append(n).append(" in total)");
+			logger.log(level, sb.toString());
+		}
+
+		public long getCount() {
+			return count.get();
+		}
+	}
+}
@@ -0,0 +1,57 @@
+/*
+ *  Receives the latency and outcome of each certificate check made by
+ *  AppendingTrustManager
+ *
+ *  Copyright 2026 agent <agent@local>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opentelecoms.util.crypto;
+
+import java.security.cert.CertificateException;
+
+/**
+ * Callbacks made in the handshake thread after each check, so
+ * implementations must be cheap and thread safe.
+ * {@link TrustManagerStats} is a ready made implementation that can be
+ * registered with JMX; other monitoring systems can be bridged by
+ * implementing this interface.
+ */
+public interface TrustManagerMetrics {
+
+	/* Where a trusted verdict came from */
+	int PRIMARY = 0;
+	int LOCAL = 1;
+	int CACHE = 2;
+
+	/**
+	 * @param client true for checkClientTrusted, false for checkServerTrusted
+	 * @param source PRIMARY, LOCAL or CACHE
+	 * @param nanos the time taken by the check
+	 */
+	void trusted(boolean client, int source, long nanos);
+
+	/**
+	 * @param client true for checkClientTrusted, false for checkServerTrusted
+	 * @param ce the exception thrown to the caller
+	 * @param nanos the time taken by the check
+	 */
+	void rejected(boolean client, CertificateException ce, long nanos);
+
+	/**
+	 * Called for each lookup in the TrustVerdictCache, if there is one.
+	 */
+	void cacheLookup(boolean hit);
+}
@@ -0,0 +1,227 @@
+/*
+ *  Counters and a latency histogram for the checks made by
+ *  AppendingTrustManager, readable through JMX
+ *
+ *  Copyright 2026 agent <agent@local>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opentelecoms.util.crypto;
+
+import java.lang.management.ManagementFactory;
+import java.security.cert.CertPathValidatorException;
+import java.security.cert.CertificateException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Lock free counters for {@link TrustManagerMetrics}.  Latencies go
+ * into power of two buckets of microseconds, so recording one is a
+ * single atomic increment and percentiles are accurate to within a
+ * factor of two.
+ *
+ * Rejections are counted by reason: the CertPathValidatorException
+ * reason (EXPIRED, REVOKED, ...) when the exception has one, otherwise
+ * the exception class.  The JDK reports a chain it can't build a path
+ * for, such as one from an unknown CA, with a CertPathBuilderException
+ * cause, so those are counted as "ValidatorException".
+ *
+ * <pre>
+ * TrustManagerStats stats = new TrustManagerStats();
+ * appendingTrustManager.setMetrics(stats);
+ * stats.register("org.opentelecoms.util.crypto:type=TrustManagerStats");
+ * </pre>
+ */
+public class TrustManagerStats implements TrustManagerMetrics, TrustManagerStatsMBean {
+
+	static final int BUCKETS = 40;
+
+	final AtomicLong clientChecks = new AtomicLong();
+	final AtomicLong serverChecks = new AtomicLong();
+	final AtomicLong[] trusted = {
+		new AtomicLong(), new AtomicLong(), new AtomicLong() };
+	final AtomicLong rejected = new AtomicLong();
+	final ConcurrentHashMap<String, AtomicLong> reasons = new ConcurrentHashMap<String, AtomicLong>();
+	final AtomicLong cacheHits = new AtomicLong();
+	final AtomicLong cacheMisses = new AtomicLong();
+	final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+	final AtomicLong totalNanos = new AtomicLong();
+	final AtomicLong maxNanos = new AtomicLong();
+
+	/**
+	 * Registers this object with the platform MBeanServer.
+	 */
+	public ObjectName register(String name) throws JMException {
+		ObjectName on = new ObjectName(name);
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, on);
+		return on;
+	}
+
+	@Override
+	public void trusted(boolean client, int source, long nanos) {
+		trusted[source].incrementAndGet();
+		record(client, nanos);
+	}
+
+	@Override
+	public void rejected(boolean client, CertificateException ce, long nanos) {
+		rejected.incrementAndGet();
+		String reason = reason(ce);
+		AtomicLong count = reasons.get(reason);
+		if(count == null) {
+			AtomicLong old = reasons.putIfAbsent(reason, count = new AtomicLong());
+			if(old != null)
+				count = old;
+		}
+		count.incrementAndGet();
+		record(client, nanos);
+	}
+
+	@Override
+	public void cacheLookup(boolean hit) {
+		(hit ? cacheHits : cacheMisses).incrementAndGet();
+	}
+
+	static String reason(CertificateException ce) {
+		for(Throwable t = ce.getCause(); t != null; t = t.getCause()) {
+			if(t instanceof CertPathValidatorException)
+				return ((CertPathValidatorException)t).getReason().toString();
+		}
+		return ce.getClass().getSimpleName();
+	}
+
+	private void record(boolean client, long nanos) {
+		(client ? clientChecks : serverChecks).incrementAndGet();
+		histogram.incrementAndGet(bucket(nanos / 1000));
+		totalNanos.addAndGet(nanos);
+		long max;
+		while(nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos))
+			;
+	}
+
+	static int bucket(long micros) {
+		int b = 64 - Long.numberOfLeadingZeros(micros);
+		return b < BUCKETS ? b : BUCKETS - 1;
+	}
+
+	@Override
+	public long getClientChecks() {
+		return clientChecks.get();
+	}
+
+	@Override
+	public long getServerChecks() {
+		return serverChecks.get();
+	}
+
+	@Override
+	public long getTrusted() {
+		return trusted[PRIMARY].get() + trusted[LOCAL].get() + trusted[CACHE].get();
+	}
+
+	@Override
+	public long getLocalTrusted() {
+		return trusted[LOCAL].get();
+	}
+
+	@Override
+	public long getRejected() {
+		return rejected.get();
+	}
+
+	@Override
+	public Map<String, Long> getRejectionReasons() {
+		Map<String, Long> m = new HashMap<String, Long>();
+		for(Map.Entry<String, AtomicLong> e : reasons.entrySet())
+			m.put(e.getKey(), Long.valueOf(e.getValue().get()));
+		return m;
+	}
+
+	@Override
+	public long getCacheHits() {
+		return cacheHits.get();
+	}
+
+	@Override
+	public long getCacheMisses() {
+		return cacheMisses.get();
+	}
+
+	@Override
+	public double getCacheHitRatio() {
+		long hits = cacheHits.get();
+		long total = hits + cacheMisses.get();
+		return total == 0 ? 0 : (double)hits / total;
+	}
+
+	@Override
+	public double getMeanLatencyMicros() {
+		long n = clientChecks.get() + serverChecks.get();
+		return n == 0 ? 0 : totalNanos.get() / 1000.0 / n;
+	}
+
+	@Override
+	public long getMaxLatencyMicros() {
+		return maxNanos.get() / 1000;
+	}
+
+	@Override
+	public long[] getLatencyHistogram() {
+		long[] h = new long[BUCKETS];
+		for(int i = 0; i < BUCKETS; i++)
+			h[i] = histogram.get(i);
+		return h;
+	}
+
+	@Override
+	public long getLatencyPercentileMicros(double percentile) {
+		long[] h = getLatencyHistogram();
+		long total = 0;
+		for(long c : h)
+			total += c;
+		if(total == 0)
+			return 0;
+		long target = (long)Math.ceil(total * percentile / 100);
+		long seen = 0;
+		for(int i = 0; i < BUCKETS; i++) {
+			seen += h[i];
+			if(seen >= target && h[i] > 0)
+				return 1L << i;
+		}
+		return 1L << (BUCKETS - 1);
+	}
+
+	@Override
+	public void reset() {
+		clientChecks.set(0);
+		serverChecks.set(0);
+		for(AtomicLong t : trusted)
+			t.set(0);
+		rejected.set(0);
+		reasons.clear();
+		cacheHits.set(0);
+		cacheMisses.set(0);
+		for(int i = 0; i < BUCKETS; i++)
+			histogram.set(i, 0);
+		totalNanos.set(0);
+		maxNanos.set(0);
+	}
+}
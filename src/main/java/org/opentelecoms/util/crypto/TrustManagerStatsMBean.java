@@ -0,0 +1,74 @@
+/*
+ *  The JMX view of TrustManagerStats
+ *
+ *  Copyright 2026 agent <agent@local>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opentelecoms.util.crypto;
+
+import java.util.Map;
+
+public interface TrustManagerStatsMBean {
+
+	long getClientChecks();
+
+	long getServerChecks();
+
+	long getTrusted();
+
+	/**
+	 * @return the number of chains trusted because of the local store
+	 */
+	long getLocalTrusted();
+
+	long getRejected();
+
+	/**
+	 * @return the number of rejections for each reason
+	 */
+	Map<String, Long> getRejectionReasons();
+
+	long getCacheHits();
+
+	long getCacheMisses();
+
+	/**
+	 * @return hits / (hits + misses), or 0 if there were no lookups
+	 */
+	double getCacheHitRatio();
+
+	/**
+	 * @return the mean check latency in microseconds
+	 */
+	double getMeanLatencyMicros();
+
+	long getMaxLatencyMicros();
+
+	/**
+	 * @return the number of checks taking [2^(i-1), 2^i) microseconds
+	 *         for each i; bucket 0 is under a microsecond
+	 */
+	long[] getLatencyHistogram();
+
+	/**
+	 * @param percentile between 0 and 100
+	 * @return the upper bound, in microseconds, of the histogram bucket
+	 *         holding that percentile
+	 */
+	long getLatencyPercentileMicros(double percentile);
+
+	void reset();
+}
@@ -0,0 +1,234 @@
+/*
+ *  A bounded cache of the trust decisions made for certificate chains,
+ *  so that a peer that reconnects does not have its chain validated
+ *  again on every handshake
+ *
+ *  Copyright 2026 agent <agent@local>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opentelecoms.util.crypto;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers whether a chain was trusted, keyed by a SHA-256 digest of
+ * the encoded chain, the authType and whether it was a client or server
+ * check.
+ *
+ * A positive verdict is kept until the first notAfter date in the chain
+ * or for maxAge, whichever is sooner.  A negative verdict is kept for
+ * negativeMaxAge and is replayed by throwing a CertificateException
+ * with the original message.  When the cache is full the least
+ * recently used chain is dropped.
+ *
+ * Call {@link #clear()} whenever the trust stores behind the cache
+ * change.  A check that was already running against the old stores
+ * must not store its verdict afterwards, so callers take the
+ * {@link #generation()} before checking a chain and pass it to
+ * trusted() or rejected(), which ignore verdicts from before the last
+ * clear().
+ */
+public class TrustVerdictCache {
+
+	public static final int DEFAULT_MAX_ENTRIES = 1000;
+	public static final long DEFAULT_MAX_AGE = 3600 * 1000L;
+	public static final long DEFAULT_NEGATIVE_MAX_AGE = 60 * 1000L;
+
+	private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+	private static final ThreadLocal<MessageDigest> sha256 = new ThreadLocal<MessageDigest>() {
+		@Override
+		protected MessageDigest initialValue() {
+			try {
+				return MessageDigest.getInstance("SHA-256");
+			} catch (NoSuchAlgorithmException ex) {
+				throw new IllegalStateException(ex);
+			}
+		}
+	};
+
+	static class Verdict {
+		final String reason;
+		final long expires;
+
+		Verdict(String reason, long expires) {
+			this.reason = reason;
+			this.expires = expires;
+		}
+	}
+
+	final Map<ByteBuffer, Verdict> verdicts;
+	final long maxAge;
+	final long negativeMaxAge;
+	long hits;
+	long misses;
+	/* Incremented by clear() */
+	long generation;
+
+	public TrustVerdictCache() {
+		this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_AGE, DEFAULT_NEGATIVE_MAX_AGE);
+	}
+
+	/**
+	 * @param maxEntries the number of chains to remember
+	 * @param maxAge the longest time to trust a chain without checking
+	 *        it again, in milliseconds
+	 * @param negativeMaxAge the time to remember a rejected chain, in
+	 *        milliseconds, or 0 to only remember trusted chains
+	 */
+	public TrustVerdictCache(final int maxEntries, long maxAge, long negativeMaxAge) {
+		this.maxAge = maxAge;
+		this.negativeMaxAge = negativeMaxAge;
+		verdicts = new LinkedHashMap<ByteBuffer, Verdict>(16, 0.75f, true) {
+			private static final long serialVersionUID = -3297245623184806711L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<ByteBuffer, Verdict> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * @return the key for a chain; chains with the same certificates,
+	 *         authType and direction have equal keys
+	 */
+	public ByteBuffer key(X509Certificate[] chain, String authType, boolean client)
+			throws CertificateEncodingException {
+		MessageDigest md = sha256.get();
+		md.reset();
+		md.update((byte)(client ? 'C' : 'S'));
+		if(authType != null)
+			md.update(authType.getBytes(US_ASCII));
+		for(X509Certificate cert : chain) {
+			byte[] der = cert.getEncoded();
+			md.update((byte)(der.length >>> 24));
+			md.update((byte)(der.length >>> 16));
+			md.update((byte)(der.length >>> 8));
+			md.update((byte)der.length);
+			md.update(der);
+		}
+		return ByteBuffer.wrap(md.digest());
+	}
+
+	/**
+	 * @return the SHA-256 digest of the encoded certificate
+	 */
+	static ByteBuffer fingerprint(X509Certificate cert) throws CertificateEncodingException {
+		MessageDigest md = sha256.get();
+		md.reset();
+		return ByteBuffer.wrap(md.digest(cert.getEncoded()));
+	}
+
+	/**
+	 * @return true if the chain was trusted, false if it is not cached
+	 * @throws CertificateException if the chain was rejected
+	 */
+	public boolean check(ByteBuffer key) throws CertificateException {
+		Verdict v;
+		synchronized(verdicts) {
+			v = verdicts.get(key);
+			if(v != null && v.expires <= System.currentTimeMillis()) {
+				verdicts.remove(key);
+				v = null;
+			}
+			if(v == null) {
+				misses++;
+				return false;
+			}
+			hits++;
+		}
+		if(v.reason != null)
+			throw new CertificateException(v.reason);
+		return true;
+	}
+
+	/**
+	 * @return the number of times the cache has been cleared, to be
+	 *         taken before checking a chain whose verdict is stored
+	 */
+	public long generation() {
+		synchronized(verdicts) {
+			return generation;
+		}
+	}
+
+	/**
+	 * Records that the chain was trusted, unless the cache has been
+	 * cleared since generation was taken.
+	 */
+	public void trusted(ByteBuffer key, X509Certificate[] chain, long generation) {
+		long now = System.currentTimeMillis();
+		long expires = now + maxAge;
+		for(X509Certificate cert : chain)
+			expires = Math.min(expires, cert.getNotAfter().getTime());
+		if(expires <= now)
+			return;
+		synchronized(verdicts) {
+			if(generation == this.generation)
+				verdicts.put(key, new Verdict(null, expires));
+		}
+	}
+
+	/**
+	 * Records that the chain was rejected, unless the cache has been
+	 * cleared since generation was taken.
+	 */
+	public void rejected(ByteBuffer key, CertificateException ce, long generation) {
+		if(negativeMaxAge <= 0)
+			return;
+		String reason = ce.getMessage();
+		if(reason == null)
+			reason = ce.getClass().getName();
+		synchronized(verdicts) {
+			if(generation == this.generation)
+				verdicts.put(key, new Verdict(reason, System.currentTimeMillis() + negativeMaxAge));
+		}
+	}
+
+	public void clear() {
+		synchronized(verdicts) {
+			generation++;
+			verdicts.clear();
+		}
+	}
+
+	public int size() {
+		synchronized(verdicts) {
+			return verdicts.size();
+		}
+	}
+
+	public long getHits() {
+		synchronized(verdicts) {
+			return hits;
+		}
+	}
+
+	public long getMisses() {
+		synchronized(verdicts) {
+			return misses;
+		}
+	}
+}
@@ -0,0 +1,274 @@
+/*
+ *  Reads CSV data into primitive column arrays instead of objects
+ *
+ *  Copyright 2026 agent <agent@local>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opentelecoms.util.csv;
+
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * A table held as one array per column, filled from CSV records
+ * without creating an object per row.  Columns are int, long or double
+ * arrays, long arrays of epoch milliseconds for Date columns, or for
+ * String columns an int array of codes into a dictionary of the
+ * distinct values, so a table of ten million rows costs a few bytes
+ * per field instead of an object and its boxed or String fields.
+ *
+ * int, long and Date fields are parsed where they were tokenized, and a
+ * String is only created the first time a value is seen in its
+ * column.  Empty fields are stored as 0 or "", as CSVReader does.
+ * As in CSVReader, {@link #setProjection(int...)} chooses which column
+ * of the input fills each column of the table.
+ *
+ * The arrays returned by the getters are the ones being filled, so
+ * they can be longer than {@link #size()} and are replaced as they
+ * grow; call {@link #trim()} once loading is finished.  Not thread
+ * safe.
+ */
+public class CSVColumns {
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	final Class<?>[] types;
+	FixedDateParser dateParser = new FixedDateParser(CSVReader.DEFAULT_DATE_FORMAT);
+	int[] projection;
+	int fieldsNeeded;
+	int size;
+
+	/* For each column, the array of its type; String columns use codes */
+	int[][] ints;
+	long[][] longs;
+	double[][] doubles;
+	StringDictionary[] dictionaries;
+
+	/**
+	 * @param types the type of each column: Integer.TYPE, Long.TYPE,
+	 *        Double.TYPE, Date.class or String.class
+	 */
+	public CSVColumns(Class<?>... types) {
+		this.types = types.clone();
+		int n = types.length;
+		ints = new int[n][];
+		longs = new long[n][];
+		doubles = new double[n][];
+		dictionaries = new StringDictionary[n];
+		for(int i = 0; i < n; i++) {
+			Class<?> c = types[i];
+			if(c == Integer.TYPE) {
+				ints[i] = new int[INITIAL_CAPACITY];
+			} else if(c == Long.TYPE || c == Date.class) {
+				longs[i] = new long[INITIAL_CAPACITY];
+			} else if(c == Double.TYPE) {
+				doubles[i] = new double[INITIAL_CAPACITY];
+			} else if(c == String.class) {
+				ints[i] = new int[INITIAL_CAPACITY];
+				dictionaries[i] = new StringDictionary();
+			} else {
+				throw new IllegalArgumentException("unsupported column type " + c.getName());
+			}
+		}
+		fieldsNeeded = n;
+	}
+
+	/**
+	 * Set the parser for Date columns, by default one for
+	 * {@link CSVReader#DEFAULT_DATE_FORMAT} in the default time zone.
+	 */
+	public void setDateParser(FixedDateParser dateParser) {
+		this.dateParser = dateParser;
+	}
+
+	/**
+	 * Fill column i of the table from column columns[i] of the input
+	 * (counting from 0) instead of column i.
+	 *
+	 * @param columns one input column for each column, or null to use
+	 *        the first columns again
+	 */
+	public void setProjection(int... columns) {
+		if(columns != null && columns.length != types.length)
+			throw new IllegalArgumentException("expected " + types.length + " columns, got " + columns.length);
+		projection = columns == null ? null : columns.clone();
+		int n = types.length;
+		if(projection != null)
+			for(int c : projection)
+				n = Math.max(n, c + 1);
+		fieldsNeeded = n;
+	}
+
+	/**
+	 * Appends every record of in.
+	 *
+	 * @return the number of rows appended
+	 */
+	public int readAll(Reader in) throws Exception {
+		ReaderCSVSource source = new ReaderCSVSource(in);
+		int first = size;
+		while(source.next())
+			append(source.t, first);
+		return size - first;
+	}
+
+	/**
+	 * Appends every remaining record of in.
+	 *
+	 * @return the number of rows appended
+	 */
+	public int readAll(MappedCSVSource in) throws Exception {
+		int first = size;
+		while(in.next())
+			append(in, first);
+		return size - first;
+	}
+
+	/*
+	 * Appends r as row size.  On error nothing is appended: a later
+	 * record overwrites any fields already stored, and as the String
+	 * columns come last, once every other field has been parsed, no
+	 * value of the bad record is added to a dictionary.
+	 */
+	void append(CSVRecord r, int first) throws Exception {
+		if(r.getError() != null)
+			throw error(first, r.getErrorField(), r.getError(), null);
+		if(r.fieldCount() < fieldsNeeded)
+			throw error(first, -1, "expected " + fieldsNeeded + " fields, found " + r.fieldCount(), null);
+		if(size == capacity())
+			grow();
+		for(int i = 0; i < types.length; i++) {
+			Class<?> c = types[i];
+			if(c == String.class)
+				continue;
+			int col = projection == null ? i : projection[i];
+			boolean empty = r.isEmpty(col);
+			try {
+				if(c == Integer.TYPE)
+					ints[i][size] = empty ? 0 : r.intField(col);
+				else if(c == Long.TYPE)
+					longs[i][size] = empty ? 0 : r.longField(col);
+				else if(c == Double.TYPE)
+					doubles[i][size] = empty ? 0 : Double.parseDouble(r.field(col));
+				else
+					longs[i][size] = empty ? 0 : dateParser.parseEpochMillis(r.chars(col));
+			} catch (RuntimeException e) {
+				throw error(first, col, e.toString(), e);
+			}
+		}
+		for(int i = 0; i < types.length; i++) {
+			if(dictionaries[i] != null)
+				ints[i][size] = dictionaries[i].code(r, projection == null ? i : projection[i]);
+		}
+		size++;
+	}
+
+	private Exception error(int first, int col, String reason, Exception cause) {
+		String where = "record " + (size - first + 1);
+		if(col >= 0)
+			where += ", column " + (col + 1);
+		return new Exception(where + ": " + reason, cause);
+	}
+
+	private int capacity() {
+		for(int i = 0; i < types.length; i++) {
+			if(ints[i] != null)
+				return ints[i].length;
+			if(longs[i] != null)
+				return longs[i].length;
+			if(doubles[i] != null)
+				return doubles[i].length;
+		}
+		return Integer.MAX_VALUE;
+	}
+
+	private void grow() {
+		resize(Math.max(INITIAL_CAPACITY, (int)Math.min(Integer.MAX_VALUE - 8, capacity() * 3L / 2)));
+	}
+
+	private void resize(int n) {
+		for(int i = 0; i < types.length; i++) {
+			if(ints[i] != null)
+				ints[i] = Arrays.copyOf(ints[i], n);
+			if(longs[i] != null)
+				longs[i] = Arrays.copyOf(longs[i], n);
+			if(doubles[i] != null)
+				doubles[i] = Arrays.copyOf(doubles[i], n);
+		}
+	}
+
+	/**
+	 * Shrinks the column arrays to the number of rows.
+	 */
+	public void trim() {
+		resize(size);
+	}
+
+	/**
+	 * @return the number of rows
+	 */
+	public int size() {
+		return size;
+	}
+
+	public int[] getInts(int column) {
+		check(column, Integer.TYPE);
+		return ints[column];
+	}
+
+	/**
+	 * @return the values of a long column, or the epoch milliseconds of
+	 *         a Date column
+	 */
+	public long[] getLongs(int column) {
+		if(types[column] != Date.class)
+			check(column, Long.TYPE);
+		return longs[column];
+	}
+
+	public double[] getDoubles(int column) {
+		check(column, Double.TYPE);
+		return doubles[column];
+	}
+
+	/**
+	 * @return the dictionary code of each row of a String column
+	 */
+	public int[] getCodes(int column) {
+		check(column, String.class);
+		return ints[column];
+	}
+
+	/**
+	 * @return the distinct values of a String column, indexed by code
+	 */
+	public String[] getDictionary(int column) {
+		check(column, String.class);
+		StringDictionary d = dictionaries[column];
+		return Arrays.copyOf(d.values, d.size);
+	}
+
+	public String getString(int column, int row) {
+		check(column, String.class);
+		return dictionaries[column].get(ints[column][row]);
+	}
+
+	private void check(int column, Class<?> type) {
+		if(types[column] != type)
+			throw new IllegalArgumentException("column " + column + " is " + types[column].getName());
+	}
+}
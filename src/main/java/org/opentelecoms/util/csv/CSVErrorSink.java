@@ -0,0 +1,39 @@
+/*
+ *  Receives the records a lenient CSVReader rejects
+ *
+ *  Copyright 2026 agent <agent@local>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opentelecoms.util.csv;
+
+/**
+ * Set with {@link CSVReader#setErrorSink(CSVErrorSink)} to skip bad
+ * records instead of failing on them.
+ */
+public interface CSVErrorSink {
+
+	/**
+	 * Called for each record that is skipped.
+	 *
+	 * @param record the number of the record, counting from 1; see
+	 *        {@link CSVReader#setErrorSink(CSVErrorSink)} for what it
+	 *        counts from
+	 * @param column the column of the bad field, counting from 1, or 0
+	 *        if the problem is with the whole record
+	 * @param reason what is wrong
+	 */
+	void reject(long record, int column, String reason);
+}
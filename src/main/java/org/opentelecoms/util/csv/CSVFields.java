@@ -0,0 +1,301 @@
+/*
+ *  Splits CSV records into fields, for char and byte input alike
+ *
+ *  Copyright 2026 agent <agent@local>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opentelecoms.util.csv;
+
+import java.util.Arrays;
+
+/**
+ * The record syntax shared by {@link CSVTokenizer}, which reads a char
+ * array, and {@link MappedCSVSource}, which reads mapped bytes.  Fields
+ * are separated by commas and records by LF or CRLF.  A field starting
+ * with a double quote runs to the matching closing quote, may contain
+ * commas and line breaks and represents a double quote by two of them
+ * (RFC 4180).  A quote anywhere else is an ordinary char.
+ *
+ * After split() the content of field i is at [starts[i], ends[i]) of
+ * the input; for a quoted field this excludes the surrounding quotes,
+ * and if escaped[i] is true it still contains doubled quotes, which
+ * field(i) removes.  Subclasses only provide access to the input and
+ * the decoding of field().
+ */
+abstract class CSVFields implements CSVRecord {
+
+	static final char DELIMITER = ',';
+	static final char QUOTE = '"';
+
+	/*
+	 * The quoting states of split(), for finding record boundaries
+	 * without splitting the records, as ParallelCSVLoader does.  A quote
+	 * only opens a quoted field at the start of a field; inside an
+	 * unquoted field, or after the closing quote, it is just a char.
+	 */
+	static final int FIELD_START = 0;
+	static final int UNQUOTED = 1;
+	static final int QUOTED = 2;
+	/* A quote in a quoted field, either closing it or the first of two */
+	static final int QUOTE_IN_QUOTED = 3;
+	static final int AFTER_QUOTED = 4;
+	static final int STATES = 5;
+
+	int recordStart;
+	int recordEnd;
+	int count;
+	int[] starts = new int[16];
+	int[] ends = new int[16];
+	boolean[] escaped = new boolean[16];
+	/* the reason the last record is malformed, or null */
+	String error;
+	int errorField;
+	/* Set by parseLong() when the field isn't a number in range */
+	boolean numberError;
+	final FieldView view = new FieldView();
+
+	/**
+	 * @return the char at p of the input; bytes are unsigned
+	 */
+	abstract int charAt(int p);
+
+	/**
+	 * Splits the record starting at pos.
+	 *
+	 * @param limit the end of the input available
+	 * @param last false if more input may follow limit, in which case a
+	 *        record that may not end before limit is left unsplit
+	 * @return the position after the record and its line break, or -1
+	 *         if the record needs the input after limit
+	 */
+	final int split(int pos, int limit, boolean last) {
+		recordStart = pos;
+		count = 0;
+		error = null;
+		while(true) {
+			if(count == starts.length)
+				grow();
+			boolean esc = false;
+			int start;
+			int fieldEnd;
+			if(pos < limit && charAt(pos) == QUOTE) {
+				start = ++pos;
+				while(true) {
+					if(pos >= limit) {
+						if(!last)
+							return -1;
+						fail("unterminated quoted field");
+						fieldEnd = pos;
+						break;
+					}
+					if(charAt(pos) == QUOTE) {
+						if(pos + 1 >= limit && !last)
+							return -1;
+						if(pos + 1 < limit && charAt(pos + 1) == QUOTE) {
+							esc = true;
+							pos += 2;
+							continue;
+						}
+						fieldEnd = pos++;
+						break;
+					}
+					pos++;
+				}
+				// anything between the closing quote and the delimiter is an error
+				int c;
+				while(pos < limit && (c = charAt(pos)) != DELIMITER && c != '\n') {
+					if(c != '\r' || pos + 1 < limit && charAt(pos + 1) != '\n')
+						fail("unexpected character after closing quote");
+					pos++;
+				}
+			} else {
+				start = pos;
+				int c;
+				while(pos < limit && (c = charAt(pos)) != DELIMITER && c != '\n')
+					pos++;
+				fieldEnd = pos;
+				if(fieldEnd > start && charAt(fieldEnd - 1) == '\r' && (pos == limit || charAt(pos) == '\n'))
+					fieldEnd--;
+			}
+			if(pos >= limit && !last)
+				return -1;
+			starts[count] = start;
+			ends[count] = fieldEnd;
+			escaped[count] = esc;
+			count++;
+			if(pos >= limit) {
+				recordEnd = pos;
+				return pos;
+			}
+			if(charAt(pos) == '\n') {
+				recordEnd = pos > recordStart && charAt(pos - 1) == '\r' ? pos - 1 : pos;
+				return pos + 1;
+			}
+			// a delimiter
+			pos++;
+		}
+	}
+
+	private void fail(String reason) {
+		if(error == null) {
+			error = reason;
+			errorField = count;
+		}
+	}
+
+	private void grow() {
+		int n = starts.length * 2;
+		starts = Arrays.copyOf(starts, n);
+		ends = Arrays.copyOf(ends, n);
+		escaped = Arrays.copyOf(escaped, n);
+	}
+
+	/**
+	 * @return the quoting state after c in state; a line break in any
+	 *         state but QUOTED ends the record
+	 */
+	static int nextState(int state, int c) {
+		switch(c) {
+		case QUOTE:
+			if(state == FIELD_START || state == QUOTE_IN_QUOTED)
+				return QUOTED;
+			return state == QUOTED ? QUOTE_IN_QUOTED : state;
+		case DELIMITER:
+		case '\n':
+			return state == QUOTED ? QUOTED : FIELD_START;
+		default:
+			if(state == FIELD_START)
+				return UNQUOTED;
+			return state == QUOTE_IN_QUOTED ? AFTER_QUOTED : state;
+		}
+	}
+
+	/**
+	 * @return true if the record is an empty line
+	 */
+	boolean isBlank() {
+		return recordEnd == recordStart;
+	}
+
+	public int fieldCount() {
+		return count;
+	}
+
+	public String getError() {
+		return error;
+	}
+
+	public int getErrorField() {
+		return errorField;
+	}
+
+	public boolean isEmpty(int i) {
+		return starts[i] == ends[i];
+	}
+
+	public CharSequence chars(int i) {
+		if(escaped[i])
+			return field(i);
+		view.start = starts[i];
+		view.length = ends[i] - starts[i];
+		return view;
+	}
+
+	public int intField(int i) {
+		long v = parseLong(i, Integer.MIN_VALUE, Integer.MAX_VALUE);
+		if(numberError)
+			throw badNumber(i);
+		return (int)v;
+	}
+
+	public long longField(int i) {
+		long v = parseLong(i, Long.MIN_VALUE, Long.MAX_VALUE);
+		if(numberError)
+			throw badNumber(i);
+		return v;
+	}
+
+	public boolean numberError() {
+		return numberError;
+	}
+
+	/*
+	 * Parses the digits in place, accumulating a negative value so that
+	 * Long.MIN_VALUE can be represented.  An escaped field holds a quote,
+	 * so it can't be a number.
+	 */
+	public long parseLong(int i, long min, long max) {
+		numberError = true;
+		if(escaped[i])
+			return 0;
+		int p = starts[i];
+		int e = ends[i];
+		boolean neg = p < e && charAt(p) == '-';
+		if(p < e && (neg || charAt(p) == '+'))
+			p++;
+		if(p == e)
+			return 0;
+		long limit = neg ? Long.MIN_VALUE : -Long.MAX_VALUE;
+		long v = 0;
+		for(; p < e; p++) {
+			int d = charAt(p) - '0';
+			if(d < 0 || d > 9 || v < limit / 10)
+				return 0;
+			v *= 10;
+			if(v < limit + d)
+				return 0;
+			v -= d;
+		}
+		if(!neg)
+			v = -v;
+		if(v < min || v > max)
+			return 0;
+		numberError = false;
+		return v;
+	}
+
+	private NumberFormatException badNumber(int i) {
+		return new NumberFormatException("For input string: \"" + field(i) + "\"");
+	}
+
+	/*
+	 * A field of the input, reused for every call to chars().
+	 */
+	final class FieldView implements CharSequence {
+		int start;
+		int length;
+
+		public int length() {
+			return length;
+		}
+
+		public char charAt(int index) {
+			return (char)CSVFields.this.charAt(start + index);
+		}
+
+		public CharSequence subSequence(int from, int to) {
+			StringBuilder sb = new StringBuilder(to - from);
+			for(int k = from; k < to; k++)
+				sb.append(charAt(k));
+			return sb.toString();
+		}
+
+		@Override
+		public String toString() {
+			return subSequence(0, length).toString();
+		}
+	}
+}
@@ -24,25 +24,49 @@ import java.lang.reflect.*;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.text.DateFormat;
+import java.text.ParsePosition;
 import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.function.Predicate;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Utility class for reading CSV data from input streams and dynamically
  * creating an object instance for each row.
  */
-public class CSVReader {
+public class CSVReader<T> {
 	
 	public static final String DEFAULT_DATE_FORMAT = "dd/MM/yyyy";
 	
 	Logger logger = Logger.getLogger(getClass().getCanonicalName());
 
-  Class targetClass;
-  Class[] pList;
-  Constructor[] pConstructor;
-  Constructor constructor;
+  Class<T> targetClass;
+  Class<?>[] pList;
+  Constructor<?>[] pConstructor;
+  Constructor<T> constructor;
   DateFormat dateFormat;
+  /* Null if the date format isn't a fixed width pattern */
+  FixedDateParser dateParser;
+
+  /* The column of each constructor parameter, or null for the first columns */
+  int[] projection;
+  int[] filterColumns = new int[0];
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  Predicate<CharSequence>[] filters = new Predicate[0];
+  /* The number of fields a record must have */
+  int fieldsNeeded;
+  /* For read(BufferedReader) once a projection, filter or error sink is set */
+  CSVTokenizer lineTokenizer;
+  /* Lines read by readTokenized(), to number rejected records */
+  long linesRead;
+  /* Null to throw on bad records instead of skipping them */
+  CSVErrorSink errorSink;
 
   /**
    * Instantiates a CSVReader.  Each CSV record will instantiate an
@@ -55,28 +79,143 @@ public class CSVReader {
    * @param targetClass the class to instantiate for each row.
    * @param paramList the specification for the constructor  to use when
    *                  instantiating targetClass
+   * @throws IllegalArgumentException if a parameter is a primitive type
+   *                  other than int, long or double
    */
-  public CSVReader(Class targetClass, Class[] paramList, String dateFormat) throws Exception {
+  public CSVReader(Class<T> targetClass, Class<?>[] paramList, String dateFormat) throws Exception {
     this.targetClass = targetClass;
     this.pList = paramList;
-    pConstructor = new Constructor[pList.length];
-    for(int i = 0; i < pList.length; i++)
-    	pConstructor[i] = pList[i].getConstructor(String.class); 
+    pConstructor = new Constructor<?>[pList.length];
+    // primitives and times are converted by convert(), not constructors
+    for(int i = 0; i < pList.length; i++) {
+      Class<?> c = pList[i];
+      if(c.isPrimitive()) {
+        if(c != Integer.TYPE && c != Long.TYPE && c != Double.TYPE)
+          throw new IllegalArgumentException("unsupported parameter type " + c.getName());
+      } else if(!isTime(c))
+        pConstructor[i] = c.getConstructor(String.class);
+    }
     constructor = targetClass.getConstructor(paramList);
     this.dateFormat = new SimpleDateFormat(dateFormat);
+    try {
+      dateParser = new FixedDateParser(dateFormat);
+    } catch (IllegalArgumentException e) {
+      // only SimpleDateFormat can parse it
+    }
+    fieldsNeeded = pList.length;
   }
 
-  public CSVReader(Class targetClass, Class[] paramList) throws Exception {
+  public CSVReader(Class<T> targetClass, Class<?>[] paramList) throws Exception {
 	  this(targetClass, paramList, DEFAULT_DATE_FORMAT);
   }
 
+  /**
+   * Set the parser for Date, LocalDate, LocalDateTime and Instant
+   * parameters, for example to parse times in another time zone.  By
+   * default the date format is used if it is a fixed width pattern.
+   */
+  public void setDateParser(FixedDateParser dateParser) {
+    this.dateParser = dateParser;
+  }
+
+  /**
+   * Take constructor parameter i from column columns[i] (counting from
+   * 0) instead of column i.  The other columns are skipped without
+   * being converted.
+   *
+   * @param columns one column for each constructor parameter, or null
+   *                to use the first columns again
+   */
+  public void setProjection(int... columns) {
+    if(columns != null && columns.length != pList.length)
+      throw new IllegalArgumentException("expected " + pList.length + " columns, got " + columns.length);
+    projection = columns == null ? null : columns.clone();
+    updateFieldsNeeded();
+  }
+
+  /**
+   * Skip the records whose field in column (counting from 0) doesn't
+   * satisfy predicate.  Filters are tested on the field as it is in the
+   * input buffer, before anything is converted or constructed, and all
+   * of them must accept a record.  The CharSequence is only valid
+   * during the call.  For a MappedCSVSource it holds the raw bytes as
+   * ISO-8859-1 chars, so non-ASCII text should be matched with care.
+   */
+  public void addFilter(int column, Predicate<CharSequence> predicate) {
+    int n = filters.length;
+    filterColumns = Arrays.copyOf(filterColumns, n + 1);
+    filters = Arrays.copyOf(filters, n + 1);
+    filterColumns[n] = column;
+    filters[n] = predicate;
+    updateFieldsNeeded();
+  }
+
+  private void updateFieldsNeeded() {
+    int n = pList.length;
+    if(projection != null)
+      for(int c : projection)
+        n = Math.max(n, c + 1);
+    for(int c : filterColumns)
+      n = Math.max(n, c + 1);
+    fieldsNeeded = n;
+  }
+
+  /**
+   * Skip bad records instead of failing on them, passing each one to
+   * sink with the column and the reason.  Records that are malformed,
+   * have too few fields or have a field that can't be converted are
+   * skipped, as is a record whose constructor throws.  int, long and
+   * time columns are checked without creating exceptions, so a file
+   * with many bad records is read at the same speed; other types,
+   * such as BigDecimal, can only be checked by catching the exception
+   * of their constructor.
+   *
+   * Records are numbered from 1, as they are in the input, counting
+   * those that are skipped: from the start of the MappedCSVSource or
+   * Reader given to read(), stream() or iterator(), from the start of
+   * the file in a ParallelCSVLoader, which passes them on after all
+   * of the file is loaded, and from the creation of a CSVTailer or the
+   * last time its file was truncated.
+   * read(BufferedReader) numbers lines rather than records, counting
+   * every line this CSVReader has read that way.
+   *
+   * @param sink the sink for bad records, or null to throw an
+   *             exception for the first one, as by default
+   */
+  public void setErrorSink(CSVErrorSink sink) {
+    this.errorSink = sink;
+  }
+
+  /**
+   * @return a filter accepting fields that start with prefix
+   */
+  public static Predicate<CharSequence> startsWith(final String prefix) {
+    return new Predicate<CharSequence>() {
+      public boolean test(CharSequence field) {
+        int n = prefix.length();
+        if(field.length() < n)
+          return false;
+        for(int i = 0; i < n; i++)
+          if(field.charAt(i) != prefix.charAt(i))
+            return false;
+        return true;
+      }
+    };
+  }
+
   /**
    * Read a single record from in, and return an instance of the
    * targetClass for this CSVReader.
    *
+   * Once a projection, filter or error sink is set each line is split
+   * by CSVTokenizer, blank lines and rejected records are skipped, and
+   * a quoted field can't contain a line break.
+   *
    * @param in a BufferedReader that is reading CSV format text
    */
-  public Object read(BufferedReader in) throws Exception {
+  public T read(BufferedReader in) throws Exception {
+    if(projection != null || filters.length > 0 || errorSink != null)
+      return readTokenized(in);
 	  int i = 0;
     try {
       String inputLine = in.readLine();
@@ -94,22 +233,10 @@ public class CSVReader {
         st.nextToken();
         if(st.ttype == StreamTokenizer.TT_WORD || st.ttype == '"') {
 	  //System.err.println("Token: " + st.sval);
-          if(pList[i] == String.class) {
-            if(args[i] != null) {
-              args[i] = args[i] + st.sval;
-            } else {
-              args[i] = st.sval;
-            }
-          } else if(pList[i] == java.lang.Integer.TYPE) {
-            args[i] = Integer.valueOf(st.sval);
-          } else if(pList[i] == java.lang.Long.TYPE) {
-            args[i] = Long.valueOf(st.sval);
-          } else if(pList[i] == java.util.Date.class) {
-	    args[i] = dateFormat.parse(st.sval);
-	  } else if(pList[i] == java.math.BigDecimal.class) {
-	    args[i] = new BigDecimal(st.sval);
+          if(pList[i] == String.class && args[i] != null) {
+            args[i] = args[i] + st.sval;
           } else {
-            args[i] = pConstructor[i].newInstance(st.sval);
+            args[i] = convert(i, st.sval, dateFormat);
           }
 	} else if(st.ttype == ',') {
           i++;
@@ -131,13 +258,236 @@ public class CSVReader {
     }
   }
 
-  Object getDefaultValue(Class c) {
+  private T readTokenized(BufferedReader in) throws Exception {
+    if(lineTokenizer == null)
+      lineTokenizer = new CSVTokenizer();
+    String inputLine;
+    while((inputLine = in.readLine()) != null) {
+      linesRead++;
+      char[] c = inputLine.toCharArray();
+      lineTokenizer.tokenize(c, 0, c.length);
+      if(lineTokenizer.isBlank())
+        continue;
+      T o = bind(lineTokenizer, dateFormat, linesRead, errorSink);
+      if(o != null)
+        return o;
+    }
+    return null;
+  }
+
+  /**
+   * Read a single record from in, splitting its fields in the mapped
+   * file and only decoding the columns whose type needs a String.
+   *
+   * @return an instance of targetClass, or null at the end of the file
+   */
+  public T read(MappedCSVSource in) throws Exception {
+    T o = null;
+    while(o == null && in.next()) {
+      try {
+        o = bind(in, dateFormat, in.record, errorSink);
+      } catch (Exception e) {
+        logger.severe("exception while parsing record at byte " + in.getPosition() + ":" + e.getMessage());
+        throw e;
+      }
+    }
+    return o;
+  }
+
+  /**
+   * Convert the text of column i to the type of the matching
+   * constructor parameter.
+   *
+   * @param df the DateFormat to use, as it can't be shared between threads
+   */
+  Object convert(int i, String s, DateFormat df) throws Exception {
+    Class<?> c = pList[i];
+    if(c == String.class)
+      return s;
+    else if(c == Integer.TYPE)
+      return Integer.valueOf(s);
+    else if(c == Long.TYPE)
+      return Long.valueOf(s);
+    else if(c == Double.TYPE)
+      return Double.valueOf(s);
+    else if(isTime(c))
+      return convertTime(c, s, df);
+    else if(c == BigDecimal.class)
+      return new BigDecimal(s);
+    return pConstructor[i].newInstance(s);
+  }
+
+  static boolean isTime(Class<?> c) {
+    return c == Date.class || c == LocalDate.class || c == LocalDateTime.class || c == Instant.class;
+  }
+
+  /**
+   * Parse a time with the fixed width parser, which is thread safe and
+   * reads the digits from s without creating any other objects.  A Date
+   * that it rejects, such as 1/2/2012 or 31/02/2012, is given to df as
+   * before, as SimpleDateFormat is lenient.  The java.time types need
+   * the fixed width parser.
+   */
+  Object convertTime(Class<?> c, CharSequence s, DateFormat df) throws Exception {
+    if(c == Date.class) {
+      if(dateParser != null) {
+        try {
+          return new Date(dateParser.parseEpochMillis(s));
+        } catch (DateTimeParseException e) {
+          // try the lenient DateFormat
+        }
+      }
+      return df.parse(s.toString());
+    }
+    if(dateParser == null)
+      throw new Exception("no fixed width date parser for " + c.getSimpleName());
+    if(c == LocalDate.class)
+      return dateParser.parseLocalDate(s);
+    else if(c == LocalDateTime.class)
+      return dateParser.parseLocalDateTime(s);
+    return dateParser.parseInstant(s);
+  }
+
+  /**
+   * Create the instance of targetClass for the record r.  Empty
+   * fields get the same default values as in read(), and int, long
+   * and time columns are parsed without creating a String.
+   *
+   * @param record the number of r, for sink
+   * @param sink where to report a bad record instead of throwing, or
+   *             null
+   * @return null if a filter rejects the record or it is reported to
+   *         sink
+   */
+  T bind(CSVRecord r, DateFormat df, long record, CSVErrorSink sink) throws Exception {
+    if(r.getError() != null) {
+      if(sink == null)
+        throw new Exception("column " + (r.getErrorField() + 1) + ": " + r.getError());
+      sink.reject(record, r.getErrorField() + 1, r.getError());
+      return null;
+    }
+    if(r.fieldCount() < fieldsNeeded) {
+      if(sink == null)
+        throw new Exception("expected " + fieldsNeeded + " fields, found " + r.fieldCount());
+      sink.reject(record, 0, "expected " + fieldsNeeded + " fields, found " + r.fieldCount());
+      return null;
+    }
+    for(int k = 0; k < filters.length; k++)
+      if(!filters[k].test(r.chars(filterColumns[k])))
+        return null;
+    Object[] args = new Object[pList.length];
+    for(int i = 0; i < pList.length; i++) {
+      Class<?> c = pList[i];
+      int col = projection == null ? i : projection[i];
+      if(sink != null) {
+        String reason = convertLenient(r, i, col, df, args);
+        if(reason != null) {
+          sink.reject(record, col + 1, reason);
+          return null;
+        }
+        continue;
+      }
+      try {
+        if(r.isEmpty(col))
+          args[i] = getDefaultValue(c);
+        else if(c == Integer.TYPE)
+          args[i] = Integer.valueOf(r.intField(col));
+        else if(c == Long.TYPE)
+          args[i] = Long.valueOf(r.longField(col));
+        else if(isTime(c))
+          args[i] = convertTime(c, r.chars(col), df);
+        else
+          args[i] = convert(i, r.field(col), df);
+      } catch (Exception e) {
+        throw new Exception("column " + (col + 1) + ": " + e, e);
+      }
+    }
+    if(sink == null)
+      return constructor.newInstance(args);
+    try {
+      return constructor.newInstance(args);
+    } catch (InvocationTargetException e) {
+      sink.reject(record, 0, String.valueOf(e.getCause()));
+      return null;
+    }
+  }
+
+  /**
+   * Convert column col of r into args[i] as bind() does, but without
+   * throwing for int, long and time columns.
+   *
+   * @return the reason the field can't be converted, or null
+   */
+  private String convertLenient(CSVRecord r, int i, int col, DateFormat df, Object[] args) {
+    Class<?> c = pList[i];
+    if(r.isEmpty(col)) {
+      args[i] = getDefaultValue(c);
+    } else if(c == Integer.TYPE) {
+      int v = (int)r.parseLong(col, Integer.MIN_VALUE, Integer.MAX_VALUE);
+      if(r.numberError())
+        return "not an int";
+      args[i] = Integer.valueOf(v);
+    } else if(c == Long.TYPE) {
+      long v = r.parseLong(col, Long.MIN_VALUE, Long.MAX_VALUE);
+      if(r.numberError())
+        return "not a long";
+      args[i] = Long.valueOf(v);
+    } else if(c == String.class) {
+      args[i] = r.field(col);
+    } else if(isTime(c)) {
+      Object v = parseTime(c, r.chars(col), df);
+      if(v == null)
+        return dateParser == null && c != Date.class
+            ? "no fixed width date parser for " + c.getSimpleName() : "not a date";
+      args[i] = v;
+    } else {
+      // BigDecimal and the String constructors can only fail by throwing
+      try {
+        args[i] = convert(i, r.field(col), df);
+      } catch (InvocationTargetException e) {
+        return String.valueOf(e.getCause());
+      } catch (Exception e) {
+        return e.toString();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * As convertTime(), but returns null for a bad time instead of
+   * throwing.
+   */
+  private Object parseTime(Class<?> c, CharSequence s, DateFormat df) {
+    if(c == Date.class) {
+      if(dateParser != null) {
+        long ms = dateParser.tryParseEpochMillis(s);
+        if(ms != FixedDateParser.INVALID)
+          return new Date(ms);
+      }
+      // returns null where parse(String) would throw
+      return df.parse(s.toString(), new ParsePosition(0));
+    }
+    if(dateParser == null)
+      return null;
+    if(c == Instant.class) {
+      long ms = dateParser.tryParseEpochMillis(s);
+      return ms == FixedDateParser.INVALID ? null : Instant.ofEpochMilli(ms);
+    }
+    long local = dateParser.tryParseLocalMillis(s);
+    if(local == FixedDateParser.INVALID)
+      return null;
+    return c == LocalDate.class ? FixedDateParser.toLocalDate(local) : FixedDateParser.toLocalDateTime(local);
+  }
+
+  Object getDefaultValue(Class<?> c) {
     if(c == String.class)
       return "";
     else if(c == Integer.TYPE) 
       return new Integer("0");
     else if(c == Long.TYPE)
       return new Long("0");
+    else if(c == Double.TYPE)
+      return Double.valueOf(0);
 
     return null;
   }
@@ -146,11 +496,11 @@ public class CSVReader {
    * Read all lines from in, and return a Vector containing instances
    * of targetClass, one instance per CSV record.
    */
-  public List readAll(BufferedReader in) throws Exception {
+  public List<T> readAll(BufferedReader in) throws Exception {
 	  int row = 1;
-    ArrayList r = new ArrayList();
+    ArrayList<T> r = new ArrayList<T>();
     try {
-      Object o = read(in);
+      T o = read(in);
       while(o != null) {
 	r.add(o);
 	row++;
@@ -163,6 +513,45 @@ public class CSVReader {
     return r;
   }
 
-}
+  /**
+   * Read all records from in, one instance of targetClass per record.
+   */
+  public List<T> readAll(MappedCSVSource in) throws Exception {
+    ArrayList<T> r = new ArrayList<T>();
+    T o;
+    while((o = read(in)) != null)
+      r.add(o);
+    return r;
+  }
+
+  /**
+   * Returns the records of in as a lazily read Stream of targetClass
+   * instances, so that inputs of any size can be processed in constant
+   * memory.  A parallel stream hands batches of records to other
+   * threads.  Closing the stream closes in.
+   *
+   * A malformed record ends the stream with an
+   * IllegalArgumentException and an I/O error with an
+   * UncheckedIOException.
+   */
+  public Stream<T> stream(final Reader in) {
+    return StreamSupport.stream(new CSVSpliterator<T>(this, in), false).onClose(new Runnable() {
+      public void run() {
+        try {
+          in.close();
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+    });
+  }
 
+  /**
+   * Returns an Iterator that reads the records of in as it advances,
+   * with the same error handling as stream().
+   */
+  public Iterator<T> iterator(Reader in) {
+    return Spliterators.iterator(new CSVSpliterator<T>(this, in));
+  }
 
+}
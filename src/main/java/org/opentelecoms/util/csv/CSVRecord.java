@@ -0,0 +1,62 @@
+/*
+ *  The fields of one CSV record, as found by a tokenizer
+ *
+ *  Copyright 2026 agent <agent@local>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opentelecoms.util.csv;
+
+/**
+ * A record whose fields are still in the tokenizer's buffer, so that
+ * numeric columns can be parsed in place and only the columns that
+ * need a String are copied into one.
+ */
+interface CSVRecord {
+
+	int fieldCount();
+
+	/**
+	 * @return the reason the record is malformed, or null
+	 */
+	String getError();
+
+	int getErrorField();
+
+	boolean isEmpty(int i);
+
+	/**
+	 * @return the value of field i with any quoting removed
+	 */
+	String field(int i);
+
+	/**
+	 * @return the raw content of field i without copying it, valid
+	 *         until the next call
+	 */
+	CharSequence chars(int i);
+
+	int intField(int i);
+
+	long longField(int i);
+
+	/**
+	 * Parses field i without throwing: if it isn't a number from min to
+	 * max, 0 is returned and numberError() is true until the next call.
+	 */
+	long parseLong(int i, long min, long max);
+
+	boolean numberError();
+}
@@ -0,0 +1,72 @@
+/*
+ *  A Spliterator over the records read from a Reader
+ *
+ *  Copyright 2026 agent <agent@local>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opentelecoms.util.csv;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.text.DateFormat;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+/**
+ * Binds the records of a {@link ReaderCSVSource}, so only the current
+ * record is held in memory.  A Reader can't be split by position, so
+ * trySplit() is inherited from AbstractSpliterator, which hands batches
+ * of records to other threads.
+ *
+ * Malformed records are reported with an IllegalArgumentException
+ * giving the record number, and I/O errors with an
+ * UncheckedIOException.
+ */
+final class CSVSpliterator<T> extends Spliterators.AbstractSpliterator<T> {
+
+	final CSVReader<T> reader;
+	final ReaderCSVSource source;
+	/* SimpleDateFormat isn't thread safe, so each spliterator has its own */
+	final DateFormat df;
+	long record;
+
+	CSVSpliterator(CSVReader<T> reader, Reader in) {
+		super(Long.MAX_VALUE, ORDERED | NONNULL);
+		this.reader = reader;
+		this.source = new ReaderCSVSource(in);
+		df = (DateFormat)reader.dateFormat.clone();
+	}
+
+	public boolean tryAdvance(Consumer<? super T> action) {
+		T value = null;
+		try {
+			// skip the records rejected by the reader's filters or error sink
+			while(value == null) {
+				if(!source.next())
+					return false;
+				record++;
+				value = reader.bind(source.t, df, record, reader.errorSink);
+			}
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		} catch (Exception ex) {
+			throw new IllegalArgumentException("record " + record + ": " + ex.getMessage(), ex);
+		}
+		action.accept(value);
+		return true;
+	}
+}
@@ -0,0 +1,234 @@
+/*
+ *  Follows a CSV file as records are appended to it
+ *
+ *  Copyright 2026 agent <agent@local>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opentelecoms.util.csv;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Reads the records appended to a CSV file since the last call, such as
+ * CDRs written by a switch, without reading the file from the start
+ * again.
+ *
+ * The tailer keeps the byte offset of the first record it hasn't
+ * delivered.  A record is only delivered once its line break has been
+ * written, so a record, or a quoted field, that is still being written
+ * is read again in full by a later poll.  Records are parsed from the
+ * mapped file as by {@link MappedCSVSource}.
+ *
+ * With a checkpoint file, the offset is saved after every poll that
+ * moves it and is read back when the tailer is created, so a
+ * restarted process carries on where it stopped.  The offset is saved
+ * after the records are delivered, so records delivered just before a
+ * crash are delivered again after the restart.
+ *
+ * If the file becomes shorter than the offset it is taken to have been
+ * truncated or replaced and is read from the start again, with the
+ * records passed to a {@link CSVErrorSink} numbered from 1 again.
+ */
+public class CSVTailer<T> implements Closeable {
+
+	public static final long DEFAULT_POLL_INTERVAL = 1000L;
+
+	Logger logger = Logger.getLogger(getClass().getName());
+
+	final CSVReader<T> reader;
+	final File file;
+	final Charset charset;
+	File checkpoint;
+	long offset;
+	/* Records read since the tailer was created or the file truncated, to number rejects */
+	long records;
+	long pollInterval = DEFAULT_POLL_INTERVAL;
+	volatile boolean closed;
+
+	public CSVTailer(CSVReader<T> reader, File file) {
+		this(reader, file, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @param charset the encoding of the file, which must be ASCII
+	 *        compatible
+	 */
+	public CSVTailer(CSVReader<T> reader, File file, Charset charset) {
+		this.reader = reader;
+		this.file = file;
+		this.charset = charset;
+	}
+
+	/**
+	 * Saves the offset in checkpoint after each poll, resuming from the
+	 * offset saved there if it exists.
+	 */
+	public void setCheckpoint(File checkpoint) throws IOException {
+		this.checkpoint = checkpoint;
+		if(checkpoint.exists()) {
+			String saved = new String(Files.readAllBytes(checkpoint.toPath()), StandardCharsets.US_ASCII).trim();
+			try {
+				offset = Long.parseLong(saved);
+			} catch (NumberFormatException ex) {
+				throw new IOException("bad checkpoint in " + checkpoint + ": " + saved);
+			}
+		}
+	}
+
+	/**
+	 * @return the offset of the first record not delivered yet
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	/**
+	 * Continue from offset, which must be the start of a record.
+	 */
+	public void setOffset(long offset) {
+		this.offset = offset;
+	}
+
+	/**
+	 * @param pollInterval the most time, in milliseconds, that
+	 *        {@link #follow(Consumer)} waits for a change notification
+	 *        before checking the file anyway
+	 */
+	public void setPollInterval(long pollInterval) {
+		this.pollInterval = pollInterval;
+	}
+
+	/**
+	 * Passes each complete record appended since the last poll to sink.
+	 * If a record can't be parsed, the records before it have been
+	 * delivered, the offset is left at its start and the exception is
+	 * thrown; use setOffset() to skip it.
+	 *
+	 * @return the number of records delivered
+	 */
+	public int poll(Consumer<? super T> sink) throws Exception {
+		if(!file.exists())
+			return 0;
+		long size = file.length();
+		if(size < offset) {
+			logger.warning(file + " is shorter than offset " + offset + ", reading it from the start");
+			offset = 0;
+			records = 0;
+		}
+		if(size == offset)
+			return 0;
+		int n = 0;
+		long start = offset;
+		MappedCSVSource in = new MappedCSVSource(file, charset, offset, true);
+		in.record = records;
+		Exception failure = null;
+		try {
+			T row;
+			while((row = reader.read(in)) != null) {
+				sink.accept(row);
+				n++;
+				offset = in.getNextPosition();
+				records = in.record;
+			}
+			// records rejected by filters or the error sink after the last delivered one
+			offset = in.getNextPosition();
+			records = in.record;
+		} catch (Exception ex) {
+			failure = ex;
+		} finally {
+			in.close();
+		}
+		// the records delivered before a failure are checkpointed too
+		if(offset != start) {
+			try {
+				saveCheckpoint();
+			} catch (IOException ex) {
+				if(failure == null)
+					throw ex;
+				failure.addSuppressed(ex);
+			}
+		}
+		if(failure != null)
+			throw failure;
+		return n;
+	}
+
+	/*
+	 * Replaces the checkpoint atomically, so a crash leaves the old one.
+	 */
+	private void saveCheckpoint() throws IOException {
+		if(checkpoint == null)
+			return;
+		File tmp = new File(checkpoint.getPath() + ".tmp");
+		FileOutputStream out = new FileOutputStream(tmp);
+		try {
+			out.write(Long.toString(offset).getBytes(StandardCharsets.US_ASCII));
+			out.getFD().sync();
+		} finally {
+			out.close();
+		}
+		Files.move(tmp.toPath(), checkpoint.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Polls the file whenever its directory reports a change, and at
+	 * least every poll interval as not every file system reports
+	 * changes, until close() is called.  Interrupting the thread ends it
+	 * with an InterruptedException.
+	 */
+	public void follow(Consumer<? super T> sink) throws Exception {
+		Path dir = file.getAbsoluteFile().getParentFile().toPath();
+		WatchService watcher = FileSystems.getDefault().newWatchService();
+		try {
+			dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_MODIFY);
+			while(!closed) {
+				poll(sink);
+				WatchKey key = watcher.poll(pollInterval, TimeUnit.MILLISECONDS);
+				if(key != null) {
+					// any change in the directory is reason enough to look
+					key.pollEvents();
+					key.reset();
+				}
+			}
+		} finally {
+			watcher.close();
+		}
+	}
+
+	/**
+	 * Makes {@link #follow(Consumer)} return after its current poll.
+	 */
+	public void close() {
+		closed = true;
+	}
+}
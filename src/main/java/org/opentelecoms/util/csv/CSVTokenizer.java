@@ -0,0 +1,77 @@
+/*
+ *  Splits CSV records held in a char array into fields without
+ *  copying them
+ *
+ *  Copyright 2026 agent <agent@local>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opentelecoms.util.csv;
+
+/**
+ * Finds the fields of one record at a time in a char array, with the
+ * syntax described in {@link CSVFields}.
+ *
+ * After tokenize() the content of field i is buf[start(i), end(i));
+ * for a quoted field this excludes the surrounding quotes, and if
+ * escaped(i) is true it still contains doubled quotes, which field(i)
+ * removes.  A tokenizer is reused for every record and is not thread
+ * safe.
+ */
+final class CSVTokenizer extends CSVFields {
+
+	char[] buf;
+
+	/**
+	 * Splits the record starting at pos.
+	 *
+	 * @return the position after the record and its line break
+	 */
+	int tokenize(char[] buf, int pos, int end) {
+		this.buf = buf;
+		return split(pos, end, true);
+	}
+
+	int charAt(int p) {
+		return buf[p];
+	}
+
+	int start(int i) {
+		return starts[i];
+	}
+
+	int end(int i) {
+		return ends[i];
+	}
+
+	boolean escaped(int i) {
+		return escaped[i];
+	}
+
+	public String field(int i) {
+		int s = starts[i];
+		int e = ends[i];
+		if(!escaped[i])
+			return new String(buf, s, e - s);
+		StringBuilder sb = new StringBuilder(e - s);
+		for(int p = s; p < e; p++) {
+			char c = buf[p];
+			sb.append(c);
+			if(c == QUOTE)
+				p++;
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,417 @@
+/*
+ *  Utility class for writing CSV files
+ *
+ *  Copyright 2026 agent <agent@local>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opentelecoms.util.csv;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * Writes objects as CSV records, the counterpart of {@link CSVReader}:
+ * each column is a property of the source class, and a file written
+ * with the properties that match a constructor's parameters can be
+ * read back with a CSVReader for that constructor.
+ *
+ * The accessors are resolved once, as MethodHandles typed for their
+ * column, so writing a row neither uses reflection nor boxes
+ * primitives.  int, long and date values are formatted straight into a
+ * reusable char buffer, and fields are quoted as in RFC 4180 only when
+ * they contain a comma, a double quote or a line break.  Null values
+ * are written as empty fields.
+ *
+ * Output goes to a Writer, or is encoded into a large ByteBuffer that
+ * is written to a FileChannel when it fills.  Call {@link #flush()} or
+ * {@link #close()} to write out the buffers.  Not thread safe.
+ */
+public class CSVWriter<T> implements Closeable, Flushable {
+
+	public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+	/* The ByteBuffer for a FileChannel is this many times the char buffer */
+	private static final int BYTES_PER_BUFFER = 16;
+
+	private static final int STRING = 0;
+	private static final int INT = 1;
+	private static final int LONG = 2;
+	private static final int DOUBLE = 3;
+	private static final int FLOAT = 4;
+	private static final int DATE = 5;
+	private static final int LOCAL_DATE = 6;
+	private static final int LOCAL_DATE_TIME = 7;
+	private static final int INSTANT = 8;
+	private static final int OTHER = 9;
+
+	private static final long MILLIS_PER_DAY = 24 * 3600 * 1000L;
+
+	final Class<T> sourceClass;
+	final String[] columns;
+	final int[] kinds;
+	final MethodHandle[] accessors;
+	FixedDateParser dateParser = new FixedDateParser(CSVReader.DEFAULT_DATE_FORMAT);
+	char[] lineSeparator = { '\r', '\n' };
+
+	final Writer writer;
+	final FileChannel channel;
+	final CharsetEncoder encoder;
+	ByteBuffer bytes;
+
+	char[] buf = new char[DEFAULT_BUFFER_SIZE];
+	int pos;
+
+	/**
+	 * @param sourceClass the class of the objects to write
+	 * @param columns the property of each column, found as a public
+	 *        getX(), isX() or x() method or else as a field x
+	 * @param out where to write the records
+	 */
+	public CSVWriter(Class<T> sourceClass, String[] columns, Writer out) throws Exception {
+		this(sourceClass, columns, out, null, null);
+	}
+
+	/**
+	 * Writes UTF-8 to out.
+	 */
+	public CSVWriter(Class<T> sourceClass, String[] columns, FileChannel out) throws Exception {
+		this(sourceClass, columns, out, Charset.forName("UTF-8"));
+	}
+
+	public CSVWriter(Class<T> sourceClass, String[] columns, FileChannel out, Charset charset)
+			throws Exception {
+		this(sourceClass, columns, null, out, charset);
+	}
+
+	private CSVWriter(Class<T> sourceClass, String[] columns, Writer writer, FileChannel channel,
+			Charset charset) throws Exception {
+		this.sourceClass = sourceClass;
+		this.columns = columns.clone();
+		this.writer = writer;
+		this.channel = channel;
+		if(channel != null) {
+			encoder = charset.newEncoder()
+					.onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			bytes = ByteBuffer.allocateDirect(DEFAULT_BUFFER_SIZE * BYTES_PER_BUFFER);
+		} else {
+			encoder = null;
+		}
+		kinds = new int[columns.length];
+		accessors = new MethodHandle[columns.length];
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		for(int i = 0; i < columns.length; i++) {
+			Member m = accessor(sourceClass, columns[i]);
+			MethodHandle mh;
+			Class<?> type;
+			if(m instanceof Method) {
+				mh = lookup.unreflect((Method)m);
+				type = ((Method)m).getReturnType();
+			} else {
+				mh = lookup.unreflectGetter((Field)m);
+				type = ((Field)m).getType();
+			}
+			int kind = kind(type);
+			Class<?> handleType = kind == INT ? Integer.TYPE : kind == LONG ? Long.TYPE
+					: kind == DOUBLE ? Double.TYPE : kind == FLOAT ? Float.TYPE : Object.class;
+			kinds[i] = kind;
+			accessors[i] = mh.asType(MethodType.methodType(handleType, Object.class));
+		}
+	}
+
+	private static Member accessor(Class<?> c, String name) throws NoSuchFieldException {
+		String cap = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+		for(String n : new String[] { "get" + cap, "is" + cap, name }) {
+			try {
+				Method m = c.getMethod(n);
+				if(m.getReturnType() != Void.TYPE)
+					return m;
+			} catch (NoSuchMethodException e) {
+				// try the next form
+			}
+		}
+		for(Class<?> k = c; k != null; k = k.getSuperclass()) {
+			try {
+				Field f = k.getDeclaredField(name);
+				if(!Modifier.isPublic(f.getModifiers()) || !Modifier.isPublic(k.getModifiers()))
+					f.setAccessible(true);
+				return f;
+			} catch (NoSuchFieldException e) {
+				// try the superclass
+			}
+		}
+		throw new NoSuchFieldException(c.getName() + " has no property " + name);
+	}
+
+	private static int kind(Class<?> type) {
+		if(type == String.class)
+			return STRING;
+		else if(type == Integer.TYPE || type == Short.TYPE || type == Byte.TYPE)
+			return INT;
+		else if(type == Long.TYPE)
+			return LONG;
+		else if(type == Double.TYPE)
+			return DOUBLE;
+		else if(type == Float.TYPE)
+			return FLOAT;
+		else if(Date.class.isAssignableFrom(type))
+			return DATE;
+		else if(type == LocalDate.class)
+			return LOCAL_DATE;
+		else if(type == LocalDateTime.class)
+			return LOCAL_DATE_TIME;
+		else if(type == Instant.class)
+			return INSTANT;
+		return OTHER;
+	}
+
+	/**
+	 * Set the format of Date, LocalDate, LocalDateTime and Instant
+	 * columns, by default {@link CSVReader#DEFAULT_DATE_FORMAT} in the
+	 * default time zone.
+	 */
+	public void setDateParser(FixedDateParser dateParser) {
+		this.dateParser = dateParser;
+	}
+
+	/**
+	 * @param separator the end of each record, CRLF by default as in
+	 *        RFC 4180
+	 */
+	public void setLineSeparator(String separator) {
+		lineSeparator = separator.toCharArray();
+	}
+
+	/**
+	 * Append row as one record.
+	 */
+	public void write(T row) throws IOException {
+		try {
+			for(int i = 0; i < kinds.length; i++) {
+				if(i > 0) {
+					ensure(1);
+					buf[pos++] = CSVTokenizer.DELIMITER;
+				}
+				MethodHandle mh = accessors[i];
+				switch(kinds[i]) {
+				case INT:
+					appendLong((int)mh.invokeExact((Object)row));
+					break;
+				case LONG:
+					appendLong((long)mh.invokeExact((Object)row));
+					break;
+				case DOUBLE:
+					appendText(Double.toString((double)mh.invokeExact((Object)row)));
+					break;
+				case FLOAT:
+					// the shortest text for the float, not for it widened to double
+					appendText(Float.toString((float)mh.invokeExact((Object)row)));
+					break;
+				default:
+					appendObject(kinds[i], (Object)mh.invokeExact((Object)row));
+				}
+			}
+		} catch (IOException e) {
+			throw e;
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Error e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new IOException("can't read a column of " + sourceClass.getName(), t);
+		}
+		ensure(lineSeparator.length);
+		for(char c : lineSeparator)
+			buf[pos++] = c;
+	}
+
+	/**
+	 * Append a record for each row.
+	 */
+	public void writeAll(Iterable<? extends T> rows) throws IOException {
+		for(T row : rows)
+			write(row);
+	}
+
+	private void appendObject(int kind, Object v) throws IOException {
+		if(v == null)
+			return;
+		switch(kind) {
+		case DATE:
+			ensure(dateParser.length());
+			pos = dateParser.formatEpochMillis(((Date)v).getTime(), buf, pos);
+			break;
+		case INSTANT:
+			ensure(dateParser.length());
+			pos = dateParser.formatEpochMillis(((Instant)v).toEpochMilli(), buf, pos);
+			break;
+		case LOCAL_DATE:
+			ensure(dateParser.length());
+			pos = dateParser.formatLocalMillis(((LocalDate)v).toEpochDay() * MILLIS_PER_DAY, buf, pos);
+			break;
+		case LOCAL_DATE_TIME:
+			LocalDateTime t = (LocalDateTime)v;
+			ensure(dateParser.length());
+			pos = dateParser.formatLocalMillis(t.toEpochSecond(ZoneOffset.UTC) * 1000
+					+ t.getNano() / 1000000, buf, pos);
+			break;
+		default:
+			appendText(v.toString());
+		}
+	}
+
+	/*
+	 * Writes the digits backwards from the end, negated so that
+	 * Long.MIN_VALUE needs no special case.
+	 */
+	private void appendLong(long v) throws IOException {
+		ensure(20);
+		boolean neg = v < 0;
+		if(!neg)
+			v = -v;
+		int n = 1;
+		for(long r = v / 10; r != 0; r /= 10)
+			n++;
+		if(neg)
+			buf[pos++] = '-';
+		for(int k = pos + n - 1; k >= pos; k--) {
+			buf[k] = (char)('0' - v % 10);
+			v /= 10;
+		}
+		pos += n;
+	}
+
+	/*
+	 * Quotes s if it contains a delimiter, quote or line break.
+	 */
+	private void appendText(String s) throws IOException {
+		int n = s.length();
+		boolean quote = false;
+		for(int k = 0; k < n && !quote; k++) {
+			char c = s.charAt(k);
+			quote = c == CSVTokenizer.DELIMITER || c == CSVTokenizer.QUOTE || c == '\n' || c == '\r';
+		}
+		if(!quote) {
+			ensure(n);
+			s.getChars(0, n, buf, pos);
+			pos += n;
+			return;
+		}
+		ensure(n * 2 + 2);
+		buf[pos++] = CSVTokenizer.QUOTE;
+		for(int k = 0; k < n; k++) {
+			char c = s.charAt(k);
+			if(c == CSVTokenizer.QUOTE)
+				buf[pos++] = CSVTokenizer.QUOTE;
+			buf[pos++] = c;
+		}
+		buf[pos++] = CSVTokenizer.QUOTE;
+	}
+
+	/*
+	 * Makes room for n more chars, writing out the buffer or growing it.
+	 */
+	private void ensure(int n) throws IOException {
+		if(pos + n <= buf.length)
+			return;
+		flushChars();
+		// half a surrogate pair may still be in the buffer
+		if(pos + n > buf.length)
+			buf = Arrays.copyOf(buf, Math.max(pos + n, buf.length * 2));
+	}
+
+	private void flushChars() throws IOException {
+		if(writer != null) {
+			writer.write(buf, 0, pos);
+			pos = 0;
+			return;
+		}
+		CharBuffer in = CharBuffer.wrap(buf, 0, pos);
+		while(true) {
+			CoderResult r = encoder.encode(in, bytes, false);
+			if(!r.isOverflow())
+				break;
+			writeBytes();
+		}
+		// a surrogate pair split at the end of the buffer stays for next time
+		int left = in.remaining();
+		System.arraycopy(buf, in.position(), buf, 0, left);
+		pos = left;
+	}
+
+	private void writeBytes() throws IOException {
+		// through Buffer, as ByteBuffer.flip() and clear() are new in Java 9
+		((Buffer)bytes).flip();
+		while(bytes.hasRemaining())
+			channel.write(bytes);
+		((Buffer)bytes).clear();
+	}
+
+	/**
+	 * Writes out everything buffered.  A FileChannel is not forced to
+	 * the disk.
+	 */
+	public void flush() throws IOException {
+		flushChars();
+		if(writer != null) {
+			writer.flush();
+		} else {
+			writeBytes();
+		}
+	}
+
+	/**
+	 * Flushes and closes the Writer or FileChannel.
+	 */
+	public void close() throws IOException {
+		if(writer != null) {
+			flush();
+			writer.close();
+			return;
+		}
+		flushChars();
+		CharBuffer in = CharBuffer.wrap(buf, 0, pos);
+		while(encoder.encode(in, bytes, true).isOverflow())
+			writeBytes();
+		while(encoder.flush(bytes).isOverflow())
+			writeBytes();
+		pos = 0;
+		writeBytes();
+		channel.close();
+	}
+}
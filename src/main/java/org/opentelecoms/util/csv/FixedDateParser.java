@@ -0,0 +1,383 @@
+/*
+ *  A thread safe parser for dates and times in a fixed width format
+ *
+ *  Copyright 2026 agent <agent@local>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opentelecoms.util.csv;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+
+/**
+ * Parses dates such as dd/MM/yyyy or yyyy-MM-dd'T'HH:mm:ss.SSS by
+ * reading the digits at fixed positions, without the Calendar,
+ * ParsePosition and intermediate objects of SimpleDateFormat, and
+ * formats them the same way for {@link CSVWriter}.  A parser is
+ * immutable, so one can be shared by any number of threads.
+ *
+ * The pattern letters are those of SimpleDateFormat, limited to the
+ * fixed width fields yyyy, MM, dd, HH, mm, ss and SSS; any other
+ * letter is rejected with an IllegalArgumentException.  Other
+ * characters, and text in single quotes, must appear as they are.
+ * Unlike a lenient SimpleDateFormat, out of range values such as
+ * 31/02/2012 are errors, and dates before 1582 are in the proleptic
+ * Gregorian calendar, as in java.time.
+ */
+public final class FixedDateParser {
+
+	private static final int LITERAL = 0;
+	private static final int YEAR = 1;
+	private static final int MONTH = 2;
+	private static final int DAY = 3;
+	private static final int HOUR = 4;
+	private static final int MINUTE = 5;
+	private static final int SECOND = 6;
+	private static final int MILLI = 7;
+
+	private static final long MILLIS_PER_DAY = 24 * 3600 * 1000L;
+
+	/*
+	 * Returned by the tryParse methods for a bad value: no four digit
+	 * year comes near it.
+	 */
+	static final long INVALID = Long.MIN_VALUE;
+
+	final String pattern;
+	final ZoneId zone;
+	/* The offset of zone if it never changes, else null */
+	final ZoneOffset fixedOffset;
+
+	/* One element per field or literal char */
+	final int[] kinds;
+	final int[] widths;
+	final char[] literals;
+	final int length;
+
+	/**
+	 * Creates a parser for times in the default time zone, as
+	 * SimpleDateFormat does.
+	 */
+	public FixedDateParser(String pattern) {
+		this(pattern, ZoneId.systemDefault());
+	}
+
+	/**
+	 * @param zone the time zone of the parsed local times, used when
+	 *        they are converted to epoch values
+	 */
+	public FixedDateParser(String pattern, ZoneId zone) {
+		this.pattern = pattern;
+		this.zone = zone;
+		fixedOffset = zone.getRules().isFixedOffset() ? zone.getRules().getOffset(Instant.EPOCH) : null;
+		int n = pattern.length();
+		int[] k = new int[n];
+		int[] w = new int[n];
+		char[] l = new char[n];
+		int count = 0;
+		int len = 0;
+		for(int i = 0; i < n; ) {
+			char c = pattern.charAt(i);
+			int run = 1;
+			if(c == '\'') {
+				// quoted text, with '' for a quote
+				int j = i + 1;
+				if(j < n && pattern.charAt(j) == '\'') {
+					l[count++] = '\'';
+					len++;
+					i += 2;
+					continue;
+				}
+				while(true) {
+					if(j >= n)
+						throw new IllegalArgumentException("unterminated quote in " + pattern);
+					char q = pattern.charAt(j++);
+					if(q == '\'') {
+						if(j < n && pattern.charAt(j) == '\'') {
+							j++;
+						} else {
+							break;
+						}
+					}
+					l[count++] = q;
+					len++;
+				}
+				i = j;
+				continue;
+			}
+			if(!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z')) {
+				l[count++] = c;
+				len++;
+				i++;
+				continue;
+			}
+			while(i + run < n && pattern.charAt(i + run) == c)
+				run++;
+			int kind;
+			int width;
+			switch(c) {
+			case 'y': kind = YEAR; width = 4; break;
+			case 'M': kind = MONTH; width = 2; break;
+			case 'd': kind = DAY; width = 2; break;
+			case 'H': kind = HOUR; width = 2; break;
+			case 'm': kind = MINUTE; width = 2; break;
+			case 's': kind = SECOND; width = 2; break;
+			case 'S': kind = MILLI; width = 3; break;
+			default:
+				throw new IllegalArgumentException("unsupported pattern letter " + c + " in " + pattern);
+			}
+			if(run != width)
+				throw new IllegalArgumentException("field " + pattern.substring(i, i + run)
+						+ " is not fixed width in " + pattern);
+			k[count] = kind;
+			w[count++] = width;
+			len += width;
+			i += run;
+		}
+		kinds = Arrays.copyOf(k, count);
+		widths = Arrays.copyOf(w, count);
+		literals = Arrays.copyOf(l, count);
+		length = len;
+	}
+
+	public String getPattern() {
+		return pattern;
+	}
+
+	/**
+	 * @return the milliseconds from the epoch to the local time in s, as
+	 *         if the local time were UTC
+	 */
+	long parseLocalMillis(CharSequence s) {
+		return parseLocal(s, true);
+	}
+
+	/**
+	 * As parseLocalMillis(), but returns INVALID instead of throwing
+	 * when s doesn't match, for callers that skip bad values.
+	 */
+	long tryParseLocalMillis(CharSequence s) {
+		return parseLocal(s, false);
+	}
+
+	/**
+	 * As parseEpochMillis(), but returns INVALID instead of throwing.
+	 */
+	long tryParseEpochMillis(CharSequence s) {
+		long local = parseLocal(s, false);
+		return local == INVALID ? INVALID : toEpochMillis(local);
+	}
+
+	private long parseLocal(CharSequence s, boolean raise) {
+		if(s.length() != length)
+			return fail(raise, s, "expected " + length + " characters", 0);
+		int year = 1970;
+		int month = 1;
+		int day = 1;
+		int hour = 0;
+		int minute = 0;
+		int second = 0;
+		int milli = 0;
+		int p = 0;
+		for(int e = 0; e < kinds.length; e++) {
+			if(kinds[e] == LITERAL) {
+				if(s.charAt(p) != literals[e])
+					return fail(raise, s, "expected '" + literals[e] + "'", p);
+				p++;
+				continue;
+			}
+			int v = 0;
+			for(int end = p + widths[e]; p < end; p++) {
+				int d = s.charAt(p) - '0';
+				if(d < 0 || d > 9)
+					return fail(raise, s, "expected a digit", p);
+				v = v * 10 + d;
+			}
+			switch(kinds[e]) {
+			case YEAR: year = v; break;
+			case MONTH: month = v; break;
+			case DAY: day = v; break;
+			case HOUR: hour = v; break;
+			case MINUTE: minute = v; break;
+			case SECOND: second = v; break;
+			default: milli = v;
+			}
+		}
+		if(month < 1 || month > 12)
+			return fail(raise, s, "month out of range", 0);
+		if(day < 1 || day > daysInMonth(year, month))
+			return fail(raise, s, "day out of range", 0);
+		if(hour > 23 || minute > 59 || second > 59)
+			return fail(raise, s, "time out of range", 0);
+		return epochDay(year, month, day) * MILLIS_PER_DAY
+				+ ((hour * 60 + minute) * 60 + second) * 1000L + milli;
+	}
+
+	/*
+	 * Throws, or returns INVALID for a caller that doesn't want the
+	 * cost of an exception.
+	 */
+	private long fail(boolean raise, CharSequence s, String reason, int index) {
+		if(raise)
+			throw error(s, reason, index);
+		return INVALID;
+	}
+
+	/**
+	 * @return the milliseconds from the epoch to the time in s, in the
+	 *         time zone of this parser
+	 */
+	public long parseEpochMillis(CharSequence s) {
+		return toEpochMillis(parseLocalMillis(s));
+	}
+
+	private long toEpochMillis(long local) {
+		ZoneOffset offset = fixedOffset;
+		if(offset == null)
+			offset = zone.getRules().getOffset(toLocalDateTime(local));
+		return local - offset.getTotalSeconds() * 1000L;
+	}
+
+	public Instant parseInstant(CharSequence s) {
+		return Instant.ofEpochMilli(parseEpochMillis(s));
+	}
+
+	public LocalDate parseLocalDate(CharSequence s) {
+		return toLocalDate(parseLocalMillis(s));
+	}
+
+	public LocalDateTime parseLocalDateTime(CharSequence s) {
+		return toLocalDateTime(parseLocalMillis(s));
+	}
+
+	static LocalDate toLocalDate(long local) {
+		return LocalDate.ofEpochDay(Math.floorDiv(local, MILLIS_PER_DAY));
+	}
+
+	static LocalDateTime toLocalDateTime(long local) {
+		return LocalDateTime.ofEpochSecond(Math.floorDiv(local, 1000L),
+				(int)Math.floorMod(local, 1000L) * 1000000, ZoneOffset.UTC);
+	}
+
+	/**
+	 * Writes the time epochMillis, in the time zone of this parser, to
+	 * buf at pos in the format of the pattern.  buf must have room for
+	 * {@link #length()} chars.
+	 *
+	 * @return the position after the time
+	 */
+	public int formatEpochMillis(long epochMillis, char[] buf, int pos) {
+		ZoneOffset offset = fixedOffset;
+		if(offset == null)
+			offset = zone.getRules().getOffset(Instant.ofEpochMilli(epochMillis));
+		return formatLocalMillis(epochMillis + offset.getTotalSeconds() * 1000L, buf, pos);
+	}
+
+	/**
+	 * Formats a local time given as milliseconds from the epoch as if it
+	 * were UTC, the inverse of parseLocalMillis().
+	 */
+	int formatLocalMillis(long local, char[] buf, int pos) {
+		long epochDay = Math.floorDiv(local, MILLIS_PER_DAY);
+		int ms = (int)Math.floorMod(local, MILLIS_PER_DAY);
+		// the inverse of epochDay()
+		long z = epochDay + 719468;
+		long era = Math.floorDiv(z, 146097L);
+		int doe = (int)(z - era * 146097);
+		int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+		int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+		int mp = (5 * doy + 2) / 153;
+		int day = doy - (153 * mp + 2) / 5 + 1;
+		int month = mp < 10 ? mp + 3 : mp - 9;
+		long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+		if(year < 0 || year > 9999)
+			throw new IllegalArgumentException("year " + year + " does not fit " + pattern);
+		for(int e = 0; e < kinds.length; e++) {
+			int v;
+			switch(kinds[e]) {
+			case LITERAL:
+				buf[pos++] = literals[e];
+				continue;
+			case YEAR: v = (int)year; break;
+			case MONTH: v = month; break;
+			case DAY: v = day; break;
+			case HOUR: v = ms / 3600000; break;
+			case MINUTE: v = ms / 60000 % 60; break;
+			case SECOND: v = ms / 1000 % 60; break;
+			default: v = ms % 1000;
+			}
+			for(int k = pos + widths[e] - 1; k >= pos; k--) {
+				buf[k] = (char)('0' + v % 10);
+				v /= 10;
+			}
+			pos += widths[e];
+		}
+		return pos;
+	}
+
+	/**
+	 * @return the number of chars in a time of this pattern
+	 */
+	public int length() {
+		return length;
+	}
+
+	private DateTimeParseException error(CharSequence s, String reason, int index) {
+		return new DateTimeParseException("Text '" + s + "' does not match " + pattern
+				+ ": " + reason, s, index);
+	}
+
+	private static boolean isLeap(int year) {
+		return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
+	}
+
+	private static int daysInMonth(int year, int month) {
+		switch(month) {
+		case 2:
+			return isLeap(year) ? 29 : 28;
+		case 4:
+		case 6:
+		case 9:
+		case 11:
+			return 30;
+		default:
+			return 31;
+		}
+	}
+
+	/*
+	 * Days from 1970-01-01 in the proleptic Gregorian calendar, counting
+	 * years from March so that the leap day is the last of the year.
+	 */
+	static long epochDay(int year, int month, int day) {
+		int y = month <= 2 ? year - 1 : year;
+		int era = Math.floorDiv(y, 400);
+		int yoe = y - era * 400;
+		int doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+		int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+		return era * 146097L + doe - 719468;
+	}
+
+	@Override
+	public String toString() {
+		return pattern;
+	}
+}
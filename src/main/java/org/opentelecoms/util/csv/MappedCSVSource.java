@@ -0,0 +1,184 @@
+/*
+ *  Reads CSV records directly from a memory mapped file
+ *
+ *  Copyright 2026 agent <agent@local>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opentelecoms.util.csv;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * A source of CSV records for {@link CSVReader#read(MappedCSVSource)}
+ * that splits fields in the mapped bytes of the file instead of
+ * decoding it into lines first.  int and long columns are parsed from
+ * the bytes and only the columns of other types are decoded into
+ * Strings.
+ *
+ * The file is mapped a window at a time, so files over 2GB can be
+ * read; a window grows if a single record doesn't fit in it.  The
+ * syntax is that of {@link CSVFields}, and like
+ * {@link ParallelCSVLoader} the charset must be ASCII compatible, such
+ * as UTF-8 or ISO-8859-1.  chars() presents the bytes as ISO-8859-1
+ * chars, which is exact for ASCII content; field() decodes with the
+ * charset.  A source is not thread safe.
+ */
+public class MappedCSVSource extends CSVFields implements Closeable {
+
+	static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+	final RandomAccessFile file;
+	final FileChannel ch;
+	final long size;
+	final Charset charset;
+	/* Whether the last record may still be incomplete, as in a growing file */
+	final boolean partial;
+	int windowSize = DEFAULT_WINDOW_SIZE;
+
+	/* The mapped window, from base for limit bytes, and the next record in it */
+	MappedByteBuffer buf;
+	long base;
+	int limit;
+	int pos;
+	/* The number of the current record, counting from 1 */
+	long record;
+
+	byte[] scratch = new byte[256];
+
+	public MappedCSVSource(File file) throws IOException {
+		this(file, Charset.forName("UTF-8"));
+	}
+
+	public MappedCSVSource(File file, Charset charset) throws IOException {
+		this(file, charset, 0, false);
+	}
+
+	/**
+	 * @param start the offset of the first record to read
+	 * @param partial true to leave a last record that doesn't end with a
+	 *        line break unread, as more of it may still be written
+	 */
+	MappedCSVSource(File file, Charset charset, long start, boolean partial) throws IOException {
+		this.file = new RandomAccessFile(file, "r");
+		this.ch = this.file.getChannel();
+		this.size = ch.size();
+		this.charset = charset;
+		this.partial = partial;
+		base = start;
+	}
+
+	public void close() throws IOException {
+		buf = null;
+		file.close();
+	}
+
+	/**
+	 * @return the offset in the file of the current record
+	 */
+	public long getPosition() {
+		return base + recordStart;
+	}
+
+	/**
+	 * @return the offset in the file after the current record
+	 */
+	long getNextPosition() {
+		return base + pos;
+	}
+
+	/**
+	 * Moves to the next record, skipping blank lines.
+	 *
+	 * @return false at the end of the file
+	 */
+	boolean next() throws IOException {
+		while(base + pos < size) {
+			if(buf == null || pos >= limit)
+				map(base + pos);
+			int p = tokenize(pos);
+			if(p < 0) {
+				if(base + limit >= size)
+					return false;
+				// the record runs past the window: map again from its start
+				if(pos == 0)
+					grow();
+				map(base + pos);
+				continue;
+			}
+			pos = p;
+			if(recordEnd > recordStart) {
+				record++;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void map(long at) throws IOException {
+		buf = ch.map(FileChannel.MapMode.READ_ONLY, at, Math.min(windowSize, size - at));
+		base = at;
+		limit = buf.limit();
+		pos = 0;
+	}
+
+	private void grow() throws IOException {
+		if(windowSize == Integer.MAX_VALUE)
+			throw new IOException("record at byte " + base + " is longer than 2GB");
+		windowSize = (int)Math.min(Integer.MAX_VALUE, windowSize * 2L);
+	}
+
+	/*
+	 * Splits the record at p, returning -1 if the window ends before the
+	 * record does, or in partial mode if the file ends before the
+	 * record's line break.
+	 */
+	private int tokenize(int p) {
+		return split(p, limit, base + limit >= size && !partial);
+	}
+
+	int charAt(int p) {
+		return buf.get(p) & 0xff;
+	}
+
+	public String field(int i) {
+		int s = starts[i];
+		int e = ends[i];
+		if(scratch.length < e - s)
+			scratch = new byte[Math.max(e - s, scratch.length * 2)];
+		int n = 0;
+		if(!escaped[i]) {
+			// Buffer.position(), as MappedByteBuffer.position() is new in Java 9
+			((Buffer)buf).position(s);
+			buf.get(scratch, 0, e - s);
+			n = e - s;
+		} else {
+			for(int p = s; p < e; p++) {
+				byte b = buf.get(p);
+				scratch[n++] = b;
+				if(b == QUOTE)
+					p++;
+			}
+		}
+		return new String(scratch, 0, n, charset);
+	}
+}
@@ -0,0 +1,389 @@
+/*
+ *  Loads a large CSV file on several threads by memory mapping it and
+ *  parsing chunks of it in parallel
+ *
+ *  Copyright 2026 agent <agent@local>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opentelecoms.util.csv;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Parses a CSV file into instances of the target class of a
+ * {@link CSVReader}, using the same constructor binding and type
+ * conversions, but with the file split into chunks that are parsed on
+ * a ForkJoinPool.
+ *
+ * The file is memory mapped.  Chunks are cut at record boundaries, so
+ * a quoted field containing a line break is never split.  Each nominal
+ * chunk is first scanned in parallel for the quoting state it ends in
+ * from every state it could start in, following the same rules as the
+ * tokenizer, so that a stray quote inside an unquoted field doesn't
+ * upset the chunks after it.  Chaining these gives the state at every
+ * nominal boundary, and each boundary is then moved forward to the
+ * next line break outside quotes.
+ *
+ * Fields are split as described in {@link CSVTokenizer}.  Blank lines
+ * are skipped and a record with too few fields is an error, unless the
+ * reader has an error sink.  Chunks report bad records to a buffer of
+ * their own, and the sink is given them all in file order once the
+ * load is complete.  The
+ * charset must encode line breaks, commas and double quotes as single
+ * bytes that never occur inside other characters, as UTF-8, US-ASCII
+ * and the ISO-8859 charsets do.
+ */
+public class ParallelCSVLoader<T> {
+
+	/** Chunks are about this many bytes, before moving to a record boundary. */
+	public static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+
+	/* How much of the file to map at a time while looking for a boundary */
+	private static final int SCAN_WINDOW = 64 * 1024;
+
+	final CSVReader<T> reader;
+	final Charset charset;
+	int chunkSize = DEFAULT_CHUNK_SIZE;
+
+	public ParallelCSVLoader(CSVReader<T> reader) {
+		this(reader, Charset.forName("UTF-8"));
+	}
+
+	/**
+	 * @param reader supplies the target class, constructor and date format
+	 * @param charset the encoding of the files
+	 */
+	public ParallelCSVLoader(CSVReader<T> reader, Charset charset) {
+		this.reader = reader;
+		this.charset = charset;
+	}
+
+	public void setChunkSize(int chunkSize) {
+		if(chunkSize < 1)
+			throw new IllegalArgumentException("chunk size must be positive");
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Loads file on the common ForkJoinPool, keeping the records in
+	 * file order.
+	 */
+	public List<T> load(File file) throws Exception {
+		return load(file, ForkJoinPool.commonPool(), true);
+	}
+
+	/**
+	 * @param ordered true to return the records in file order, false to
+	 *        return each chunk's records as soon as the chunk is parsed,
+	 *        which keeps fewer chunk results waiting in memory
+	 */
+	public List<T> load(File file, ForkJoinPool pool, boolean ordered) throws Exception {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel ch = raf.getChannel();
+			long size = ch.size();
+			int chunks = (int)Math.max(1, (size + chunkSize - 1) / chunkSize);
+			Load load = new Load(ch, size, chunks, ordered);
+			try {
+				pool.invoke(new ScanTask(load, 0, chunks));
+				int state = CSVTokenizer.FIELD_START;
+				for(int k = 0; k < chunks; k++) {
+					load.states[k] = state;
+					state = load.transitions[k][state];
+				}
+				pool.invoke(new ParseTask(load, 0, chunks));
+			} catch (ChunkFailure ex) {
+				throw (Exception)ex.getCause();
+			}
+			if(load.sink != null)
+				load.reportRejects();
+			if(!ordered)
+				return load.unordered;
+			int n = 0;
+			for(List<T> part : load.results)
+				n += part.size();
+			List<T> all = new ArrayList<T>(n);
+			for(List<T> part : load.results)
+				all.addAll(part);
+			return all;
+		} finally {
+			raf.close();
+		}
+	}
+
+	/*
+	 * Checked exceptions from a chunk, carried through ForkJoinPool.
+	 */
+	static class ChunkFailure extends RuntimeException {
+		private static final long serialVersionUID = -6143254127640219880L;
+
+		ChunkFailure(Exception cause) {
+			super(cause);
+		}
+	}
+
+	/*
+	 * The state shared by the tasks of one load.
+	 */
+	class Load {
+		final FileChannel ch;
+		final long size;
+		final int chunks;
+		final boolean ordered;
+		/* the state each nominal chunk ends in for each start state */
+		final int[][] transitions;
+		/* the quoting state at each nominal boundary */
+		final int[] states;
+		final List<List<T>> results;
+		final List<T> unordered;
+		/* The reader's error sink, and the records each chunk rejected */
+		final CSVErrorSink sink;
+		final Rejects[] rejects;
+		/* The number of records in each chunk, to number the rejects */
+		final long[] records;
+
+		Load(FileChannel ch, long size, int chunks, boolean ordered) {
+			this.ch = ch;
+			this.size = size;
+			this.chunks = chunks;
+			this.ordered = ordered;
+			transitions = new int[chunks][];
+			states = new int[chunks];
+			results = new ArrayList<List<T>>(chunks);
+			for(int k = 0; k < chunks; k++)
+				results.add(null);
+			unordered = ordered ? null : new ArrayList<T>();
+			sink = reader.errorSink;
+			rejects = sink == null ? null : new Rejects[chunks];
+			records = new long[chunks];
+		}
+
+		/*
+		 * Numbers the records each chunk rejected from the start of the
+		 * file and passes them to the sink.
+		 */
+		void reportRejects() {
+			long before = 0;
+			for(int k = 0; k < chunks; k++) {
+				Rejects r = rejects[k];
+				for(int i = 0; r != null && i < r.size; i++)
+					sink.reject(before + r.records[i], r.columns[i], r.reasons[i]);
+				before += records[k];
+			}
+		}
+
+		long nominal(int k) {
+			return Math.min(size, (long)k * chunkSize);
+		}
+
+		/*
+		 * Moves nominal boundary k forward to the start of a record.
+		 */
+		long boundary(int k) throws IOException {
+			long pos = nominal(k);
+			if(k == 0 || pos >= size)
+				return pos;
+			int state = states[k];
+			while(pos < size) {
+				int len = (int)Math.min(SCAN_WINDOW, size - pos);
+				MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, pos, len);
+				for(int i = 0; i < len; i++) {
+					byte b = buf.get(i);
+					if(b == '\n' && state != CSVTokenizer.QUOTED)
+						return pos + i + 1;
+					state = CSVTokenizer.nextState(state, b);
+				}
+				pos += len;
+			}
+			return size;
+		}
+
+		/*
+		 * Runs the chunk from every start state at once.
+		 */
+		void scan(int k) throws IOException {
+			int[] end = new int[CSVTokenizer.STATES];
+			for(int s = 0; s < end.length; s++)
+				end[s] = s;
+			long start = nominal(k);
+			int len = (int)(nominal(k + 1) - start);
+			if(len > 0) {
+				MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, start, len);
+				for(int i = 0; i < len; i++) {
+					byte b = buf.get(i);
+					for(int s = 0; s < end.length; s++)
+						end[s] = CSVTokenizer.nextState(end[s], b);
+				}
+			}
+			transitions[k] = end;
+		}
+
+		void parse(int k) throws Exception {
+			long start = boundary(k);
+			long end = k + 1 == chunks ? size : boundary(k + 1);
+			List<T> rows = new ArrayList<T>();
+			Rejects rejected = sink == null ? null : new Rejects();
+			long record = 0;
+			if(end > start) {
+				MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+				CharBuffer cb = charset.newDecoder()
+						.onMalformedInput(CodingErrorAction.REPLACE)
+						.onUnmappableCharacter(CodingErrorAction.REPLACE)
+						.decode(buf);
+				char[] chars = cb.array();
+				int pos = cb.arrayOffset() + cb.position();
+				int limit = cb.arrayOffset() + cb.limit();
+				CSVTokenizer t = new CSVTokenizer();
+				// SimpleDateFormat isn't thread safe, so each chunk has its own
+				DateFormat df = (DateFormat)reader.dateFormat.clone();
+				while(pos < limit) {
+					pos = t.tokenize(chars, pos, limit);
+					if(t.isBlank())
+						continue;
+					record++;
+					try {
+						T row = reader.bind(t, df, record, rejected);
+						if(row != null)
+							rows.add(row);
+					} catch (Exception ex) {
+						throw new Exception("in record at character " + t.recordStart
+								+ " of the chunk at byte " + start + ": " + ex.getMessage(), ex);
+					}
+				}
+			}
+			records[k] = record;
+			if(rejected != null && rejected.size > 0)
+				rejects[k] = rejected;
+			if(ordered) {
+				results.set(k, rows);
+			} else {
+				synchronized(unordered) {
+					unordered.addAll(rows);
+				}
+			}
+		}
+	}
+
+	/*
+	 * The records a chunk rejected, numbered within the chunk.
+	 */
+	static class Rejects implements CSVErrorSink {
+		long[] records = new long[16];
+		int[] columns = new int[16];
+		String[] reasons = new String[16];
+		int size;
+
+		public void reject(long record, int column, String reason) {
+			if(size == records.length) {
+				records = Arrays.copyOf(records, size * 2);
+				columns = Arrays.copyOf(columns, size * 2);
+				reasons = Arrays.copyOf(reasons, size * 2);
+			}
+			records[size] = record;
+			columns[size] = column;
+			reasons[size] = reason;
+			size++;
+		}
+	}
+
+	/*
+	 * Splits a range of chunks in half until there is one chunk per task.
+	 */
+	abstract static class ChunkTask extends RecursiveAction {
+		private static final long serialVersionUID = 2206016426390373622L;
+
+		final int from;
+		final int to;
+
+		ChunkTask(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if(to - from > 1) {
+				int mid = (from + to) >>> 1;
+				invokeAll(split(from, mid), split(mid, to));
+				return;
+			}
+			try {
+				run(from);
+			} catch (Exception ex) {
+				throw new ChunkFailure(ex);
+			}
+		}
+
+		abstract ChunkTask split(int from, int to);
+
+		abstract void run(int k) throws Exception;
+	}
+
+	class ScanTask extends ChunkTask {
+		private static final long serialVersionUID = -1826658931512658617L;
+
+		final Load load;
+
+		ScanTask(Load load, int from, int to) {
+			super(from, to);
+			this.load = load;
+		}
+
+		@Override
+		ChunkTask split(int from, int to) {
+			return new ScanTask(load, from, to);
+		}
+
+		@Override
+		void run(int k) throws Exception {
+			load.scan(k);
+		}
+	}
+
+	class ParseTask extends ChunkTask {
+		private static final long serialVersionUID = 4000338542862005227L;
+
+		final Load load;
+
+		ParseTask(Load load, int from, int to) {
+			super(from, to);
+			this.load = load;
+		}
+
+		@Override
+		ChunkTask split(int from, int to) {
+			return new ParseTask(load, from, to);
+		}
+
+		@Override
+		void run(int k) throws Exception {
+			load.parse(k);
+		}
+	}
+}
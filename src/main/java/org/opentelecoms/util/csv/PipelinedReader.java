@@ -0,0 +1,217 @@
+/*
+ *  A Reader that reads and decompresses its source on another thread
+ *
+ *  Copyright 2026 agent <agent@local>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opentelecoms.util.csv;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads a source Reader, typically an InputStreamReader around a
+ * GZIPInputStream, on a thread of its own, so that decompressing and
+ * decoding the input overlap with parsing it in
+ * {@link CSVReader#stream(Reader)} or any other consumer.
+ *
+ * The source is read into a fixed ring of char buffers.  Filled buffers
+ * are queued for the consumer and come back to the reading thread once
+ * consumed, so when the consumer falls behind the reading thread
+ * blocks instead of buffering more of the input.  Anything the source
+ * throws, including a RuntimeException, is thrown to the consumer as an
+ * IOException after the data read before it.
+ *
+ * Any decompressor that is an InputStream can be used as the source;
+ * {@link #gzip(InputStream, Charset)} covers the common case.  The
+ * source is only used by the reading thread, which closes it when the
+ * input ends, fails or this reader is closed, so it needn't be thread
+ * safe.
+ */
+public class PipelinedReader extends Reader {
+
+	public static final int DEFAULT_BUFFER_COUNT = 4;
+	public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+	/*
+	 * The most to ask the source for at once: an InputStreamReader loses
+	 * what it has decoded in a read that fails.
+	 */
+	private static final int READ_SIZE = 8192;
+
+	private static final ThreadFactory daemonThreads = new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "PipelinedReader");
+			t.setDaemon(true);
+			return t;
+		}
+	};
+
+	static final class Chunk {
+		final char[] chars;
+		int length;
+
+		Chunk(int size) {
+			chars = new char[size];
+		}
+	}
+
+	/* Queued after the last chunk of input */
+	private static final Chunk END = new Chunk(0);
+
+	final Reader source;
+	/* The chunks the reading thread may fill */
+	final BlockingQueue<Chunk> free;
+	final BlockingQueue<Chunk> filled = new LinkedBlockingQueue<Chunk>();
+	final Thread thread;
+	volatile Throwable failure;
+	volatile boolean closed;
+
+	/* The chunk being consumed */
+	Chunk current;
+	int pos;
+	boolean eof;
+
+	public PipelinedReader(Reader source) {
+		this(source, DEFAULT_BUFFER_COUNT, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * @param bufferCount the number of buffers in the ring, at least 2 so
+	 *        that one can be filled while another is consumed
+	 * @param bufferSize the size of each buffer, in chars
+	 */
+	public PipelinedReader(Reader source, int bufferCount, int bufferSize) {
+		if(bufferCount < 2 || bufferSize < 1)
+			throw new IllegalArgumentException("need at least 2 buffers of at least 1 char");
+		this.source = source;
+		free = new ArrayBlockingQueue<Chunk>(bufferCount);
+		for(int i = 0; i < bufferCount; i++)
+			free.add(new Chunk(bufferSize));
+		thread = daemonThreads.newThread(new Runnable() {
+			public void run() {
+				produce();
+			}
+		});
+		thread.start();
+	}
+
+	/**
+	 * Decompresses gzip data from in on the reading thread.
+	 */
+	public static PipelinedReader gzip(InputStream in, Charset charset) throws IOException {
+		return new PipelinedReader(new InputStreamReader(new GZIPInputStream(in, 64 * 1024), charset));
+	}
+
+	private void produce() {
+		try {
+			int r = 0;
+			while(r >= 0 && !closed) {
+				Chunk c = free.take();
+				char[] buf = c.chars;
+				c.length = 0;
+				try {
+					while(c.length < buf.length && !closed && (r = source.read(buf, c.length,
+							Math.min(READ_SIZE, buf.length - c.length))) >= 0)
+						c.length += r;
+				} finally {
+					// what was read before an error is still delivered
+					if(c.length > 0)
+						filled.add(c);
+				}
+			}
+		} catch (InterruptedException ex) {
+			// closed by the consumer
+		} catch (Throwable t) {
+			// anything else would look like the end of the input
+			failure = t;
+		} finally {
+			try {
+				source.close();
+			} catch (Throwable t) {
+				if(failure == null && !closed)
+					failure = t;
+			}
+			filled.add(END);
+		}
+	}
+
+	@Override
+	public int read(char[] cbuf, int off, int len) throws IOException {
+		if(len == 0)
+			return 0;
+		if(current == null || pos == current.length) {
+			if(!next())
+				return -1;
+		}
+		int n = Math.min(len, current.length - pos);
+		System.arraycopy(current.chars, pos, cbuf, off, n);
+		pos += n;
+		return n;
+	}
+
+	/*
+	 * Returns the consumed buffer to the ring and takes the next one.
+	 */
+	private boolean next() throws IOException {
+		if(closed)
+			throw new IOException("reader closed");
+		if(current != null) {
+			free.add(current);
+			current = null;
+		}
+		if(eof)
+			return false;
+		Chunk c;
+		try {
+			c = filled.take();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted waiting for input");
+		}
+		if(c == END) {
+			eof = true;
+			if(failure != null)
+				throw new IOException("error reading the source: " + failure, failure);
+			return false;
+		}
+		current = c;
+		pos = 0;
+		return true;
+	}
+
+	/**
+	 * Stops the reading thread, which closes the source when it next
+	 * looks at it.  A read of the source already under way is not
+	 * interrupted unless the source responds to Thread.interrupt().
+	 */
+	@Override
+	public void close() throws IOException {
+		if(closed)
+			return;
+		closed = true;
+		thread.interrupt();
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ *  Tokenizes CSV records read from a Reader through a refillable buffer
+ *
+ *  Copyright 2026 agent <agent@local>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opentelecoms.util.csv;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Reads records from a Reader into a buffer that is refilled as it is
+ * consumed, so only the current record is held in memory however big
+ * the input is.  After next() the record is in the tokenizer t.
+ */
+final class ReaderCSVSource {
+
+	static final int BUFFER_SIZE = 64 * 1024;
+
+	final Reader in;
+	final CSVTokenizer t = new CSVTokenizer();
+
+	/* buf[pos, end) has been read but not parsed yet */
+	char[] buf = new char[BUFFER_SIZE];
+	int pos;
+	int end;
+	boolean eof;
+
+	ReaderCSVSource(Reader in) {
+		this.in = in;
+	}
+
+	/**
+	 * Tokenizes the next record, skipping blank lines.
+	 *
+	 * @return false at the end of the input
+	 */
+	boolean next() throws IOException {
+		while(true) {
+			if(pos == end) {
+				if(eof)
+					return false;
+				fill();
+				continue;
+			}
+			int p = t.tokenize(buf, pos, end);
+			if(t.recordEnd == end && !eof) {
+				// the record may continue after the buffer
+				fill();
+				continue;
+			}
+			pos = p;
+			if(!t.isBlank())
+				return true;
+		}
+	}
+
+	/*
+	 * Moves the unparsed chars to the front of the buffer, growing it if
+	 * they fill it, and reads more after them.
+	 */
+	private void fill() throws IOException {
+		if(pos > 0) {
+			System.arraycopy(buf, pos, buf, 0, end - pos);
+			end -= pos;
+			pos = 0;
+		}
+		if(end == buf.length)
+			buf = Arrays.copyOf(buf, buf.length * 2);
+		int n = in.read(buf, end, buf.length - end);
+		if(n < 0)
+			eof = true;
+		else
+			end += n;
+	}
+}
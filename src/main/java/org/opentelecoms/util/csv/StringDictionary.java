@@ -0,0 +1,104 @@
+/*
+ *  Assigns a small integer code to each distinct string of a column
+ *
+ *  Copyright 2026 agent <agent@local>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opentelecoms.util.csv;
+
+import java.util.Arrays;
+
+/**
+ * Maps the raw content of fields to codes, looking them up by their
+ * chars so that a String is only created the first time a value is
+ * seen.  The raw content is the key, while the value returned for the
+ * code is the decoded field; they only differ for fields of a
+ * MappedCSVSource holding non-ASCII bytes.
+ *
+ * Uses open addressing with linear probing, like IPv4AddressMap.
+ */
+final class StringDictionary {
+
+	String[] keys = new String[16];
+	String[] values = new String[16];
+	int[] hashes = new int[16];
+	/* code + 1 of the key in each slot, 0 for an empty slot */
+	int[] table = new int[32];
+	int size;
+
+	/**
+	 * @return the code of field i of r, adding it if it is new
+	 */
+	int code(CSVRecord r, int i) {
+		CharSequence cs = r.chars(i);
+		int h = hash(cs);
+		int mask = table.length - 1;
+		int slot = h & mask;
+		int c;
+		while((c = table[slot]) != 0) {
+			if(hashes[c - 1] == h && equal(keys[c - 1], cs))
+				return c - 1;
+			slot = (slot + 1) & mask;
+		}
+		if(size == keys.length) {
+			keys = Arrays.copyOf(keys, size * 2);
+			values = Arrays.copyOf(values, size * 2);
+			hashes = Arrays.copyOf(hashes, size * 2);
+		}
+		String key = cs.toString();
+		String value = r.field(i);
+		keys[size] = key;
+		values[size] = key.equals(value) ? key : value;
+		hashes[size] = h;
+		table[slot] = ++size;
+		if(size * 2 > table.length)
+			rehash();
+		return size - 1;
+	}
+
+	String get(int code) {
+		return values[code];
+	}
+
+	/* Same as String.hashCode() */
+	private static int hash(CharSequence cs) {
+		int h = 0;
+		for(int k = 0, n = cs.length(); k < n; k++)
+			h = 31 * h + cs.charAt(k);
+		return h;
+	}
+
+	private static boolean equal(String key, CharSequence cs) {
+		int n = key.length();
+		if(n != cs.length())
+			return false;
+		for(int k = 0; k < n; k++)
+			if(key.charAt(k) != cs.charAt(k))
+				return false;
+		return true;
+	}
+
+	private void rehash() {
+		table = new int[table.length * 2];
+		int mask = table.length - 1;
+		for(int c = 0; c < size; c++) {
+			int slot = hashes[c] & mask;
+			while(table[slot] != 0)
+				slot = (slot + 1) & mask;
+			table[slot] = c + 1;
+		}
+	}
+}
@@ -0,0 +1,167 @@
+/*
+ *  A thread-safe, lock-striped version of IPv4AddressMap
+ *
+ *  Copyright 2026 agent <agent@local>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opentelecoms.util.dns;
+
+/**
+ * Splits the address space across a number of {@link IPv4AddressMap}
+ * segments, each guarded by its own lock.  The segment is chosen from
+ * the high bits of the hash and the slot within the segment from the
+ * low bits, so the two choices are independent.
+ *
+ * The ValueFactory passed to computeIfAbsent runs while the segment
+ * lock is held, so it is called at most once per address but must not
+ * call back into the map.
+ */
+public class ConcurrentIPv4AddressMap<V> {
+
+	private static final int DEFAULT_SEGMENTS = 16;
+
+	final IPv4AddressMap<V>[] segments;
+	final int segmentShift;
+
+	public ConcurrentIPv4AddressMap() {
+		this(DEFAULT_SEGMENTS, 16 * DEFAULT_SEGMENTS);
+	}
+
+	/**
+	 * @param concurrency the number of segments, rounded up to a power of 2
+	 * @param expectedSize the total number of addresses to size the table for
+	 */
+	public ConcurrentIPv4AddressMap(int concurrency, int expectedSize) {
+		if(concurrency < 1 || concurrency > (1 << 16))
+			throw new IllegalArgumentException("bad concurrency: " + concurrency);
+		int n = Integer.highestOneBit(concurrency);
+		if(n < concurrency)
+			n <<= 1;
+		segmentShift = 32 - Integer.numberOfTrailingZeros(n);
+		// there is no generic array creation
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		IPv4AddressMap<V>[] _segments = new IPv4AddressMap[n];
+		segments = _segments;
+		for(int i = 0; i < n; i++)
+			segments[i] = new IPv4AddressMap<V>(expectedSize / n);
+	}
+
+	IPv4AddressMap<V> segmentFor(int key) {
+		if(segmentShift == 32)
+			return segments[0];
+		return segments[IPv4AddressMap.hash(key) >>> segmentShift];
+	}
+
+	public V get(int key) {
+		IPv4AddressMap<V> s = segmentFor(key);
+		synchronized(s) {
+			return s.get(key);
+		}
+	}
+
+	public boolean containsKey(int key) {
+		IPv4AddressMap<V> s = segmentFor(key);
+		synchronized(s) {
+			return s.containsKey(key);
+		}
+	}
+
+	public V put(int key, V value) {
+		IPv4AddressMap<V> s = segmentFor(key);
+		synchronized(s) {
+			return s.put(key, value);
+		}
+	}
+
+	/**
+	 * Atomically returns the value for key, creating it with factory
+	 * if necessary.
+	 */
+	public V computeIfAbsent(int key, IPv4AddressMap.ValueFactory<V> factory) {
+		IPv4AddressMap<V> s = segmentFor(key);
+		synchronized(s) {
+			return s.computeIfAbsent(key, factory);
+		}
+	}
+
+	public long getCount(int key) {
+		IPv4AddressMap<V> s = segmentFor(key);
+		synchronized(s) {
+			return s.getCount(key);
+		}
+	}
+
+	/**
+	 * Atomically adds one to the counter for key.
+	 *
+	 * @return the new value of the counter
+	 */
+	public long increment(int key) {
+		return add(key, 1);
+	}
+
+	/**
+	 * Atomically adds delta to the counter for key.
+	 *
+	 * @return the new value of the counter
+	 */
+	public long add(int key, long delta) {
+		IPv4AddressMap<V> s = segmentFor(key);
+		synchronized(s) {
+			return s.add(key, delta);
+		}
+	}
+
+	public V remove(int key) {
+		IPv4AddressMap<V> s = segmentFor(key);
+		synchronized(s) {
+			return s.remove(key);
+		}
+	}
+
+	/**
+	 * @return the total size; not a consistent snapshot if the map
+	 *         is being modified concurrently
+	 */
+	public int size() {
+		int n = 0;
+		for(IPv4AddressMap<V> s : segments) {
+			synchronized(s) {
+				n += s.size();
+			}
+		}
+		return n;
+	}
+
+	public void clear() {
+		for(IPv4AddressMap<V> s : segments) {
+			synchronized(s) {
+				s.clear();
+			}
+		}
+	}
+
+	/**
+	 * Visits every entry, locking one segment at a time.
+	 */
+	public void forEach(IPv4AddressMap.EntryVisitor<V> visitor) {
+		for(IPv4AddressMap<V> s : segments) {
+			synchronized(s) {
+				s.forEach(visitor);
+			}
+		}
+	}
+}
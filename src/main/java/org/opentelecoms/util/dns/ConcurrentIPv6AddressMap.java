@@ -0,0 +1,167 @@
+/*
+ *  A thread-safe, lock-striped version of IPv6AddressMap
+ *
+ *  Copyright 2026 agent <agent@local>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opentelecoms.util.dns;
+
+/**
+ * Splits the address space across a number of {@link IPv6AddressMap}
+ * segments, each guarded by its own lock.  The segment is chosen from
+ * the high bits of the hash and the slot within the segment from the
+ * low bits, so the two choices are independent.
+ *
+ * The ValueFactory passed to computeIfAbsent runs while the segment
+ * lock is held, so it is called at most once per address but must not
+ * call back into the map.
+ */
+public class ConcurrentIPv6AddressMap<V> {
+
+	private static final int DEFAULT_SEGMENTS = 16;
+
+	final IPv6AddressMap<V>[] segments;
+	final int segmentShift;
+
+	public ConcurrentIPv6AddressMap() {
+		this(DEFAULT_SEGMENTS, 16 * DEFAULT_SEGMENTS);
+	}
+
+	/**
+	 * @param concurrency the number of segments, rounded up to a power of 2
+	 * @param expectedSize the total number of addresses to size the table for
+	 */
+	public ConcurrentIPv6AddressMap(int concurrency, int expectedSize) {
+		if(concurrency < 1 || concurrency > (1 << 16))
+			throw new IllegalArgumentException("bad concurrency: " + concurrency);
+		int n = Integer.highestOneBit(concurrency);
+		if(n < concurrency)
+			n <<= 1;
+		segmentShift = 32 - Integer.numberOfTrailingZeros(n);
+		// there is no generic array creation
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		IPv6AddressMap<V>[] _segments = new IPv6AddressMap[n];
+		segments = _segments;
+		for(int i = 0; i < n; i++)
+			segments[i] = new IPv6AddressMap<V>(expectedSize / n);
+	}
+
+	IPv6AddressMap<V> segmentFor(long high, long low) {
+		if(segmentShift == 32)
+			return segments[0];
+		return segments[IPv6AddressMap.hash(high, low) >>> segmentShift];
+	}
+
+	public V get(long high, long low) {
+		IPv6AddressMap<V> s = segmentFor(high, low);
+		synchronized(s) {
+			return s.get(high, low);
+		}
+	}
+
+	public boolean containsKey(long high, long low) {
+		IPv6AddressMap<V> s = segmentFor(high, low);
+		synchronized(s) {
+			return s.containsKey(high, low);
+		}
+	}
+
+	public V put(long high, long low, V value) {
+		IPv6AddressMap<V> s = segmentFor(high, low);
+		synchronized(s) {
+			return s.put(high, low, value);
+		}
+	}
+
+	/**
+	 * Atomically returns the value for the key, creating it with factory
+	 * if necessary.
+	 */
+	public V computeIfAbsent(long high, long low, IPv6AddressMap.ValueFactory<V> factory) {
+		IPv6AddressMap<V> s = segmentFor(high, low);
+		synchronized(s) {
+			return s.computeIfAbsent(high, low, factory);
+		}
+	}
+
+	public long getCount(long high, long low) {
+		IPv6AddressMap<V> s = segmentFor(high, low);
+		synchronized(s) {
+			return s.getCount(high, low);
+		}
+	}
+
+	/**
+	 * Atomically adds one to the counter for the key.
+	 *
+	 * @return the new value of the counter
+	 */
+	public long increment(long high, long low) {
+		return add(high, low, 1);
+	}
+
+	/**
+	 * Atomically adds delta to the counter for the key.
+	 *
+	 * @return the new value of the counter
+	 */
+	public long add(long high, long low, long delta) {
+		IPv6AddressMap<V> s = segmentFor(high, low);
+		synchronized(s) {
+			return s.add(high, low, delta);
+		}
+	}
+
+	public V remove(long high, long low) {
+		IPv6AddressMap<V> s = segmentFor(high, low);
+		synchronized(s) {
+			return s.remove(high, low);
+		}
+	}
+
+	/**
+	 * @return the total size; not a consistent snapshot if the map
+	 *         is being modified concurrently
+	 */
+	public int size() {
+		int n = 0;
+		for(IPv6AddressMap<V> s : segments) {
+			synchronized(s) {
+				n += s.size();
+			}
+		}
+		return n;
+	}
+
+	public void clear() {
+		for(IPv6AddressMap<V> s : segments) {
+			synchronized(s) {
+				s.clear();
+			}
+		}
+	}
+
+	/**
+	 * Visits every entry, locking one segment at a time.
+	 */
+	public void forEach(IPv6AddressMap.EntryVisitor<V> visitor) {
+		for(IPv6AddressMap<V> s : segments) {
+			synchronized(s) {
+				s.forEach(visitor);
+			}
+		}
+	}
+}
@@ -0,0 +1,296 @@
+/*
+ *  Single-pass parser and reusable holder for host, host:port,
+ *  [IPv6]:port and IPv6%zone strings
+ *
+ *  Copyright 2026 agent <agent@local>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opentelecoms.util.dns;
+
+/**
+ * Splits a transport address into host, port and zone without
+ * String.split or substring.  One instance can be reused for every
+ * message; parse() overwrites the previous result, so an instance
+ * must not be shared between threads.
+ *
+ * The forms accepted are:
+ * <ul>
+ * <li>host, host:port (a host name or an IPv4 literal)</li>
+ * <li>IPv6, IPv6%zone (more than one colon, no port)</li>
+ * <li>[IPv6], [IPv6]:port, [IPv6%zone]:port</li>
+ * </ul>
+ *
+ * Addresses are held as high and low 64 bit values in the layout used
+ * by {@link IPv6AddressMap}, IPv4 addresses in their IPv4-mapped
+ * form.  Host names and zones are held as ranges of the source text
+ * and only turned into Strings on request.
+ */
+public class HostPort {
+
+	public static final int INVALID = 0;
+	public static final int IPV4 = 1;
+	public static final int IPV6 = 2;
+	public static final int HOSTNAME = 3;
+
+	/** The port number when no port was given. */
+	public static final int NO_PORT = -1;
+
+	CharSequence src;
+	int kind;
+	long high;
+	long low;
+	int port;
+	int hostStart;
+	int hostEnd;
+	int zoneStart;
+	int zoneEnd;
+	final long[] scratch = new long[2];
+
+	public HostPort() {
+		reset(null);
+	}
+
+	private void reset(CharSequence s) {
+		src = s;
+		kind = INVALID;
+		high = 0;
+		low = 0;
+		port = NO_PORT;
+		hostStart = hostEnd = 0;
+		zoneStart = zoneEnd = -1;
+	}
+
+	public boolean parse(CharSequence s) {
+		return parse(s, 0, s.length());
+	}
+
+	/**
+	 * Parses s[start, end) into this holder.
+	 *
+	 * @return false if the text is not in any of the accepted forms,
+	 *         in which case getKind() returns INVALID
+	 */
+	public boolean parse(CharSequence s, int start, int end) {
+		reset(s);
+		if(!tokenize(s, start, end)) {
+			reset(s);
+			return false;
+		}
+		return true;
+	}
+
+	private boolean tokenize(CharSequence s, int start, int end) {
+		if(start >= end)
+			return false;
+
+		if(s.charAt(start) == '[') {
+			int close = -1;
+			for(int i = start + 1; i < end; i++) {
+				if(s.charAt(i) == ']') {
+					close = i;
+					break;
+				}
+			}
+			if(close < 0)
+				return false;
+			if(close + 1 < end) {
+				if(s.charAt(close + 1) != ':' || !parsePort(s, close + 2, end))
+					return false;
+			}
+			return parseIPv6(s, start + 1, close);
+		}
+
+		int colons = 0;
+		int lastColon = -1;
+		for(int i = start; i < end; i++) {
+			if(s.charAt(i) == ':') {
+				colons++;
+				lastColon = i;
+			}
+		}
+		if(colons > 1)
+			return parseIPv6(s, start, end);
+		if(colons == 1) {
+			if(!parsePort(s, lastColon + 1, end))
+				return false;
+			end = lastColon;
+		}
+		return parseHost(s, start, end);
+	}
+
+	private boolean parsePort(CharSequence s, int start, int end) {
+		if(start >= end || end - start > 5)
+			return false;
+		int p = 0;
+		for(int i = start; i < end; i++) {
+			char ch = s.charAt(i);
+			if(ch < '0' || ch > '9')
+				return false;
+			p = p * 10 + (ch - '0');
+		}
+		if(p > 0xffff)
+			return false;
+		port = p;
+		return true;
+	}
+
+	private boolean parseIPv6(CharSequence s, int start, int end) {
+		int addrEnd = end;
+		for(int i = start; i < end; i++) {
+			if(s.charAt(i) == '%') {
+				if(i == end - 1)
+					return false;
+				addrEnd = i;
+				zoneStart = i + 1;
+				zoneEnd = end;
+				break;
+			}
+		}
+		if(!IPLiteralParser.parseIPv6(s, start, addrEnd, scratch))
+			return false;
+		high = scratch[0];
+		low = scratch[1];
+		hostStart = start;
+		hostEnd = addrEnd;
+		kind = IPLiteralParser.isIPv4Mapped(high, low) ? IPV4 : IPV6;
+		return true;
+	}
+
+	private boolean parseHost(CharSequence s, int start, int end) {
+		if(start >= end)
+			return false;
+		hostStart = start;
+		hostEnd = end;
+		long v4 = IPLiteralParser.parseIPv4(s, start, end);
+		if(v4 != IPLiteralParser.INVALID) {
+			low = 0xffff00000000L | v4;
+			kind = IPV4;
+			return true;
+		}
+		for(int i = start; i < end; i++) {
+			char ch = s.charAt(i);
+			if(!((ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z') ||
+					(ch >= '0' && ch <= '9') || ch == '-' || ch == '.' || ch == '_'))
+				return false;
+		}
+		kind = HOSTNAME;
+		return true;
+	}
+
+	/**
+	 * @return one of INVALID, IPV4, IPV6 or HOSTNAME
+	 */
+	public int getKind() {
+		return kind;
+	}
+
+	public boolean isAddress() {
+		return kind == IPV4 || kind == IPV6;
+	}
+
+	public long getHigh() {
+		return high;
+	}
+
+	public long getLow() {
+		return low;
+	}
+
+	/**
+	 * @return the IPv4 address as an int, if getKind() is IPV4
+	 */
+	public int getIPv4() {
+		return (int)low;
+	}
+
+	/**
+	 * @return the port, or NO_PORT
+	 */
+	public int getPort() {
+		return port;
+	}
+
+	public int getPort(int defaultPort) {
+		return port == NO_PORT ? defaultPort : port;
+	}
+
+	public int getHostStart() {
+		return hostStart;
+	}
+
+	public int getHostEnd() {
+		return hostEnd;
+	}
+
+	/**
+	 * @return the host text, without brackets, zone or port
+	 */
+	public String getHost() {
+		if(kind == INVALID)
+			return null;
+		return src.subSequence(hostStart, hostEnd).toString();
+	}
+
+	public boolean hasZone() {
+		return zoneStart >= 0;
+	}
+
+	public int getZoneStart() {
+		return zoneStart;
+	}
+
+	public int getZoneEnd() {
+		return zoneEnd;
+	}
+
+	/**
+	 * @return the zone text (for example an interface name), or null
+	 */
+	public String getZone() {
+		if(zoneStart < 0)
+			return null;
+		return src.subSequence(zoneStart, zoneEnd).toString();
+	}
+
+	/**
+	 * @return the zone as a numeric scope ID, or -1 if there is no zone
+	 *         or it is not numeric (an interface name)
+	 */
+	public int getScopeId() {
+		if(zoneStart < 0 || zoneEnd - zoneStart > 9)
+			return -1;
+		int id = 0;
+		for(int i = zoneStart; i < zoneEnd; i++) {
+			char ch = src.charAt(i);
+			if(ch < '0' || ch > '9')
+				return -1;
+			id = id * 10 + (ch - '0');
+		}
+		return id;
+	}
+
+	/**
+	 * @return the address in network order, 4 bytes for IPV4 and
+	 *         16 bytes for IPV6, or null for a host name
+	 */
+	public byte[] getAddress() {
+		if(kind == IPV4)
+			return IPv4AddressMap.toAddress((int)low);
+		if(kind == IPV6)
+			return IPv6AddressMap.toAddress(high, low);
+		return null;
+	}
+}
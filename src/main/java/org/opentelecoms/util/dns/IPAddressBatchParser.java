@@ -0,0 +1,275 @@
+/*
+ *  Validates and parses large batches of IPv4/IPv6 literals, for
+ *  example when reprocessing CDR files and SIP traces
+ *
+ *  Copyright 2026 agent <agent@local>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opentelecoms.util.dns;
+
+import java.nio.CharBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Parses many address literals in one call, writing the results into
+ * primitive arrays instead of creating a byte[] per address.
+ *
+ * Each entry is stored as 128 bits in the layout of
+ * {@link IPv6AddressMap}; IPv4 addresses (and IPv4-mapped IPv6
+ * addresses, which IPAddressUtil also converts) are stored in their
+ * IPv4-mapped form.  Validity and address family are kept in bitsets.
+ *
+ * The parallel variants split the batch on multiples of 64 entries, so
+ * that no two tasks ever write to the same bitset word.
+ */
+public class IPAddressBatchParser {
+
+	/** Batches smaller than this are not split any further. */
+	public static final int DEFAULT_SPLIT_THRESHOLD = 8192;
+
+	/**
+	 * The parsed form of a batch of literals.
+	 */
+	public static class Result {
+
+		final int count;
+		final long[] high;
+		final long[] low;
+		final long[] valid;
+		final long[] ipv6;
+
+		Result(int count) {
+			this.count = count;
+			high = new long[count];
+			low = new long[count];
+			valid = new long[(count + 63) >>> 6];
+			ipv6 = new long[(count + 63) >>> 6];
+		}
+
+		public int size() {
+			return count;
+		}
+
+		public boolean isValid(int i) {
+			return (valid[i >>> 6] & (1L << i)) != 0;
+		}
+
+		/**
+		 * @return true if entry i is a valid IPv6 address that is not
+		 *         an IPv4-mapped address
+		 */
+		public boolean isIPv6(int i) {
+			return (ipv6[i >>> 6] & (1L << i)) != 0;
+		}
+
+		public boolean isIPv4(int i) {
+			return isValid(i) && !isIPv6(i);
+		}
+
+		/**
+		 * @return the IPv4 address of entry i as an int, see
+		 *         {@link IPv4AddressMap#toKey(byte[])}
+		 */
+		public int getIPv4(int i) {
+			return (int)low[i];
+		}
+
+		public long getHigh(int i) {
+			return high[i];
+		}
+
+		public long getLow(int i) {
+			return low[i];
+		}
+
+		/**
+		 * @return the number of valid entries
+		 */
+		public int validCount() {
+			int n = 0;
+			for(long w : valid)
+				n += Long.bitCount(w);
+			return n;
+		}
+
+		/**
+		 * @return a copy of the validity bitset, one bit per entry
+		 */
+		public long[] getValidBits() {
+			return valid.clone();
+		}
+
+		void set(int i, long h, long l, boolean v6) {
+			high[i] = h;
+			low[i] = l;
+			valid[i >>> 6] |= 1L << i;
+			if(v6)
+				ipv6[i >>> 6] |= 1L << i;
+		}
+	}
+
+	/**
+	 * Parses each element of src, which must not contain null.
+	 */
+	public static Result parse(CharSequence[] src) {
+		Result r = new Result(src.length);
+		long[] scratch = new long[2];
+		for(int i = 0; i < src.length; i++)
+			parseInto(r, i, src[i], 0, src[i].length(), scratch);
+		return r;
+	}
+
+	/**
+	 * Parses each element of src using the tasks of pool.
+	 */
+	public static Result parse(CharSequence[] src, ForkJoinPool pool) {
+		Result r = new Result(src.length);
+		pool.invoke(new ParseTask(r, src, null, null, 0, src.length,
+			DEFAULT_SPLIT_THRESHOLD));
+		return r;
+	}
+
+	/**
+	 * Parses the literals in buf[offset, offset + length) that are
+	 * separated by delimiter (for example '\n' or ',').  A trailing
+	 * delimiter does not start another entry and a '\r' at the end of
+	 * each entry is ignored.
+	 */
+	public static Result parse(char[] buf, int offset, int length, char delimiter) {
+		int[] bounds = split(buf, offset, length, delimiter);
+		int count = bounds.length / 2;
+		Result r = new Result(count);
+		CharBuffer cb = CharBuffer.wrap(buf);
+		long[] scratch = new long[2];
+		for(int i = 0; i < count; i++)
+			parseInto(r, i, cb, bounds[2 * i], bounds[2 * i + 1], scratch);
+		return r;
+	}
+
+	/**
+	 * Delimited variant of {@link #parse(CharSequence[], ForkJoinPool)}.
+	 * Finding the delimiters is done sequentially, parsing in parallel.
+	 */
+	public static Result parse(char[] buf, int offset, int length, char delimiter,
+			ForkJoinPool pool) {
+		int[] bounds = split(buf, offset, length, delimiter);
+		int count = bounds.length / 2;
+		Result r = new Result(count);
+		pool.invoke(new ParseTask(r, null, CharBuffer.wrap(buf), bounds, 0, count,
+			DEFAULT_SPLIT_THRESHOLD));
+		return r;
+	}
+
+	/*
+	 * Returns the start and end of each entry as consecutive pairs.
+	 */
+	static int[] split(char[] buf, int offset, int length, char delimiter) {
+		int end = offset + length;
+		int count = 0;
+		for(int i = offset; i < end; i++)
+			if(buf[i] == delimiter)
+				count++;
+		if(length > 0 && buf[end - 1] != delimiter)
+			count++;
+		int[] bounds = new int[2 * count];
+		int n = 0;
+		int start = offset;
+		for(int i = offset; i < end; i++) {
+			if(buf[i] == delimiter) {
+				bounds[n++] = start;
+				bounds[n++] = (i > start && buf[i - 1] == '\r') ? i - 1 : i;
+				start = i + 1;
+			}
+		}
+		if(start < end) {
+			bounds[n++] = start;
+			bounds[n++] = buf[end - 1] == '\r' ? end - 1 : end;
+		}
+		return bounds;
+	}
+
+	static void parseInto(Result r, int i, CharSequence s, int start, int end, long[] scratch) {
+		boolean colon = false;
+		int zone = -1;
+		for(int k = start; k < end; k++) {
+			char ch = s.charAt(k);
+			if(ch == ':')
+				colon = true;
+			else if(ch == '%' && zone < 0)
+				zone = k;
+		}
+		if(!colon) {
+			long v4 = IPLiteralParser.parseIPv4(s, start, end);
+			if(v4 != IPLiteralParser.INVALID)
+				r.set(i, 0, 0xffff00000000L | v4, false);
+			return;
+		}
+		// Any component of the string following a per-cent % is ignored,
+		// as in IPAddressUtil, but it must not be empty
+		if(zone >= 0) {
+			if(zone == end - 1)
+				return;
+			end = zone;
+		}
+		if(IPLiteralParser.parseIPv6(s, start, end, scratch)) {
+			r.set(i, scratch[0], scratch[1],
+				!IPLiteralParser.isIPv4Mapped(scratch[0], scratch[1]));
+		}
+	}
+
+	static class ParseTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 4183520962471193587L;
+
+		final Result result;
+		final CharSequence[] src;
+		final CharSequence buf;
+		final int[] bounds;
+		final int from;
+		final int to;
+		final int threshold;
+
+		ParseTask(Result result, CharSequence[] src, CharSequence buf, int[] bounds,
+				int from, int to, int threshold) {
+			this.result = result;
+			this.src = src;
+			this.buf = buf;
+			this.bounds = bounds;
+			this.from = from;
+			this.to = to;
+			this.threshold = Math.max(128, threshold);
+		}
+
+		@Override
+		protected void compute() {
+			if(to - from <= threshold) {
+				long[] scratch = new long[2];
+				for(int i = from; i < to; i++) {
+					if(src != null)
+						parseInto(result, i, src[i], 0, src[i].length(), scratch);
+					else
+						parseInto(result, i, buf, bounds[2 * i], bounds[2 * i + 1], scratch);
+				}
+				return;
+			}
+			// split on a multiple of 64 so the bitset words are not shared
+			int mid = ((from + (to - from) / 2) + 63) & ~63;
+			invokeAll(new ParseTask(result, src, buf, bounds, from, mid, threshold),
+				new ParseTask(result, src, buf, bounds, mid, to, threshold));
+		}
+	}
+}
@@ -0,0 +1,180 @@
+/*
+ *  Recognises IPv6 addresses that embed an IPv4 address (IPv4-mapped,
+ *  NAT64, 6to4 and IPv4-compatible) and rewrites them to a single
+ *  canonical form, so that a dual-stack host has only one key
+ *
+ *  Copyright 2026 agent <agent@local>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opentelecoms.util.dns;
+
+/**
+ * The canonical form of an address with an embedded IPv4 address is
+ * the IPv4-mapped form ::ffff:a.b.c.d, held as high and low 64 bit
+ * values in the layout used by {@link IPv6AddressMap} and
+ * {@link IPAddressBatchParser}.  Addresses are rewritten in place,
+ * either in a 16 byte array or in a long[2].
+ *
+ * NAT64 prefixes are matched as /96 prefixes (RFC 6052 section 2.2);
+ * the well-known prefix 64:ff9b::/96 is always included and further
+ * network-specific prefixes may be added.  The IPv4-compatible form
+ * does not match :: or ::1.
+ */
+public class IPAddressNormalizer {
+
+	public static final int NATIVE = 0;
+	public static final int IPV4_MAPPED = 1;
+	public static final int NAT64 = 2;
+	public static final int SIX_TO_FOUR = 4;
+	public static final int IPV4_COMPATIBLE = 8;
+	public static final int ALL = IPV4_MAPPED | NAT64 | SIX_TO_FOUR | IPV4_COMPATIBLE;
+
+	/** The high 64 bits of the NAT64 well-known prefix 64:ff9b::/96 */
+	static final long NAT64_WKP_HIGH = 0x0064ff9b00000000L;
+
+	final int enabled;
+	/* pairs of the high 64 bits and the next 32 bits of each /96 prefix */
+	volatile long[] nat64Prefixes = { NAT64_WKP_HIGH, 0 };
+
+	/**
+	 * Creates a normalizer for all of the supported forms.
+	 */
+	public IPAddressNormalizer() {
+		this(ALL);
+	}
+
+	/**
+	 * @param enabled the forms to normalize, a combination of
+	 *        IPV4_MAPPED, NAT64, SIX_TO_FOUR and IPV4_COMPATIBLE
+	 */
+	public IPAddressNormalizer(int enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Adds a network-specific NAT64 prefix.
+	 *
+	 * @param prefix a 16 byte address, of which the first 12 bytes
+	 *        are the /96 prefix
+	 */
+	public synchronized void addNAT64Prefix(byte[] prefix) {
+		if(prefix == null || prefix.length != 16)
+			throw new IllegalArgumentException("not an IPv6 prefix");
+		long high = IPv6AddressMap.highBits(prefix);
+		long mid = IPv6AddressMap.lowBits(prefix) >>> 32;
+		long[] p = nat64Prefixes;
+		for(int i = 0; i < p.length; i += 2)
+			if(p[i] == high && p[i + 1] == mid)
+				return;
+		long[] _p = new long[p.length + 2];
+		System.arraycopy(p, 0, _p, 0, p.length);
+		_p[p.length] = high;
+		_p[p.length + 1] = mid;
+		nat64Prefixes = _p;
+	}
+
+	/**
+	 * @return the form of the address, one of NATIVE, IPV4_MAPPED,
+	 *         NAT64, SIX_TO_FOUR or IPV4_COMPATIBLE; forms that are not
+	 *         enabled are reported as NATIVE
+	 */
+	public int classify(long high, long low) {
+		if(high == 0) {
+			long top = low >>> 32;
+			if(top == 0xffffL)
+				return enabled & IPV4_MAPPED;
+			if(top == 0 && (low & 0xffffffffL) > 1)
+				return enabled & IPV4_COMPATIBLE;
+			return NATIVE;
+		}
+		if((high >>> 48) == 0x2002L)
+			return enabled & SIX_TO_FOUR;
+		if((enabled & NAT64) != 0) {
+			long mid = low >>> 32;
+			long[] p = nat64Prefixes;
+			for(int i = 0; i < p.length; i += 2)
+				if(p[i] == high && p[i + 1] == mid)
+					return NAT64;
+		}
+		return NATIVE;
+	}
+
+	/**
+	 * Returns the key for the host in a flow table holding only IPv4
+	 * hosts, see {@link IPv4AddressMap}.
+	 *
+	 * @return the embedded IPv4 address as an unsigned 32 bit value,
+	 *         or -1 if the address does not embed one
+	 */
+	public long embeddedIPv4(long high, long low) {
+		return embeddedIPv4(classify(high, low), high, low);
+	}
+
+	private static long embeddedIPv4(int kind, long high, long low) {
+		switch(kind) {
+		case IPV4_MAPPED:
+		case NAT64:
+		case IPV4_COMPATIBLE:
+			return low & 0xffffffffL;
+		case SIX_TO_FOUR:
+			// 2002:AABB:CCDD::/48
+			return (high >>> 16) & 0xffffffffL;
+		default:
+			return -1;
+		}
+	}
+
+	/**
+	 * Rewrites addr[0] (high) and addr[1] (low) to the canonical form.
+	 *
+	 * @return the form the address was in before, as for classify
+	 */
+	public int normalize(long[] addr) {
+		int kind = classify(addr[0], addr[1]);
+		if(kind != NATIVE) {
+			long v4 = embeddedIPv4(kind, addr[0], addr[1]);
+			addr[0] = 0;
+			addr[1] = 0xffff00000000L | v4;
+		}
+		return kind;
+	}
+
+	/**
+	 * Rewrites a 16 byte address to the canonical form.  A 4 byte
+	 * address is left as it is and reported as NATIVE.
+	 *
+	 * @return the form the address was in before, as for classify
+	 */
+	public int normalize(byte[] addr) {
+		if(addr.length != 16)
+			return NATIVE;
+		long high = IPv6AddressMap.highBits(addr);
+		long low = IPv6AddressMap.lowBits(addr);
+		int kind = classify(high, low);
+		if(kind != NATIVE) {
+			long v4 = embeddedIPv4(kind, high, low);
+			for(int i = 0; i < 10; i++)
+				addr[i] = 0;
+			addr[10] = (byte)0xff;
+			addr[11] = (byte)0xff;
+			addr[12] = (byte)(v4 >>> 24);
+			addr[13] = (byte)(v4 >>> 16);
+			addr[14] = (byte)(v4 >>> 8);
+			addr[15] = (byte)v4;
+		}
+		return kind;
+	}
+}
@@ -0,0 +1,213 @@
+/*
+ *  Allocation-free parsing of IPv4 and IPv6 literals from any range
+ *  of a CharSequence
+ *
+ *  Copyright 2026 agent <agent@local>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opentelecoms.util.dns;
+
+/**
+ * Parses the same forms as {@link IPAddressUtil#textToNumericFormatV4(String)}
+ * and {@link IPAddressUtil#textToNumericFormatV6(String)}, but over a
+ * range of characters and into primitive values, so that no String,
+ * String[] or byte[] is created for each address.
+ *
+ * IPv4 addresses are returned as a long holding the 32 bit address, or
+ * -1 if the text is not valid.  IPv6 addresses are written to a caller
+ * supplied long[2] as the high and low 64 bits in network order, the
+ * same layout as the keys of {@link IPv6AddressMap}.
+ *
+ * Unlike IPAddressUtil, only the ASCII digits are accepted in IPv4
+ * components (Integer.parseInt also accepts a leading sign).
+ */
+public final class IPLiteralParser {
+
+	public static final long INVALID = -1L;
+
+	private IPLiteralParser() {
+	}
+
+	/**
+	 * Parses an IPv4 literal in any of the 1 to 4 part forms.
+	 *
+	 * @return the address as an unsigned 32 bit value, or INVALID
+	 */
+	public static long parseIPv4(CharSequence src, int start, int end) {
+		int parts = 0;
+		long a = 0, b = 0, c = 0;
+		long cur = -1;
+		for(int i = start; i < end; i++) {
+			char ch = src.charAt(i);
+			if(ch >= '0' && ch <= '9') {
+				cur = (cur < 0 ? 0 : cur * 10) + (ch - '0');
+				if(cur > 0xffffffffL)
+					return INVALID;
+			} else if(ch == '.') {
+				if(cur < 0 || parts == 3)
+					return INVALID;
+				if(parts == 0)
+					a = cur;
+				else if(parts == 1)
+					b = cur;
+				else
+					c = cur;
+				parts++;
+				cur = -1;
+			} else {
+				return INVALID;
+			}
+		}
+		if(cur < 0)
+			return INVALID;
+		switch(parts) {
+		case 0:
+			return cur;
+		case 1:
+			if(a > 0xff || cur > 0xffffff)
+				return INVALID;
+			return (a << 24) | cur;
+		case 2:
+			if(a > 0xff || b > 0xff || cur > 0xffff)
+				return INVALID;
+			return (a << 24) | (b << 16) | cur;
+		default:
+			if(a > 0xff || b > 0xff || c > 0xff || cur > 0xff)
+				return INVALID;
+			return (a << 24) | (b << 16) | (c << 8) | cur;
+		}
+	}
+
+	/**
+	 * Parses an IPv6 literal without any zone suffix.  Groups before a
+	 * "::" are placed directly in out, groups after it are accumulated
+	 * right-aligned and merged at the end, so no scratch array is used.
+	 *
+	 * @param out receives the high bits in out[0] and low bits in out[1]
+	 * @return false if the text is not a valid IPv6 literal
+	 */
+	public static boolean parseIPv6(CharSequence src, int start, int end, long[] out) {
+		// Shortest valid string is "::", hence at least 2 chars
+		if(end - start < 2)
+			return false;
+
+		long headHigh = 0, headLow = 0;
+		long tailHigh = 0, tailLow = 0;
+		int colonp = -1;
+		int groups = 0;
+		boolean sawXDigit = false;
+		int val = 0;
+		int i = start;
+
+		/* Leading :: requires some special handling. */
+		if(src.charAt(i) == ':')
+			if(src.charAt(++i) != ':')
+				return false;
+		int curtok = i;
+		while(i < end) {
+			char ch = src.charAt(i++);
+			int chval = Character.digit(ch, 16);
+			if(chval != -1) {
+				val = (val << 4) | chval;
+				if(val > 0xffff)
+					return false;
+				sawXDigit = true;
+				continue;
+			}
+			if(ch == ':') {
+				curtok = i;
+				if(!sawXDigit) {
+					if(colonp != -1)
+						return false;
+					colonp = groups;
+					continue;
+				} else if(i == end) {
+					return false;
+				}
+				if(groups + 1 > 8)
+					return false;
+				if(colonp == -1) {
+					if(groups < 4)
+						headHigh |= (long)val << (16 * (3 - groups));
+					else
+						headLow |= (long)val << (16 * (7 - groups));
+				} else {
+					tailHigh = (tailHigh << 16) | (tailLow >>> 48);
+					tailLow = (tailLow << 16) | val;
+				}
+				groups++;
+				sawXDigit = false;
+				val = 0;
+				continue;
+			}
+			if(ch == '.' && groups + 2 <= 8) {
+				/* check this IPv4 address has 3 dots, ie. A.B.C.D */
+				int dots = 0;
+				for(int k = curtok; k < end; k++)
+					if(src.charAt(k) == '.')
+						dots++;
+				if(dots != 3)
+					return false;
+				long v4 = parseIPv4(src, curtok, end);
+				if(v4 == INVALID)
+					return false;
+				if(colonp == -1) {
+					// the embedded address is always in the low 32 bits here
+					if(groups != 6)
+						return false;
+					headLow |= v4;
+				} else {
+					tailHigh = (tailHigh << 32) | (tailLow >>> 32);
+					tailLow = (tailLow << 32) | v4;
+				}
+				groups += 2;
+				sawXDigit = false;
+				break;
+			}
+			return false;
+		}
+		if(sawXDigit) {
+			if(groups + 1 > 8)
+				return false;
+			if(colonp == -1) {
+				if(groups < 4)
+					headHigh |= (long)val << (16 * (3 - groups));
+				else
+					headLow |= (long)val << (16 * (7 - groups));
+			} else {
+				tailHigh = (tailHigh << 16) | (tailLow >>> 48);
+				tailLow = (tailLow << 16) | val;
+			}
+			groups++;
+		}
+		if(colonp != -1) {
+			if(groups == 8)
+				return false;
+		} else if(groups != 8) {
+			return false;
+		}
+		out[0] = headHigh | tailHigh;
+		out[1] = headLow | tailLow;
+		return true;
+	}
+
+	/**
+	 * @return true if high and low are an IPv4-mapped address (::ffff:0:0/96)
+	 */
+	public static boolean isIPv4Mapped(long high, long low) {
+		return high == 0 && (low >>> 32) == 0xffffL;
+	}
+}
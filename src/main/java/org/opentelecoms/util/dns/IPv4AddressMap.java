@@ -0,0 +1,347 @@
+/*
+ *  An open-addressing hash map keyed by IPv4 addresses held as
+ *  primitive 32-bit values, for per-source counters and state
+ *
+ *  Copyright 2026 agent <agent@local>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opentelecoms.util.dns;
+
+import java.util.Arrays;
+
+/**
+ * Maps IPv4 addresses to a value and a long counter without boxing
+ * the address or the counter.
+ *
+ * Keys are held in an int[] and probed linearly.  The value 0
+ * (0.0.0.0) marks an empty slot, so that address is kept in one
+ * extra slot at the end of the arrays.  The value and counter arrays
+ * are only allocated once they are first used, so a map used purely
+ * for counting carries no Object[] and vice versa.
+ *
+ * This class is not thread-safe, see {@link ConcurrentIPv4AddressMap}.
+ */
+public class IPv4AddressMap<V> {
+
+	/**
+	 * Creates the value for an address that is not yet in the map.
+	 */
+	public interface ValueFactory<V> {
+		V create(int address);
+	}
+
+	/**
+	 * Receives each entry in the map, see {@link IPv4AddressMap#forEach}.
+	 */
+	public interface EntryVisitor<V> {
+		void visit(int address, V value, long count);
+	}
+
+	private static final int DEFAULT_CAPACITY = 16;
+
+	int[] keys;
+	Object[] values;
+	long[] counts;
+	int mask;
+	int size;
+	int threshold;
+	boolean hasZeroKey;
+
+	public IPv4AddressMap() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param expectedSize the number of addresses to size the table for
+	 */
+	public IPv4AddressMap(int expectedSize) {
+		if(expectedSize < 0)
+			throw new IllegalArgumentException("negative size: " + expectedSize);
+		allocate(tableSizeFor(expectedSize));
+	}
+
+	/**
+	 * Converts a 4 byte address in network order (as returned by
+	 * {@link IPAddressUtil#textToNumericFormatV4(String)}) to a key.
+	 */
+	public static int toKey(byte[] addr) {
+		if(addr == null || addr.length != 4)
+			throw new IllegalArgumentException("not an IPv4 address");
+		return ((addr[0] & 0xff) << 24) | ((addr[1] & 0xff) << 16) |
+			((addr[2] & 0xff) << 8) | (addr[3] & 0xff);
+	}
+
+	/**
+	 * Converts a key back to a 4 byte address in network order.
+	 */
+	public static byte[] toAddress(int key) {
+		return new byte[] { (byte)(key >>> 24), (byte)(key >>> 16),
+			(byte)(key >>> 8), (byte)key };
+	}
+
+	static int hash(int key) {
+		int h = key * 0x9e3779b9;
+		return h ^ (h >>> 16);
+	}
+
+	static int tableSizeFor(int expectedSize) {
+		long n = Math.max(2L, (long)Math.ceil(expectedSize / 0.75));
+		if(n > (1 << 30))
+			throw new IllegalArgumentException("too many entries: " + expectedSize);
+		return Integer.highestOneBit((int)n - 1) << 1;
+	}
+
+	private void allocate(int capacity) {
+		keys = new int[capacity];
+		mask = capacity - 1;
+		threshold = (int)(capacity * 0.75);
+	}
+
+	/**
+	 * @return the slot holding key, or -1 if it is not present
+	 */
+	int slotOf(int key) {
+		if(key == 0)
+			return hasZeroKey ? keys.length : -1;
+		int pos = hash(key) & mask;
+		int k;
+		while((k = keys[pos]) != 0) {
+			if(k == key)
+				return pos;
+			pos = (pos + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the slot holding key, adding the key if it is not present
+	 */
+	int insert(int key) {
+		if(key == 0) {
+			if(!hasZeroKey) {
+				hasZeroKey = true;
+				size++;
+			}
+			return keys.length;
+		}
+		if(size >= threshold)
+			rehash(keys.length << 1);
+		int pos = hash(key) & mask;
+		int k;
+		while((k = keys[pos]) != 0) {
+			if(k == key)
+				return pos;
+			pos = (pos + 1) & mask;
+		}
+		keys[pos] = key;
+		size++;
+		return pos;
+	}
+
+	private void rehash(int capacity) {
+		int[] oldKeys = keys;
+		Object[] oldValues = values;
+		long[] oldCounts = counts;
+		int oldCapacity = oldKeys.length;
+		allocate(capacity);
+		if(oldValues != null) {
+			values = new Object[capacity + 1];
+			values[capacity] = oldValues[oldCapacity];
+		}
+		if(oldCounts != null) {
+			counts = new long[capacity + 1];
+			counts[capacity] = oldCounts[oldCapacity];
+		}
+		for(int i = 0; i < oldCapacity; i++) {
+			int k = oldKeys[i];
+			if(k == 0)
+				continue;
+			int pos = hash(k) & mask;
+			while(keys[pos] != 0)
+				pos = (pos + 1) & mask;
+			keys[pos] = k;
+			if(oldValues != null)
+				values[pos] = oldValues[i];
+			if(oldCounts != null)
+				counts[pos] = oldCounts[i];
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public boolean containsKey(int key) {
+		return slotOf(key) >= 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(int key) {
+		int pos = slotOf(key);
+		if(pos < 0 || values == null)
+			return null;
+		return (V)values[pos];
+	}
+
+	/**
+	 * @return the previous value for key, or null
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(int key, V value) {
+		int pos = insert(key);
+		if(values == null)
+			values = new Object[keys.length + 1];
+		V old = (V)values[pos];
+		values[pos] = value;
+		return old;
+	}
+
+	/**
+	 * Returns the value for key, creating it with factory if the key
+	 * is not present or has no value yet.
+	 */
+	@SuppressWarnings("unchecked")
+	public V computeIfAbsent(int key, ValueFactory<V> factory) {
+		int pos = slotOf(key);
+		if(pos >= 0 && values != null && values[pos] != null)
+			return (V)values[pos];
+		V value = factory.create(key);
+		if(value != null)
+			put(key, value);
+		return value;
+	}
+
+	/**
+	 * @return the counter for key, or 0 if it is not present
+	 */
+	public long getCount(int key) {
+		int pos = slotOf(key);
+		if(pos < 0 || counts == null)
+			return 0;
+		return counts[pos];
+	}
+
+	/**
+	 * Adds one to the counter for key, adding the key if necessary.
+	 *
+	 * @return the new value of the counter
+	 */
+	public long increment(int key) {
+		return add(key, 1);
+	}
+
+	/**
+	 * Adds delta to the counter for key, adding the key if necessary.
+	 *
+	 * @return the new value of the counter
+	 */
+	public long add(int key, long delta) {
+		int pos = insert(key);
+		if(counts == null)
+			counts = new long[keys.length + 1];
+		return counts[pos] += delta;
+	}
+
+	/**
+	 * Removes key together with its value and counter.
+	 *
+	 * @return the value that was held for key, or null
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(int key) {
+		int pos = slotOf(key);
+		if(pos < 0)
+			return null;
+		V old = values == null ? null : (V)values[pos];
+		size--;
+		if(key == 0) {
+			hasZeroKey = false;
+			clearSlot(pos);
+		} else {
+			shiftKeys(pos);
+		}
+		return old;
+	}
+
+	/*
+	 * Backward-shift deletion: move later entries of the probe run
+	 * into the hole so that no tombstones are needed.
+	 */
+	private void shiftKeys(int pos) {
+		int last;
+		int k;
+		for(;;) {
+			pos = ((last = pos) + 1) & mask;
+			for(;;) {
+				if((k = keys[pos]) == 0) {
+					keys[last] = 0;
+					clearSlot(last);
+					return;
+				}
+				int slot = hash(k) & mask;
+				if(last <= pos ? (last >= slot || slot > pos) : (last >= slot && slot > pos))
+					break;
+				pos = (pos + 1) & mask;
+			}
+			keys[last] = k;
+			if(values != null)
+				values[last] = values[pos];
+			if(counts != null)
+				counts[last] = counts[pos];
+		}
+	}
+
+	private void clearSlot(int pos) {
+		if(values != null)
+			values[pos] = null;
+		if(counts != null)
+			counts[pos] = 0;
+	}
+
+	public void clear() {
+		Arrays.fill(keys, 0);
+		if(values != null)
+			Arrays.fill(values, null);
+		if(counts != null)
+			Arrays.fill(counts, 0);
+		hasZeroKey = false;
+		size = 0;
+	}
+
+	/**
+	 * Passes every entry to visitor.  The map must not be modified
+	 * by the visitor.
+	 */
+	@SuppressWarnings("unchecked")
+	public void forEach(EntryVisitor<V> visitor) {
+		for(int i = 0; i < keys.length; i++) {
+			if(keys[i] != 0)
+				visitor.visit(keys[i],
+					values == null ? null : (V)values[i],
+					counts == null ? 0 : counts[i]);
+		}
+		if(hasZeroKey) {
+			int pos = keys.length;
+			visitor.visit(0,
+				values == null ? null : (V)values[pos],
+				counts == null ? 0 : counts[pos]);
+		}
+	}
+}
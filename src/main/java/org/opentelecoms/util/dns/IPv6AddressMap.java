@@ -0,0 +1,370 @@
+/*
+ *  An open-addressing hash map keyed by IPv6 addresses held as
+ *  pairs of primitive 64-bit values, for per-source counters and state
+ *
+ *  Copyright 2026 agent <agent@local>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opentelecoms.util.dns;
+
+import java.util.Arrays;
+
+/**
+ * Maps IPv6 addresses to a value and a long counter without boxing.
+ *
+ * Each address is split into its high and low 64 bits, which are held
+ * in two parallel long[] tables and probed linearly.  The unspecified
+ * address (::) marks an empty slot, so it is kept in one extra slot at
+ * the end of the arrays, as {@link IPv4AddressMap} does for 0.0.0.0.
+ *
+ * This class is not thread-safe, see {@link ConcurrentIPv6AddressMap}.
+ */
+public class IPv6AddressMap<V> {
+
+	/**
+	 * Creates the value for an address that is not yet in the map.
+	 */
+	public interface ValueFactory<V> {
+		V create(long high, long low);
+	}
+
+	/**
+	 * Receives each entry in the map, see {@link IPv6AddressMap#forEach}.
+	 */
+	public interface EntryVisitor<V> {
+		void visit(long high, long low, V value, long count);
+	}
+
+	private static final int DEFAULT_CAPACITY = 16;
+
+	long[] highs;
+	long[] lows;
+	Object[] values;
+	long[] counts;
+	int mask;
+	int size;
+	int threshold;
+	boolean hasZeroKey;
+
+	public IPv6AddressMap() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param expectedSize the number of addresses to size the table for
+	 */
+	public IPv6AddressMap(int expectedSize) {
+		if(expectedSize < 0)
+			throw new IllegalArgumentException("negative size: " + expectedSize);
+		allocate(IPv4AddressMap.tableSizeFor(expectedSize));
+	}
+
+	/**
+	 * @return the first 8 bytes of a 16 byte address in network order
+	 */
+	public static long highBits(byte[] addr) {
+		checkAddress(addr);
+		return toLong(addr, 0);
+	}
+
+	/**
+	 * @return the last 8 bytes of a 16 byte address in network order
+	 */
+	public static long lowBits(byte[] addr) {
+		checkAddress(addr);
+		return toLong(addr, 8);
+	}
+
+	/**
+	 * Converts a key back to a 16 byte address in network order.
+	 */
+	public static byte[] toAddress(long high, long low) {
+		byte[] addr = new byte[16];
+		for(int i = 0; i < 8; i++) {
+			addr[i] = (byte)(high >>> (56 - 8 * i));
+			addr[8 + i] = (byte)(low >>> (56 - 8 * i));
+		}
+		return addr;
+	}
+
+	private static void checkAddress(byte[] addr) {
+		if(addr == null || addr.length != 16)
+			throw new IllegalArgumentException("not an IPv6 address");
+	}
+
+	private static long toLong(byte[] addr, int offset) {
+		long v = 0;
+		for(int i = offset; i < offset + 8; i++)
+			v = (v << 8) | (addr[i] & 0xff);
+		return v;
+	}
+
+	static int hash(long high, long low) {
+		long h = (high * 0x9e3779b97f4a7c15L) ^ low;
+		h *= 0xc4ceb9fe1a85ec53L;
+		int i = (int)(h ^ (h >>> 32));
+		return i ^ (i >>> 16);
+	}
+
+	private void allocate(int capacity) {
+		highs = new long[capacity];
+		lows = new long[capacity];
+		mask = capacity - 1;
+		threshold = (int)(capacity * 0.75);
+	}
+
+	/**
+	 * @return the slot holding the key, or -1 if it is not present
+	 */
+	int slotOf(long high, long low) {
+		if(high == 0 && low == 0)
+			return hasZeroKey ? highs.length : -1;
+		int pos = hash(high, low) & mask;
+		while(highs[pos] != 0 || lows[pos] != 0) {
+			if(highs[pos] == high && lows[pos] == low)
+				return pos;
+			pos = (pos + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the slot holding the key, adding the key if it is not present
+	 */
+	int insert(long high, long low) {
+		if(high == 0 && low == 0) {
+			if(!hasZeroKey) {
+				hasZeroKey = true;
+				size++;
+			}
+			return highs.length;
+		}
+		if(size >= threshold)
+			rehash(highs.length << 1);
+		int pos = hash(high, low) & mask;
+		while(highs[pos] != 0 || lows[pos] != 0) {
+			if(highs[pos] == high && lows[pos] == low)
+				return pos;
+			pos = (pos + 1) & mask;
+		}
+		highs[pos] = high;
+		lows[pos] = low;
+		size++;
+		return pos;
+	}
+
+	private void rehash(int capacity) {
+		long[] oldHighs = highs;
+		long[] oldLows = lows;
+		Object[] oldValues = values;
+		long[] oldCounts = counts;
+		int oldCapacity = oldHighs.length;
+		allocate(capacity);
+		if(oldValues != null) {
+			values = new Object[capacity + 1];
+			values[capacity] = oldValues[oldCapacity];
+		}
+		if(oldCounts != null) {
+			counts = new long[capacity + 1];
+			counts[capacity] = oldCounts[oldCapacity];
+		}
+		for(int i = 0; i < oldCapacity; i++) {
+			long h = oldHighs[i];
+			long l = oldLows[i];
+			if(h == 0 && l == 0)
+				continue;
+			int pos = hash(h, l) & mask;
+			while(highs[pos] != 0 || lows[pos] != 0)
+				pos = (pos + 1) & mask;
+			highs[pos] = h;
+			lows[pos] = l;
+			if(oldValues != null)
+				values[pos] = oldValues[i];
+			if(oldCounts != null)
+				counts[pos] = oldCounts[i];
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public boolean containsKey(long high, long low) {
+		return slotOf(high, low) >= 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(long high, long low) {
+		int pos = slotOf(high, low);
+		if(pos < 0 || values == null)
+			return null;
+		return (V)values[pos];
+	}
+
+	/**
+	 * @return the previous value for the key, or null
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(long high, long low, V value) {
+		int pos = insert(high, low);
+		if(values == null)
+			values = new Object[highs.length + 1];
+		V old = (V)values[pos];
+		values[pos] = value;
+		return old;
+	}
+
+	/**
+	 * Returns the value for the key, creating it with factory if the
+	 * key is not present or has no value yet.
+	 */
+	@SuppressWarnings("unchecked")
+	public V computeIfAbsent(long high, long low, ValueFactory<V> factory) {
+		int pos = slotOf(high, low);
+		if(pos >= 0 && values != null && values[pos] != null)
+			return (V)values[pos];
+		V value = factory.create(high, low);
+		if(value != null)
+			put(high, low, value);
+		return value;
+	}
+
+	/**
+	 * @return the counter for the key, or 0 if it is not present
+	 */
+	public long getCount(long high, long low) {
+		int pos = slotOf(high, low);
+		if(pos < 0 || counts == null)
+			return 0;
+		return counts[pos];
+	}
+
+	/**
+	 * Adds one to the counter for the key, adding the key if necessary.
+	 *
+	 * @return the new value of the counter
+	 */
+	public long increment(long high, long low) {
+		return add(high, low, 1);
+	}
+
+	/**
+	 * Adds delta to the counter for the key, adding the key if necessary.
+	 *
+	 * @return the new value of the counter
+	 */
+	public long add(long high, long low, long delta) {
+		int pos = insert(high, low);
+		if(counts == null)
+			counts = new long[highs.length + 1];
+		return counts[pos] += delta;
+	}
+
+	/**
+	 * Removes the key together with its value and counter.
+	 *
+	 * @return the value that was held for the key, or null
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(long high, long low) {
+		int pos = slotOf(high, low);
+		if(pos < 0)
+			return null;
+		V old = values == null ? null : (V)values[pos];
+		size--;
+		if(high == 0 && low == 0) {
+			hasZeroKey = false;
+			clearSlot(pos);
+		} else {
+			shiftKeys(pos);
+		}
+		return old;
+	}
+
+	/*
+	 * Backward-shift deletion, as in IPv4AddressMap.
+	 */
+	private void shiftKeys(int pos) {
+		int last;
+		long h;
+		long l;
+		for(;;) {
+			pos = ((last = pos) + 1) & mask;
+			for(;;) {
+				h = highs[pos];
+				l = lows[pos];
+				if(h == 0 && l == 0) {
+					highs[last] = 0;
+					lows[last] = 0;
+					clearSlot(last);
+					return;
+				}
+				int slot = hash(h, l) & mask;
+				if(last <= pos ? (last >= slot || slot > pos) : (last >= slot && slot > pos))
+					break;
+				pos = (pos + 1) & mask;
+			}
+			highs[last] = h;
+			lows[last] = l;
+			if(values != null)
+				values[last] = values[pos];
+			if(counts != null)
+				counts[last] = counts[pos];
+		}
+	}
+
+	private void clearSlot(int pos) {
+		if(values != null)
+			values[pos] = null;
+		if(counts != null)
+			counts[pos] = 0;
+	}
+
+	public void clear() {
+		Arrays.fill(highs, 0);
+		Arrays.fill(lows, 0);
+		if(values != null)
+			Arrays.fill(values, null);
+		if(counts != null)
+			Arrays.fill(counts, 0);
+		hasZeroKey = false;
+		size = 0;
+	}
+
+	/**
+	 * Passes every entry to visitor.  The map must not be modified
+	 * by the visitor.
+	 */
+	@SuppressWarnings("unchecked")
+	public void forEach(EntryVisitor<V> visitor) {
+		for(int i = 0; i < highs.length; i++) {
+			if(highs[i] != 0 || lows[i] != 0)
+				visitor.visit(highs[i], lows[i],
+					values == null ? null : (V)values[i],
+					counts == null ? 0 : counts[i]);
+		}
+		if(hasZeroKey) {
+			int pos = highs.length;
+			visitor.visit(0, 0,
+				values == null ? null : (V)values[pos],
+				counts == null ? 0 : counts[pos]);
+		}
+	}
+}
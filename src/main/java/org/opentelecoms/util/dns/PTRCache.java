@@ -0,0 +1,229 @@
+/*
+ *  A bounded cache of reverse DNS (PTR) lookups that respects the
+ *  record TTL and makes concurrent lookups of one address share a
+ *  single query
+ *
+ *  Copyright 2026 agent <agent@local>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opentelecoms.util.dns;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.xbill.DNS.ExtendedResolver;
+import org.xbill.DNS.Lookup;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.PTRRecord;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Resolver;
+import org.xbill.DNS.Type;
+
+/**
+ * Caches the host name found by a PTR lookup for each address.
+ *
+ * The first thread to ask for an address runs the query and any other
+ * thread asking for the same address meanwhile waits for that result
+ * rather than sending its own query.  Answers are kept for the TTL of
+ * the PTR record, limited to maxTtl; a name that does not exist is kept
+ * for negativeTtl; a lookup that fails (for example a timeout) is not
+ * kept at all.  When the cache is full the least recently used address
+ * is dropped.
+ */
+public class PTRCache {
+
+	static Logger logger = Logger.getLogger(PTRCache.class.getName());
+
+	public static final int DEFAULT_MAX_ENTRIES = 10000;
+	public static final long DEFAULT_MAX_TTL = 3600 * 1000L;
+	public static final long DEFAULT_NEGATIVE_TTL = 300 * 1000L;
+
+	/*
+	 * The outcome of one lookup, or the lookup still in progress.
+	 */
+	class CacheEntry implements Callable<String> {
+		final long high;
+		final long low;
+		final FutureTask<String> task;
+		volatile long expires = Long.MAX_VALUE;
+
+		CacheEntry(long high, long low) {
+			this.high = high;
+			this.low = low;
+			task = new FutureTask<String>(this);
+		}
+
+		public String call() throws Exception {
+			return query(this);
+		}
+	}
+
+	static class Key {
+		final long high;
+		final long low;
+
+		Key(long high, long low) {
+			this.high = high;
+			this.low = low;
+		}
+
+		@Override
+		public int hashCode() {
+			return IPv6AddressMap.hash(high, low);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if(!(o instanceof Key))
+				return false;
+			Key k = (Key)o;
+			return k.high == high && k.low == low;
+		}
+	}
+
+	final Map<Key, CacheEntry> entries;
+	final long maxTtl;
+	final long negativeTtl;
+	Resolver resolver;
+
+	public PTRCache() {
+		this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_TTL, DEFAULT_NEGATIVE_TTL);
+	}
+
+	/**
+	 * @param maxEntries the number of addresses to keep
+	 * @param maxTtl the longest time to keep an answer, in milliseconds
+	 * @param negativeTtl the time to keep a missing name, in milliseconds
+	 */
+	public PTRCache(final int maxEntries, long maxTtl, long negativeTtl) {
+		this.maxTtl = maxTtl;
+		this.negativeTtl = negativeTtl;
+		entries = new LinkedHashMap<Key, CacheEntry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 6091470322593846384L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, CacheEntry> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Sets the resolver to use, the default is an ExtendedResolver
+	 * with a 2 second timeout as used by {@link SRVRecordHelper}.
+	 */
+	public synchronized void setResolver(Resolver resolver) {
+		this.resolver = resolver;
+	}
+
+	synchronized Resolver getResolver() throws Exception {
+		if(resolver == null) {
+			resolver = new ExtendedResolver();
+			resolver.setTimeout(2);
+		}
+		return resolver;
+	}
+
+	/**
+	 * @param addr a 4 or 16 byte address in network order
+	 * @return the host name, or null if there is none
+	 */
+	public String lookup(byte[] addr) throws InterruptedException {
+		if(addr.length == 4)
+			return lookup(0, 0xffff00000000L | (IPv4AddressMap.toKey(addr) & 0xffffffffL));
+		return lookup(IPv6AddressMap.highBits(addr), IPv6AddressMap.lowBits(addr));
+	}
+
+	/**
+	 * @param high the high 64 bits of the address, see {@link IPv6AddressMap}
+	 * @param low the low 64 bits, an IPv4-mapped address for IPv4
+	 * @return the host name, or null if there is none or the lookup failed
+	 */
+	public String lookup(long high, long low) throws InterruptedException {
+		Key key = new Key(high, low);
+		CacheEntry entry;
+		boolean owner = false;
+		synchronized(entries) {
+			entry = entries.get(key);
+			if(entry == null || entry.expires <= System.currentTimeMillis()) {
+				entry = new CacheEntry(high, low);
+				entries.put(key, entry);
+				owner = true;
+			}
+		}
+		if(owner)
+			entry.task.run();
+		try {
+			return entry.task.get();
+		} catch (ExecutionException ex) {
+			if(owner) {
+				logger.log(Level.FINE, "PTR lookup failed", ex.getCause());
+				synchronized(entries) {
+					if(entries.get(key) == entry)
+						entries.remove(key);
+				}
+			}
+			return null;
+		}
+	}
+
+	/*
+	 * Runs the query and sets the expiry of the entry.
+	 */
+	String query(CacheEntry entry) throws Exception {
+		char[] buf = new char[PTRName.MAX_LENGTH];
+		int len = PTRName.write(entry.high, entry.low, buf, 0);
+		Name name = Name.fromString(new String(buf, 0, len));
+		Lookup lookup = new Lookup(name, Type.PTR);
+		lookup.setResolver(getResolver());
+		Record[] records = lookup.run();
+		long now = System.currentTimeMillis();
+		switch(lookup.getResult()) {
+		case Lookup.SUCCESSFUL:
+			for(Record record : records) {
+				if(record instanceof PTRRecord) {
+					entry.expires = now + Math.min(record.getTTL() * 1000L, maxTtl);
+					return ((PTRRecord)record).getTarget().toString();
+				}
+			}
+			entry.expires = now + negativeTtl;
+			return null;
+		case Lookup.HOST_NOT_FOUND:
+		case Lookup.TYPE_NOT_FOUND:
+			entry.expires = now + negativeTtl;
+			return null;
+		default:
+			throw new Exception("PTR lookup for " + name + ": " + lookup.getErrorString());
+		}
+	}
+
+	public int size() {
+		synchronized(entries) {
+			return entries.size();
+		}
+	}
+
+	public void clear() {
+		synchronized(entries) {
+			entries.clear();
+		}
+	}
+}
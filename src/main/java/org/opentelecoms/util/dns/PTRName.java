@@ -0,0 +1,106 @@
+/*
+ *  Writes the in-addr.arpa / ip6.arpa name for an address into a
+ *  caller supplied buffer
+ *
+ *  Copyright 2026 agent <agent@local>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opentelecoms.util.dns;
+
+/**
+ * Builds reverse DNS names from the numeric forms produced by
+ * {@link IPAddressUtil}, {@link IPLiteralParser} and {@link HostPort}
+ * without string concatenation.  A buffer of MAX_LENGTH chars is
+ * always large enough and can be reused for every name.
+ */
+public final class PTRName {
+
+	/** The longest name written, an ip6.arpa name with the final dot. */
+	public static final int MAX_LENGTH = 73;
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+	private static final char[] IN_ADDR_ARPA = "in-addr.arpa.".toCharArray();
+	private static final char[] IP6_ARPA = "ip6.arpa.".toCharArray();
+
+	private PTRName() {
+	}
+
+	/**
+	 * Writes the in-addr.arpa name for an IPv4 address.
+	 *
+	 * @return the number of chars written
+	 */
+	public static int writeIPv4(int addr, char[] buf, int offset) {
+		int pos = offset;
+		for(int shift = 0; shift < 32; shift += 8) {
+			int b = (addr >>> shift) & 0xff;
+			if(b >= 100) {
+				buf[pos++] = (char)('0' + b / 100);
+				buf[pos++] = (char)('0' + (b / 10) % 10);
+			} else if(b >= 10) {
+				buf[pos++] = (char)('0' + b / 10);
+			}
+			buf[pos++] = (char)('0' + b % 10);
+			buf[pos++] = '.';
+		}
+		System.arraycopy(IN_ADDR_ARPA, 0, buf, pos, IN_ADDR_ARPA.length);
+		return pos + IN_ADDR_ARPA.length - offset;
+	}
+
+	/**
+	 * Writes the ip6.arpa name for an IPv6 address given as high and
+	 * low 64 bit values.
+	 *
+	 * @return the number of chars written
+	 */
+	public static int writeIPv6(long high, long low, char[] buf, int offset) {
+		int pos = offset;
+		for(int shift = 0; shift < 64; shift += 4) {
+			buf[pos++] = HEX[(int)(low >>> shift) & 0xf];
+			buf[pos++] = '.';
+		}
+		for(int shift = 0; shift < 64; shift += 4) {
+			buf[pos++] = HEX[(int)(high >>> shift) & 0xf];
+			buf[pos++] = '.';
+		}
+		System.arraycopy(IP6_ARPA, 0, buf, pos, IP6_ARPA.length);
+		return pos + IP6_ARPA.length - offset;
+	}
+
+	/**
+	 * Writes the reverse name for an address in the 128 bit layout of
+	 * {@link IPv6AddressMap}.  IPv4-mapped addresses are written as
+	 * in-addr.arpa names.
+	 *
+	 * @return the number of chars written
+	 */
+	public static int write(long high, long low, char[] buf, int offset) {
+		if(IPLiteralParser.isIPv4Mapped(high, low))
+			return writeIPv4((int)low, buf, offset);
+		return writeIPv6(high, low, buf, offset);
+	}
+
+	/**
+	 * Writes the reverse name for a 4 or 16 byte address in network order.
+	 *
+	 * @return the number of chars written
+	 */
+	public static int write(byte[] addr, char[] buf, int offset) {
+		if(addr.length == 4)
+			return writeIPv4(IPv4AddressMap.toKey(addr), buf, offset);
+		return write(IPv6AddressMap.highBits(addr), IPv6AddressMap.lowBits(addr), buf, offset);
+	}
+}
@@ -105,6 +105,18 @@ public class SRVRecordHelper extends Vector<InetSocketAddress> {
 	}
 	
 	public SRVRecordHelper(String service, String protocol, String domain, int defaultPort) {
+		this(service, protocol, domain, defaultPort, null);
+	}
+
+	/**
+	 * Also starts the TLSA lookups for the endpoints in tlsaCache, so
+	 * that a DANE trust manager finds them cached at connection time.
+	 * The lookup for the domain itself runs alongside the SRV and A
+	 * lookups, and those for the SRV targets start as soon as they are
+	 * known; none of them delay the constructor.
+	 */
+	public SRVRecordHelper(String service, String protocol, String domain, int defaultPort,
+			TLSACache tlsaCache) {
 		String mDomain = "_" + service + "._" + protocol + "." + domain;
 		
 		TreeSet<SRVRecord> srvRecords = new TreeSet<SRVRecord>(new SRVRecordComparator());
@@ -137,6 +149,8 @@ public class SRVRecordHelper extends Vector<InetSocketAddress> {
 			RecordHelperThread a_t = new RecordHelperThread(b, domain, Type.A);
 			srv_t.start();
 			a_t.start();
+			if(tlsaCache != null && defaultPort > 0)
+				tlsaCache.prefetch(defaultPort, protocol, domain);
 			
 			// Wait for all lookups to finish
 			try {
@@ -150,6 +164,10 @@ public class SRVRecordHelper extends Vector<InetSocketAddress> {
 			for (Record record : srv_t.getRecords()) {
 				if(record instanceof SRVRecord) {
 					srvRecords.add((SRVRecord)record);
+					if(tlsaCache != null) {
+						SRVRecord srv = (SRVRecord)record;
+						tlsaCache.prefetch(srv.getPort(), protocol, srv.getTarget().toString());
+					}
 				}
 			}
 			for (Record record : a_t.getRecords()) {
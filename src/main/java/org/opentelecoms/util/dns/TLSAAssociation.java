@@ -0,0 +1,101 @@
+/*
+ *  The certificate association data of one DNS TLSA record (RFC 6698)
+ *
+ *  Copyright 2026 agent <agent@local>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opentelecoms.util.dns;
+
+import java.util.Arrays;
+
+/**
+ * One TLSA record: which certificate it constrains (usage), which part
+ * of the certificate is matched (selector), how it is matched
+ * (matchingType) and the data to match.
+ */
+public final class TLSAAssociation {
+
+	/* Certificate usages */
+	public static final int PKIX_TA = 0;
+	public static final int PKIX_EE = 1;
+	public static final int DANE_TA = 2;
+	public static final int DANE_EE = 3;
+
+	/* Selectors */
+	public static final int CERT = 0;
+	public static final int SPKI = 1;
+
+	/* Matching types */
+	public static final int FULL = 0;
+	public static final int SHA256 = 1;
+	public static final int SHA512 = 2;
+
+	final int usage;
+	final int selector;
+	final int matchingType;
+	final byte[] data;
+
+	public TLSAAssociation(int usage, int selector, int matchingType, byte[] data) {
+		this.usage = usage;
+		this.selector = selector;
+		this.matchingType = matchingType;
+		this.data = data.clone();
+	}
+
+	/**
+	 * @param rdata the wire format RDATA of a TLSA record
+	 * @return the association, or null if the RDATA is too short
+	 */
+	static TLSAAssociation fromWire(byte[] rdata) {
+		if(rdata.length < 4)
+			return null;
+		return new TLSAAssociation(rdata[0] & 0xff, rdata[1] & 0xff, rdata[2] & 0xff,
+				Arrays.copyOfRange(rdata, 3, rdata.length));
+	}
+
+	public int getUsage() {
+		return usage;
+	}
+
+	public int getSelector() {
+		return selector;
+	}
+
+	public int getMatchingType() {
+		return matchingType;
+	}
+
+	public byte[] getData() {
+		return data.clone();
+	}
+
+	/**
+	 * @param selected the selected part of the certificate, already
+	 *        hashed with the matching type
+	 */
+	public boolean matches(byte[] selected) {
+		return Arrays.equals(data, selected);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(usage).append(' ').append(selector).append(' ').append(matchingType).append(' ');
+		for(byte b : data)
+			sb.append(String.format("%02x", b & 0xff));
+		return sb.toString();
+	}
+}
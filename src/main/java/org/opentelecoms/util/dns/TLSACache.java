@@ -0,0 +1,281 @@
+/*
+ *  Caches the TLSA records (RFC 6698) for each service endpoint and
+ *  lets them be fetched ahead of the connection
+ *
+ *  Copyright 2026 agent <agent@local>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opentelecoms.util.dns;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.ExtendedFlags;
+import org.xbill.DNS.ExtendedResolver;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.OPTRecord;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Resolver;
+import org.xbill.DNS.Section;
+
+/**
+ * Caches the TLSA records found at _port._protocol.host for each
+ * endpoint, for the TTL of the records.  {@link #prefetch(int, String, String)}
+ * starts a lookup in the background, so that {@link SRVRecordHelper}
+ * can fetch the records while it resolves the SRV and A records and the
+ * trust manager finds them in the cache at handshake time.  As in
+ * {@link PTRCache}, concurrent lookups of the same endpoint share one
+ * query and failed lookups are not kept.
+ *
+ * dnsjava does not validate DNSSEC, so the resolver must be a
+ * validating resolver, and the path to it must be trusted, for example
+ * a resolver on the local host.  Only answers it marks as authenticated
+ * (the AD bit) are used; any other answer counts as no records, so the
+ * endpoint is not authenticated with DANE.
+ */
+public class TLSACache {
+
+	static Logger logger = Logger.getLogger(TLSACache.class.getName());
+
+	public static final int TYPE_TLSA = 52;
+
+	public static final int DEFAULT_MAX_ENTRIES = 1000;
+	public static final long DEFAULT_MAX_TTL = 3600 * 1000L;
+	public static final long DEFAULT_NEGATIVE_TTL = 300 * 1000L;
+
+	/* The UDP payload size advertised with EDNS, enough for DNSSEC answers */
+	static final int EDNS_PAYLOAD_SIZE = 4096;
+
+	private static final ThreadFactory daemonThreads = new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "TLSACache");
+			t.setDaemon(true);
+			return t;
+		}
+	};
+
+	class CacheEntry implements Callable<List<TLSAAssociation>> {
+		final String name;
+		final FutureTask<List<TLSAAssociation>> task;
+		volatile long expires = Long.MAX_VALUE;
+
+		CacheEntry(String name) {
+			this.name = name;
+			task = new FutureTask<List<TLSAAssociation>>(this);
+		}
+
+		public List<TLSAAssociation> call() throws Exception {
+			return query(this);
+		}
+	}
+
+	final Map<String, CacheEntry> entries;
+	final long maxTtl;
+	final long negativeTtl;
+	final ExecutorService executor = Executors.newCachedThreadPool(daemonThreads);
+	Resolver resolver;
+
+	public TLSACache() {
+		this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_TTL, DEFAULT_NEGATIVE_TTL);
+	}
+
+	/**
+	 * @param maxEntries the number of endpoints to keep
+	 * @param maxTtl the longest time to keep an answer, in milliseconds
+	 * @param negativeTtl the time to keep an endpoint without TLSA
+	 *        records, in milliseconds
+	 */
+	public TLSACache(final int maxEntries, long maxTtl, long negativeTtl) {
+		this.maxTtl = maxTtl;
+		this.negativeTtl = negativeTtl;
+		entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+			private static final long serialVersionUID = -1510950343924617520L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Sets the resolver to use, the default is an ExtendedResolver
+	 * with a 2 second timeout as used by {@link SRVRecordHelper}.
+	 */
+	public synchronized void setResolver(Resolver resolver) {
+		this.resolver = resolver;
+	}
+
+	synchronized Resolver getResolver() throws Exception {
+		if(resolver == null) {
+			resolver = new ExtendedResolver();
+			resolver.setTimeout(2);
+		}
+		return resolver;
+	}
+
+	/**
+	 * @return the owner name of the TLSA records for an endpoint, for
+	 *         example _5061._tcp.sip.example.org.
+	 */
+	public static String name(int port, String protocol, String host) {
+		StringBuilder sb = new StringBuilder();
+		sb.append('_').append(port).append("._").append(protocol.toLowerCase(Locale.ENGLISH))
+			.append('.').append(host.toLowerCase(Locale.ENGLISH));
+		if(sb.charAt(sb.length() - 1) != '.')
+			sb.append('.');
+		return sb.toString();
+	}
+
+	/**
+	 * Starts looking up the records for an endpoint, unless they are
+	 * cached or already being looked up, and returns immediately.
+	 */
+	public void prefetch(int port, String protocol, String host) {
+		String name = name(port, protocol, host);
+		synchronized(entries) {
+			CacheEntry entry = entries.get(name);
+			if(entry != null && entry.expires > System.currentTimeMillis())
+				return;
+			entry = new CacheEntry(name);
+			entries.put(name, entry);
+			final CacheEntry _entry = entry;
+			executor.execute(new Runnable() {
+				public void run() {
+					finish(_entry);
+				}
+			});
+		}
+	}
+
+	/**
+	 * @return the TLSA records of the endpoint, an empty list if it has
+	 *         none or the answer is not authenticated, or null if the
+	 *         lookup failed
+	 */
+	public List<TLSAAssociation> lookup(int port, String protocol, String host)
+			throws InterruptedException {
+		String name = name(port, protocol, host);
+		CacheEntry entry;
+		boolean owner = false;
+		synchronized(entries) {
+			entry = entries.get(name);
+			if(entry == null || entry.expires <= System.currentTimeMillis()) {
+				entry = new CacheEntry(name);
+				entries.put(name, entry);
+				owner = true;
+			}
+		}
+		if(owner)
+			return finish(entry);
+		try {
+			return entry.task.get();
+		} catch (ExecutionException ex) {
+			return null;
+		}
+	}
+
+	/*
+	 * Runs the lookup of an entry this thread put in the cache.
+	 */
+	private List<TLSAAssociation> finish(CacheEntry entry) {
+		entry.task.run();
+		try {
+			return entry.task.get();
+		} catch (InterruptedException ex) {
+			// the task has already run, so get() doesn't wait
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException ex) {
+			logger.log(Level.FINE, "TLSA lookup failed", ex.getCause());
+			synchronized(entries) {
+				if(entries.get(entry.name) == entry)
+					entries.remove(entry.name);
+			}
+			return null;
+		}
+	}
+
+	/*
+	 * Runs the query and sets the expiry of the entry.  The query sets
+	 * the DO and AD bits and an answer is only used if the resolver set
+	 * AD, meaning it validated the answer with DNSSEC; an unauthenticated
+	 * answer counts as no records.  dnsjava 2.1 has no TLSA record class,
+	 * so the records come back as unknown records and are decoded from
+	 * their RDATA.
+	 */
+	List<TLSAAssociation> query(CacheEntry entry) throws Exception {
+		Record question = Record.newRecord(Name.fromString(entry.name), TYPE_TLSA, DClass.IN);
+		Message query = Message.newQuery(question);
+		query.getHeader().setFlag(Flags.AD);
+		query.addRecord(new OPTRecord(EDNS_PAYLOAD_SIZE, 0, 0, ExtendedFlags.DO), Section.ADDITIONAL);
+		Message response = getResolver().send(query);
+		long now = System.currentTimeMillis();
+		int rcode = response.getRcode();
+		if(rcode == Rcode.NXDOMAIN) {
+			entry.expires = now + negativeTtl;
+			return Collections.emptyList();
+		}
+		if(rcode != Rcode.NOERROR)
+			throw new Exception("TLSA lookup for " + entry.name + ": " + Rcode.string(rcode));
+		if(!response.getHeader().getFlag(Flags.AD)) {
+			logger.fine("TLSA answer for " + entry.name + " is not authenticated, ignoring it");
+			entry.expires = now + negativeTtl;
+			return Collections.emptyList();
+		}
+		List<TLSAAssociation> result = new ArrayList<TLSAAssociation>();
+		long ttl = maxTtl;
+		for(Record record : response.getSectionArray(Section.ANSWER)) {
+			if(record.getType() != TYPE_TLSA)
+				continue;
+			TLSAAssociation a = TLSAAssociation.fromWire(record.rdataToWireCanonical());
+			if(a != null) {
+				result.add(a);
+				ttl = Math.min(ttl, record.getTTL() * 1000L);
+			}
+		}
+		entry.expires = now + (result.isEmpty() ? negativeTtl : ttl);
+		return Collections.unmodifiableList(result);
+	}
+
+	public int size() {
+		synchronized(entries) {
+			return entries.size();
+		}
+	}
+
+	public void clear() {
+		synchronized(entries) {
+			entries.clear();
+		}
+	}
+}
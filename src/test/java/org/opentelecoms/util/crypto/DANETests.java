@@ -0,0 +1,160 @@
+
+package org.opentelecoms.util.crypto;
+
+import static org.junit.Assert.*;
+
+import java.security.MessageDigest;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.net.ssl.SSLException;
+
+import org.junit.Test;
+import org.opentelecoms.util.dns.TLSAAssociation;
+import org.opentelecoms.util.dns.TLSACache;
+
+public class DANETests {
+
+	/*
+	 * Answers lookups from a map instead of DNS: a host without an entry
+	 * has no records.
+	 */
+	static class StubCache extends TLSACache {
+		final Map<String, List<TLSAAssociation>> records = new HashMap<String, List<TLSAAssociation>>();
+		final List<String> lookups = new ArrayList<String>();
+
+		@Override
+		public List<TLSAAssociation> lookup(int port, String protocol, String host) {
+			String name = name(port, protocol, host);
+			lookups.add(name);
+			if(!records.containsKey(name))
+				return new ArrayList<TLSAAssociation>();
+			return records.get(name);
+		}
+
+		void put(String host, TLSAAssociation... r) {
+			records.put(name(443, "tcp", host), r == null ? null : Arrays.asList(r));
+		}
+	}
+
+	static TLSAAssociation tlsa(int usage, int selector, int matchingType, X509Certificate cert)
+			throws Exception {
+		byte[] data = selector == TLSAAssociation.CERT ?
+				cert.getEncoded() : cert.getPublicKey().getEncoded();
+		if(matchingType == TLSAAssociation.SHA256)
+			data = MessageDigest.getInstance("SHA-256").digest(data);
+		else if(matchingType == TLSAAssociation.SHA512)
+			data = MessageDigest.getInstance("SHA-512").digest(data);
+		return new TLSAAssociation(usage, selector, matchingType, data);
+	}
+
+	private static void rejected(DANETrustManager tm, String host) throws Exception {
+		try {
+			Fixtures.handshake(tm, host, 443);
+			fail("the chain was accepted for " + host);
+		} catch (SSLException ex) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testMatches() throws Exception {
+		X509Certificate host = Fixtures.cert("host");
+		X509Certificate other = Fixtures.cert("other");
+		for(int selector = TLSAAssociation.CERT; selector <= TLSAAssociation.SPKI; selector++) {
+			for(int type = TLSAAssociation.FULL; type <= TLSAAssociation.SHA512; type++) {
+				TLSAAssociation r = tlsa(TLSAAssociation.DANE_EE, selector, type, host);
+				assertTrue(DANETrustManager.matches(r, host));
+				assertFalse(DANETrustManager.matches(r, other));
+			}
+		}
+	}
+
+	@Test
+	public void testDANEEE() throws Exception {
+		StubCache cache = new StubCache();
+		// the fallback only trusts a leaf, so DANE alone accepts the chain
+		DANETrustManager tm = new DANETrustManager(cache, Fixtures.appending("other"));
+		X509Certificate host = Fixtures.cert("host");
+		cache.put("host.example.org", tlsa(TLSAAssociation.DANE_EE, TLSAAssociation.SPKI,
+				TLSAAssociation.SHA256, host));
+		Fixtures.handshake(tm, "host.example.org", 443);
+		assertEquals("_443._tcp.host.example.org.", cache.lookups.get(0));
+
+		// DANE-EE binds the key to the endpoint whatever the names in it
+		cache.put("alias.example.org", tlsa(TLSAAssociation.DANE_EE, TLSAAssociation.CERT,
+				TLSAAssociation.FULL, host));
+		Fixtures.handshake(tm, "alias.example.org", 443);
+
+		cache.put("host.example.org", tlsa(TLSAAssociation.DANE_EE, TLSAAssociation.CERT,
+				TLSAAssociation.SHA512, Fixtures.cert("other")));
+		rejected(tm, "host.example.org");
+	}
+
+	@Test
+	public void testDANETA() throws Exception {
+		StubCache cache = new StubCache();
+		DANETrustManager tm = new DANETrustManager(cache, Fixtures.appending("other"));
+		TLSAAssociation ta = tlsa(TLSAAssociation.DANE_TA, TLSAAssociation.CERT,
+				TLSAAssociation.SHA256, Fixtures.cert("intermediate"));
+		cache.put("host.example.org", ta);
+		Fixtures.handshake(tm, "host.example.org", 443);
+		// the names in the leaf must still match
+		cache.put("other.example.org", ta);
+		rejected(tm, "other.example.org");
+		// the root isn't in the chain the server sends
+		cache.put("host.example.org", tlsa(TLSAAssociation.DANE_TA, TLSAAssociation.SPKI,
+				TLSAAssociation.SHA256, Fixtures.cert("ca")));
+		rejected(tm, "host.example.org");
+	}
+
+	@Test
+	public void testPKIX() throws Exception {
+		StubCache cache = new StubCache();
+		DANETrustManager trusting = new DANETrustManager(cache, Fixtures.appending("ca"));
+		DANETrustManager untrusting = new DANETrustManager(cache, Fixtures.appending("other"));
+		cache.put("host.example.org", tlsa(TLSAAssociation.PKIX_TA, TLSAAssociation.SPKI,
+				TLSAAssociation.SHA256, Fixtures.cert("intermediate")));
+		Fixtures.handshake(trusting, "host.example.org", 443);
+		rejected(untrusting, "host.example.org");
+
+		cache.put("host.example.org", tlsa(TLSAAssociation.PKIX_EE, TLSAAssociation.CERT,
+				TLSAAssociation.SHA256, Fixtures.cert("host")));
+		Fixtures.handshake(trusting, "host.example.org", 443);
+		rejected(untrusting, "host.example.org");
+
+		// the fallback trusts the chain, but the records don't match it
+		cache.put("host.example.org", tlsa(TLSAAssociation.PKIX_EE, TLSAAssociation.CERT,
+				TLSAAssociation.SHA256, Fixtures.cert("other")));
+		rejected(trusting, "host.example.org");
+	}
+
+	@Test
+	public void testFallback() throws Exception {
+		StubCache cache = new StubCache();
+		DANETrustManager tm = new DANETrustManager(cache, Fixtures.appending("ca"));
+		// no records
+		Fixtures.handshake(tm, "host.example.org", 443);
+		// the fallback is a plain X509TrustManager, so the names are checked here
+		rejected(tm, "other.example.org");
+		// the lookup failed
+		cache.put("host.example.org", (TLSAAssociation[])null);
+		Fixtures.handshake(tm, "host.example.org", 443);
+		// only records with unknown parameters
+		cache.put("host.example.org", new TLSAAssociation(4, 0, 0, new byte[] { 1 }));
+		Fixtures.handshake(tm, "host.example.org", 443);
+	}
+
+	@Test
+	public void testAddressLiteral() throws Exception {
+		StubCache cache = new StubCache();
+		DANETrustManager tm = new DANETrustManager(cache, Fixtures.appending("ca"));
+		Fixtures.handshake(tm, "192.0.2.1", 443);
+		rejected(tm, "192.0.2.2");
+		assertEquals(0, cache.lookups.size());
+	}
+}
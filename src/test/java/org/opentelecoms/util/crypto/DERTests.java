@@ -0,0 +1,116 @@
+
+package org.opentelecoms.util.crypto;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class DERTests {
+
+	private static byte[] bytes(int... b) {
+		byte[] out = new byte[b.length];
+		for(int i = 0; i < b.length; i++)
+			out[i] = (byte)b[i];
+		return out;
+	}
+
+	private static void malformed(byte[] der) {
+		try {
+			DERReader r = new DERReader(der);
+			while(r.next())
+				;
+			fail("malformed DER was accepted");
+		} catch (IOException ex) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testReader() throws Exception {
+		// SEQUENCE { INTEGER 5, [0] { OCTET STRING 0102 } }
+		byte[] der = bytes(0x30, 0x09, 0x02, 0x01, 0x05, 0xa0, 0x04, 0x04, 0x02, 0x01, 0x02);
+		DERReader r = new DERReader(der);
+		r.expect(DERReader.SEQUENCE);
+		assertFalse(r.next());
+		DERReader seq = r.enter();
+		assertTrue(seq.next());
+		assertEquals(DERReader.INTEGER, seq.tag);
+		assertEquals(1, seq.length);
+		assertEquals((byte)5, seq.content()[0]);
+		seq.expect(DERReader.CONTEXT_0);
+		DERReader tagged = seq.enter();
+		tagged.expect(DERReader.OCTET_STRING);
+		assertEquals(ByteBuffer.wrap(bytes(1, 2)), ByteBuffer.wrap(tagged.content()));
+		assertFalse(tagged.next());
+		assertFalse(seq.next());
+		try {
+			new DERReader(der).expect(DERReader.OCTET_STRING);
+			fail("the wrong tag was accepted");
+		} catch (IOException ex) {
+			// expected
+		}
+
+		// long form lengths
+		byte[] octets = new byte[304];
+		System.arraycopy(bytes(0x04, 0x82, 0x01, 0x2c), 0, octets, 0, 4);
+		r = new DERReader(octets);
+		r.expect(DERReader.OCTET_STRING);
+		assertEquals(300, r.length);
+		assertEquals(4, r.start);
+
+		malformed(bytes(0x04));
+		malformed(bytes(0x04, 0x03, 0x01, 0x02));
+		malformed(bytes(0x04, 0x82, 0x01));
+		malformed(bytes(0x04, 0x80, 0x00));
+		malformed(bytes(0x04, 0x84, 0x00, 0x00, 0x00, 0x01, 0x00));
+		malformed(bytes(0x1f, 0x01, 0x00));
+	}
+
+	@Test
+	public void testExtension() throws Exception {
+		// Subject Key Identifier of intermediate
+		byte[] expected = bytes(0xe6, 0xbc, 0x17, 0x1e, 0xee, 0xfb, 0x91, 0xce, 0xc6, 0x51,
+				0x7a, 0x73, 0x25, 0xfb, 0x16, 0xb3, 0x01, 0xd0, 0xb2, 0xc1);
+		DERReader r = DERReader.extension(Fixtures.cert("intermediate").getExtensionValue("2.5.29.14"));
+		r.expect(DERReader.OCTET_STRING);
+		assertEquals(ByteBuffer.wrap(expected), ByteBuffer.wrap(r.content()));
+		assertEquals(ByteBuffer.wrap(expected), IssuerIndex.subjectKeyId(Fixtures.cert("intermediate")));
+		assertEquals(ByteBuffer.wrap(expected), IssuerIndex.authorityKeyId(Fixtures.cert("host")));
+		// the root has no authority key identifier
+		assertNull(IssuerIndex.authorityKeyId(Fixtures.cert("ca")));
+	}
+
+	@Test
+	public void testWriter() throws Exception {
+		int[] lengths = { 0, 1, 0x7f, 0x80, 0xff, 0x100, 0xffff, 0x10000 };
+		for(int len : lengths) {
+			byte[] content = new byte[len];
+			for(int i = 0; i < len; i++)
+				content[i] = (byte)i;
+			byte[] der = DERWriter.encode(DERReader.OCTET_STRING, content);
+			DERReader r = new DERReader(der);
+			r.expect(DERReader.OCTET_STRING);
+			assertEquals(len, r.length);
+			assertEquals(der.length, r.start + r.length);
+			assertEquals(ByteBuffer.wrap(content), ByteBuffer.wrap(r.content()));
+			assertFalse(r.next());
+		}
+		// the minimal length form
+		assertEquals(2, DERWriter.encode(DERReader.SEQUENCE, new byte[0x7f], new byte[0]).length - 0x7f);
+		assertEquals(3, DERWriter.encode(DERReader.SEQUENCE, new byte[0x80]).length - 0x80);
+
+		// the contents are concatenated
+		byte[] seq = DERWriter.encode(DERReader.SEQUENCE,
+				DERWriter.encode(DERReader.INTEGER, bytes(7)),
+				DERWriter.encode(DERReader.OCTET_STRING, bytes(1, 2)));
+		assertEquals(ByteBuffer.wrap(bytes(0x30, 0x07, 0x02, 0x01, 0x07, 0x04, 0x02, 0x01, 0x02)),
+				ByteBuffer.wrap(seq));
+
+		// the same OCSP request as openssl ocsp -no_nonce
+		byte[] request = HttpRevocationFetcher.ocspRequest(Fixtures.cert("host"), Fixtures.cert("intermediate"));
+		assertEquals(ByteBuffer.wrap(RevocationTests.response("host-request")), ByteBuffer.wrap(request));
+	}
+}
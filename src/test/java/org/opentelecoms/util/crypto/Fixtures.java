@@ -0,0 +1,159 @@
+
+package org.opentelecoms.util.crypto;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+/*
+ * The certificates under src/test/resources: ca is a root, intermediate
+ * is signed by ca, and host (host.example.org and 192.0.2.1) and other
+ * (other.example.org) are signed by intermediate.  host.p12 holds the
+ * key and chain of host, with the password changeit.
+ */
+class Fixtures {
+
+	static X509Certificate cert(String name) throws Exception {
+		InputStream in = Fixtures.class.getResourceAsStream(name + ".pem");
+		try {
+			return (X509Certificate)CertificateFactory.getInstance("X.509").generateCertificate(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	static X509Certificate[] chain(String... names) throws Exception {
+		X509Certificate[] chain = new X509Certificate[names.length];
+		for(int i = 0; i < names.length; i++)
+			chain[i] = cert(names[i]);
+		return chain;
+	}
+
+	static byte[] sha256(byte[] b) throws Exception {
+		return MessageDigest.getInstance("SHA-256").digest(b);
+	}
+
+	static KeyStore trustStore(String... names) throws Exception {
+		KeyStore ks = KeyStore.getInstance("JKS");
+		ks.load(null, null);
+		for(String name : names)
+			ks.setCertificateEntry(name, cert(name));
+		return ks;
+	}
+
+	/*
+	 * An AppendingTrustManager trusting the named certificates.
+	 */
+	static AppendingTrustManager appending(String... names) throws Exception {
+		KeyStore ks = trustStore(names);
+		return new AppendingTrustManager(AppendingTrustManager.localTrustManager(ks), ks);
+	}
+
+	/*
+	 * A server context presenting host.p12.
+	 */
+	static SSLContext serverContext() throws Exception {
+		KeyStore ks = KeyStore.getInstance("PKCS12");
+		InputStream in = Fixtures.class.getResourceAsStream("host.p12");
+		try {
+			ks.load(in, "changeit".toCharArray());
+		} finally {
+			in.close();
+		}
+		KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+		kmf.init(ks, "changeit".toCharArray());
+		SSLContext ctx = SSLContext.getInstance("TLS");
+		ctx.init(kmf.getKeyManagers(), null, null);
+		return ctx;
+	}
+
+	/*
+	 * A client engine connecting to host with HTTPS endpoint
+	 * identification, or without either if host is null.
+	 */
+	static SSLEngine clientEngine(SSLContext ctx, String host, int port) {
+		SSLEngine client = host == null ? ctx.createSSLEngine() : ctx.createSSLEngine(host, port);
+		client.setUseClientMode(true);
+		if(host != null) {
+			SSLParameters params = client.getSSLParameters();
+			params.setEndpointIdentificationAlgorithm("HTTPS");
+			client.setSSLParameters(params);
+		}
+		return client;
+	}
+
+	/*
+	 * Runs a handshake between a client checking the server with tm and a
+	 * server presenting host.p12.
+	 */
+	static void handshake(X509TrustManager tm, String host, int port) throws Exception {
+		SSLContext clientContext = SSLContext.getInstance("TLS");
+		clientContext.init(null, new TrustManager[] { tm }, null);
+		SSLEngine server = serverContext().createSSLEngine();
+		server.setUseClientMode(false);
+		handshake(clientEngine(clientContext, host, port), server);
+	}
+
+	static void handshake(SSLEngine client, SSLEngine server) throws SSLException {
+		ByteBuffer toServer = ByteBuffer.allocate(client.getSession().getPacketBufferSize());
+		ByteBuffer toClient = ByteBuffer.allocate(server.getSession().getPacketBufferSize());
+		ByteBuffer app = ByteBuffer.allocate(client.getSession().getApplicationBufferSize());
+		client.beginHandshake();
+		server.beginHandshake();
+		for(int i = 0; i < 1000; i++) {
+			if(done(client) && done(server)) {
+				// deliver post handshake messages, such as TLS 1.3 session tickets
+				for(int j = 0; j < 4; j++) {
+					server.wrap(ByteBuffer.allocate(0), toClient);
+					step(client, toClient, toServer, app);
+					step(server, toServer, toClient, app);
+				}
+				return;
+			}
+			step(client, toClient, toServer, app);
+			step(server, toServer, toClient, app);
+		}
+		throw new SSLException("handshake did not finish");
+	}
+
+	private static boolean done(SSLEngine e) {
+		HandshakeStatus hs = e.getHandshakeStatus();
+		return hs == HandshakeStatus.NOT_HANDSHAKING || hs == HandshakeStatus.FINISHED;
+	}
+
+	private static void step(SSLEngine e, ByteBuffer in, ByteBuffer out, ByteBuffer app)
+			throws SSLException {
+		switch(e.getHandshakeStatus()) {
+		case NEED_TASK:
+			Runnable task;
+			while((task = e.getDelegatedTask()) != null)
+				task.run();
+			break;
+		case NEED_WRAP:
+			e.wrap(ByteBuffer.allocate(0), out);
+			break;
+		case NOT_HANDSHAKING:
+		case FINISHED:
+			if(in.position() == 0)
+				break;
+			// post handshake messages
+		default:
+			in.flip();
+			app.clear();
+			e.unwrap(in, app);
+			in.compact();
+		}
+	}
+}
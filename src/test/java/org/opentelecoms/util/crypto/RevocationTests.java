@@ -0,0 +1,243 @@
+
+package org.opentelecoms.util.crypto;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class RevocationTests {
+
+	/*
+	 * Answers OCSP requests with the fixture responses and has no CRLs.
+	 */
+	static class StubFetcher implements RevocationFetcher {
+		final Map<X509Certificate, byte[]> responses = new HashMap<X509Certificate, byte[]>();
+		int fetches;
+
+		public synchronized byte[] fetchOCSPResponse(X509Certificate cert, X509Certificate issuer) {
+			fetches++;
+			return responses.get(cert);
+		}
+
+		public byte[] fetchCRL(X509Certificate cert, X509Certificate issuer) {
+			return null;
+		}
+
+		synchronized int fetches() {
+			return fetches;
+		}
+	}
+
+	static byte[] response(String name) throws Exception {
+		InputStream in = RevocationTests.class.getResourceAsStream(name + ".der");
+		try {
+			byte[] b = new byte[in.available()];
+			int off = 0;
+			int n;
+			while(off < b.length && (n = in.read(b, off, b.length - off)) > 0)
+				off += n;
+			return b;
+		} finally {
+			in.close();
+		}
+	}
+
+	/*
+	 * Good responses for host and intermediate, revoked for other.
+	 */
+	static StubFetcher fetcher() throws Exception {
+		StubFetcher fetcher = new StubFetcher();
+		fetcher.responses.put(Fixtures.cert("host"), response("host-good"));
+		fetcher.responses.put(Fixtures.cert("intermediate"), response("intermediate-good"));
+		fetcher.responses.put(Fixtures.cert("other"), response("other-revoked"));
+		return fetcher;
+	}
+
+	private static void waitForFetches(StubFetcher fetcher, RevocationCache cache, int n)
+			throws InterruptedException {
+		for(int i = 0; i < 500; i++) {
+			synchronized(cache) {
+				if(fetcher.fetches() >= n && cache.pending.isEmpty())
+					return;
+			}
+			Thread.sleep(10);
+		}
+		fail("the background fetch did not finish");
+	}
+
+	private static void rejected(RevocationCheckingTrustManager tm, X509Certificate[] chain,
+			String reason) {
+		try {
+			tm.checkServerTrusted(chain, "ECDHE_ECDSA");
+			fail("the chain was accepted");
+		} catch (CertificateException ce) {
+			assertTrue(ce.getMessage(), ce.getMessage().startsWith(reason));
+		}
+	}
+
+	@Test
+	public void testFetch() throws Exception {
+		StubFetcher fetcher = fetcher();
+		RevocationCache cache = new RevocationCache(fetcher, null);
+		X509Certificate intermediate = Fixtures.cert("intermediate");
+		assertEquals(RevocationCache.GOOD, cache.fetch(Fixtures.cert("host"), intermediate));
+		assertEquals(RevocationCache.REVOKED, cache.fetch(Fixtures.cert("other"), intermediate));
+		assertEquals(2, cache.size());
+		// cached
+		assertEquals(RevocationCache.GOOD, cache.fetch(Fixtures.cert("host"), intermediate));
+		assertEquals(2, fetcher.fetches());
+
+		fetcher.responses.put(Fixtures.cert("host"), response("host-unknown"));
+		cache.ocsp.clear();
+		assertEquals(RevocationCache.UNKNOWN, cache.fetch(Fixtures.cert("host"), intermediate));
+		// a response signed by someone else
+		fetcher.responses.put(Fixtures.cert("host"), response("intermediate-good"));
+		assertEquals(RevocationCache.UNKNOWN, cache.fetch(Fixtures.cert("host"), intermediate));
+		cache.close();
+	}
+
+	@Test
+	public void testNextUpdate() throws Exception {
+		// the fixtures are valid for 100 years
+		long year = 365 * 24 * 3600 * 1000L;
+		assertTrue(RevocationCache.nextUpdate(response("host-good")) > System.currentTimeMillis() + 50 * year);
+	}
+
+	@Test
+	public void testSoftFail() throws Exception {
+		StubFetcher fetcher = fetcher();
+		RevocationCache cache = new RevocationCache(fetcher, null);
+		RevocationCheckingTrustManager tm = new RevocationCheckingTrustManager(Fixtures.appending("ca"), cache);
+		X509Certificate[] good = Fixtures.chain("host", "intermediate");
+		X509Certificate[] revoked = Fixtures.chain("other", "intermediate");
+		// not cached yet, so accepted while the status is fetched
+		tm.checkServerTrusted(revoked, "ECDHE_ECDSA");
+		tm.checkServerTrusted(good, "ECDHE_ECDSA");
+		waitForFetches(fetcher, cache, 3);
+		tm.checkServerTrusted(good, "ECDHE_ECDSA");
+		rejected(tm, revoked, "Certificate revoked");
+
+		// UNKNOWN is accepted
+		fetcher.responses.put(Fixtures.cert("host"), response("host-unknown"));
+		cache.ocsp.clear();
+		tm.checkServerTrusted(good, "ECDHE_ECDSA");
+		// so is a certificate whose issuer can't be found
+		tm.checkRevocation(Fixtures.chain("host"), null);
+		cache.close();
+	}
+
+	@Test
+	public void testHardFail() throws Exception {
+		StubFetcher fetcher = fetcher();
+		RevocationCache cache = new RevocationCache(fetcher, null);
+		RevocationCheckingTrustManager tm = new RevocationCheckingTrustManager(Fixtures.appending("ca"), cache);
+		tm.setSoftFail(false);
+		tm.checkServerTrusted(Fixtures.chain("host", "intermediate"), "ECDHE_ECDSA");
+		rejected(tm, Fixtures.chain("other", "intermediate"), "Certificate revoked");
+		// the root is self-signed and not checked
+		tm.checkRevocation(Fixtures.chain("host", "intermediate", "ca"), null);
+
+		fetcher.responses.put(Fixtures.cert("host"), response("host-unknown"));
+		cache.ocsp.clear();
+		rejected(tm, Fixtures.chain("host", "intermediate"), "Revocation status unknown");
+		// the issuer of host isn't in the chain or the trust store
+		fetcher.responses.put(Fixtures.cert("host"), response("host-good"));
+		try {
+			tm.checkRevocation(Fixtures.chain("host"), null);
+			fail("a certificate without an issuer was accepted");
+		} catch (CertificateException ce) {
+			assertTrue(ce.getMessage().startsWith("Revocation status unknown"));
+		}
+		cache.close();
+	}
+
+	@Test
+	public void testStaple() throws Exception {
+		StubFetcher fetcher = new StubFetcher();
+		RevocationCache cache = new RevocationCache(fetcher, null);
+		X509Certificate host = Fixtures.cert("host");
+		X509Certificate other = Fixtures.cert("other");
+		X509Certificate intermediate = Fixtures.cert("intermediate");
+		assertEquals(RevocationCache.GOOD, cache.staple(host, intermediate, response("host-good")));
+		assertEquals(RevocationCache.REVOKED, cache.staple(other, intermediate, response("other-revoked")));
+		assertEquals(RevocationCache.UNKNOWN, cache.staple(host, intermediate, response("host-unknown")));
+		// a staple for another certificate
+		assertEquals(RevocationCache.UNKNOWN, cache.staple(host, intermediate, response("other-revoked")));
+		assertEquals(RevocationCache.UNKNOWN, cache.staple(host, intermediate, new byte[] { 0x30, 0 }));
+		// the stapled responses are cached
+		assertEquals(RevocationCache.GOOD, cache.status(host, intermediate));
+		assertEquals(RevocationCache.REVOKED, cache.status(other, intermediate));
+		assertEquals(0, fetcher.fetches());
+		cache.close();
+	}
+
+	@Test
+	public void testExpiry() throws Exception {
+		StubFetcher fetcher = fetcher();
+		RevocationCache cache = new RevocationCache(fetcher, null);
+		X509Certificate host = Fixtures.cert("host");
+		X509Certificate intermediate = Fixtures.cert("intermediate");
+		assertEquals(RevocationCache.GOOD, cache.fetch(host, intermediate));
+		RevocationCache.Entry e = cache.ocsp.values().iterator().next();
+		long now = System.currentTimeMillis();
+		RevocationCache.Entry expired = new RevocationCache.Entry(host, intermediate, e.encoded,
+				null, false, now - 2000, now - 1000);
+		synchronized(cache) {
+			cache.ocsp.put(TrustVerdictCache.fingerprint(host), expired);
+		}
+		assertEquals(RevocationCache.UNKNOWN, cache.status(host, intermediate));
+		waitForFetches(fetcher, cache, 2);
+		assertEquals(RevocationCache.GOOD, cache.status(host, intermediate));
+		assertEquals(2, fetcher.fetches());
+		cache.close();
+	}
+
+	@Test
+	public void testPersistence() throws Exception {
+		File dir = File.createTempFile("revocation", "");
+		dir.delete();
+		X509Certificate host = Fixtures.cert("host");
+		X509Certificate other = Fixtures.cert("other");
+		X509Certificate intermediate = Fixtures.cert("intermediate");
+		try {
+			RevocationCache cache = new RevocationCache(fetcher(), dir);
+			assertEquals(RevocationCache.GOOD, cache.fetch(host, intermediate));
+			cache.close();
+			String[] names = dir.list();
+			assertEquals(1, names.length);
+			// an unusable file for other
+			File bad = new File(dir, "ocsp-" + hex(Fixtures.sha256(other.getEncoded())) + ".der");
+			FileOutputStream out = new FileOutputStream(bad);
+			out.write(response("host-good"));
+			out.close();
+
+			StubFetcher fetcher = new StubFetcher();
+			cache = new RevocationCache(fetcher, dir);
+			assertEquals(2, cache.persisted.size());
+			assertEquals(RevocationCache.GOOD, cache.status(host, intermediate));
+			assertEquals(RevocationCache.UNKNOWN, cache.status(other, intermediate));
+			// each file is only read once
+			assertEquals(0, cache.persisted.size());
+			cache.close();
+		} finally {
+			for(File f : dir.listFiles())
+				f.delete();
+			dir.delete();
+		}
+	}
+
+	private static String hex(byte[] b) {
+		StringBuilder sb = new StringBuilder();
+		for(byte x : b)
+			sb.append(String.format("%02x", x & 0xff));
+		return sb.toString();
+	}
+}
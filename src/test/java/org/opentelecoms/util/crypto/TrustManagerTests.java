@@ -0,0 +1,404 @@
+
+package org.opentelecoms.util.crypto;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.X509TrustManager;
+
+import org.junit.Test;
+
+public class TrustManagerTests {
+
+	@Test
+	public void testPinnedHost() throws Exception {
+		// the delegate trusts nothing, so only the pin can accept the chain
+		PinningTrustManager tm = new PinningTrustManager(Fixtures.appending());
+		X509Certificate[] chain = Fixtures.chain("host", "intermediate");
+		tm.addPin("Host.Example.ORG", Fixtures.sha256(chain[0].getEncoded()));
+		assertTrue(tm.checkPinned(chain, "host.example.org"));
+		assertFalse(tm.checkPinned(chain, "other.example.org"));
+		Fixtures.handshake(tm, "host.example.org", 443);
+
+		tm.removePins("host.example.org");
+		tm.addPin("host.example.org", Fixtures.sha256(Fixtures.cert("other").getEncoded()));
+		try {
+			tm.checkPinned(chain, "host.example.org");
+			fail("a chain that doesn't match the pin was accepted");
+		} catch (CertificateException ce) {
+			// expected
+		}
+		try {
+			Fixtures.handshake(tm, "host.example.org", 443);
+			fail("a chain that doesn't match the pin was accepted");
+		} catch (SSLException ex) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testHexPin() throws Exception {
+		PinningTrustManager tm = new PinningTrustManager(Fixtures.appending());
+		X509Certificate[] chain = Fixtures.chain("host", "intermediate");
+		StringBuilder hex = new StringBuilder();
+		for(byte b : Fixtures.sha256(chain[0].getEncoded()))
+			hex.append(hex.length() == 0 ? "" : ":").append(String.format("%02X", b & 0xff));
+		tm.addPin("host.example.org", hex.toString());
+		assertTrue(tm.checkPinned(chain, "host.example.org"));
+	}
+
+	@Test
+	public void testUnpinnedHostIdentity() throws Exception {
+		// AppendingTrustManager is a plain X509TrustManager
+		PinningTrustManager tm = new PinningTrustManager(Fixtures.appending("ca"));
+		Fixtures.handshake(tm, "host.example.org", 443);
+		Fixtures.handshake(tm, "192.0.2.1", 443);
+		// no endpoint identification asked for
+		Fixtures.handshake(tm, null, 0);
+		try {
+			Fixtures.handshake(tm, "other.example.org", 443);
+			fail("a CA-valid certificate for another host was accepted");
+		} catch (SSLException ex) {
+			// expected
+		}
+		try {
+			Fixtures.handshake(tm, "192.0.2.2", 443);
+			fail("a CA-valid certificate for another address was accepted");
+		} catch (SSLException ex) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testVerifyHost() throws Exception {
+		X509Certificate host = Fixtures.cert("host");
+		EndpointIdentity.verifyHost(host, "HOST.example.org.");
+		EndpointIdentity.verifyHost(host, "192.0.2.1");
+		try {
+			EndpointIdentity.verifyHost(host, "example.org");
+			fail("a parent domain matched");
+		} catch (CertificateException ce) {
+			// expected
+		}
+		assertTrue(EndpointIdentity.matchName("a.example.org", "*.example.org"));
+		assertFalse(EndpointIdentity.matchName("a.b.example.org", "*.example.org"));
+		assertFalse(EndpointIdentity.matchName("example.org", "*.org"));
+	}
+
+	@Test
+	public void testVerdictCache() throws Exception {
+		TrustVerdictCache cache = new TrustVerdictCache(2, TrustVerdictCache.DEFAULT_MAX_AGE, 60000);
+		X509Certificate[] host = Fixtures.chain("host", "intermediate");
+		X509Certificate[] other = Fixtures.chain("other", "intermediate");
+		ByteBuffer hostKey = cache.key(host, "ECDHE_ECDSA", false);
+		ByteBuffer otherKey = cache.key(other, "ECDHE_ECDSA", false);
+		assertEquals(hostKey, cache.key(Fixtures.chain("host", "intermediate"), "ECDHE_ECDSA", false));
+		assertFalse(hostKey.equals(cache.key(host, "ECDHE_ECDSA", true)));
+		assertFalse(hostKey.equals(cache.key(host, "RSA", false)));
+		assertEquals(ByteBuffer.wrap(Fixtures.sha256(host[0].getEncoded())),
+				TrustVerdictCache.fingerprint(host[0]));
+
+		assertFalse(cache.check(hostKey));
+		long generation = cache.generation();
+		cache.trusted(hostKey, host, generation);
+		cache.rejected(otherKey, new CertificateException("Certificate revoked"), generation);
+		assertTrue(cache.check(hostKey));
+		try {
+			cache.check(otherKey);
+			fail("a rejected chain was accepted");
+		} catch (CertificateException ce) {
+			assertEquals("Certificate revoked", ce.getMessage());
+		}
+		assertEquals(2L, cache.getHits());
+		assertEquals(1L, cache.getMisses());
+
+		// the least recently used chain is dropped
+		cache.check(hostKey);
+		ByteBuffer clientKey = cache.key(host, "ECDHE_ECDSA", true);
+		cache.trusted(clientKey, host, generation);
+		assertEquals(2, cache.size());
+		assertTrue(cache.check(hostKey));
+		assertFalse(cache.check(otherKey));
+
+		// a verdict from before clear() is not stored
+		generation = cache.generation();
+		cache.clear();
+		assertEquals(0, cache.size());
+		cache.trusted(hostKey, host, generation);
+		cache.rejected(otherKey, new CertificateException(), generation);
+		assertEquals(0, cache.size());
+		cache.trusted(hostKey, host, cache.generation());
+		assertTrue(cache.check(hostKey));
+
+		// nothing is stored when the verdicts would expire at once
+		TrustVerdictCache uncached = new TrustVerdictCache(2, 0, 0);
+		uncached.trusted(hostKey, host, uncached.generation());
+		uncached.rejected(otherKey, new CertificateException(), uncached.generation());
+		assertEquals(0, uncached.size());
+	}
+
+	@Test
+	public void testIssuerIndex() throws Exception {
+		X509Certificate[] roots = Fixtures.chain("ca");
+		X509Certificate[] intermediates = Fixtures.chain("intermediate");
+		IssuerIndex index = new IssuerIndex(roots, intermediates);
+		// the issuer of the top of the chain decides
+		assertEquals(IssuerIndex.PRIMARY, index.route(Fixtures.chain("host", "intermediate")));
+		assertEquals(IssuerIndex.LOCAL, index.route(Fixtures.chain("host")));
+		// found by subject, as the root has no authority key identifier
+		assertEquals(IssuerIndex.PRIMARY, index.route(roots));
+		assertEquals(IssuerIndex.NONE, index.route(null));
+
+		index = new IssuerIndex(roots, roots);
+		assertEquals(IssuerIndex.BOTH, index.route(Fixtures.chain("host", "intermediate")));
+		index = new IssuerIndex(null, roots);
+		assertEquals(IssuerIndex.NONE, index.route(Fixtures.chain("other")));
+	}
+
+	@Test
+	public void testAcceptedIssuers() throws Exception {
+		AppendingTrustManager tm = new AppendingTrustManager(
+				AppendingTrustManager.localTrustManager(Fixtures.trustStore("ca", "intermediate")),
+				Fixtures.trustStore("intermediate", "ca"));
+		// ca and intermediate are in both stores
+		X509Certificate[] issuers = tm.getAcceptedIssuers();
+		assertEquals(2, issuers.length);
+		issuers[0] = null;
+		assertNotNull(tm.getAcceptedIssuers()[0]);
+
+		X509Certificate[] shared = tm.issuers();
+		assertSame(shared, tm.issuers());
+		tm.refresh();
+		assertFalse(shared == tm.issuers());
+		assertEquals(2, tm.issuers().length);
+
+		shared = tm.issuers();
+		tm.setLocalKeyStore(Fixtures.trustStore("other"));
+		assertFalse(shared == tm.issuers());
+		assertEquals(3, tm.getAcceptedIssuers().length);
+	}
+
+	private static void store(File f, String... names) throws Exception {
+		long modified = f.lastModified();
+		FileOutputStream out = new FileOutputStream(f);
+		try {
+			Fixtures.trustStore(names).store(out, "changeit".toCharArray());
+		} finally {
+			out.close();
+		}
+		// seen as a change even within the file system's timestamp granularity
+		f.setLastModified(modified + 2000);
+	}
+
+	private static void rejected(X509TrustManager tm, X509Certificate[] chain) {
+		try {
+			tm.checkServerTrusted(chain, "ECDHE_ECDSA");
+			fail("the chain was accepted");
+		} catch (CertificateException ce) {
+			// expected
+		}
+	}
+
+	/*
+	 * A ReloadingAppendingTrustManager whose primary trust manager only
+	 * trusts other, polled by hand.
+	 */
+	private static ReloadingAppendingTrustManager reloading(File f) throws Exception {
+		return new ReloadingAppendingTrustManager(
+				AppendingTrustManager.localTrustManager(Fixtures.trustStore("other")),
+				f, "JKS", "changeit".toCharArray(), 3600 * 1000L);
+	}
+
+	@Test
+	public void testReload() throws Exception {
+		File f = File.createTempFile("truststore", ".jks");
+		try {
+			store(f, "other");
+			ReloadingAppendingTrustManager tm = reloading(f);
+			X509Certificate[] chain = Fixtures.chain("host", "intermediate");
+			rejected(tm, chain);
+			tm.poll();
+			rejected(tm, chain);
+
+			store(f, "ca");
+			tm.poll();
+			tm.checkServerTrusted(chain, "ECDHE_ECDSA");
+			assertEquals(f.lastModified(), tm.lastModified);
+			tm.close();
+		} finally {
+			f.delete();
+		}
+	}
+
+	@Test
+	public void testReloadCorrupt() throws Exception {
+		File f = File.createTempFile("truststore", ".jks");
+		try {
+			store(f, "ca");
+			ReloadingAppendingTrustManager tm = reloading(f);
+			X509Certificate[] chain = Fixtures.chain("host", "intermediate");
+			tm.checkServerTrusted(chain, "ECDHE_ECDSA");
+
+			long modified = f.lastModified();
+			FileOutputStream out = new FileOutputStream(f);
+			out.write("not a keystore".getBytes("US-ASCII"));
+			out.close();
+			f.setLastModified(modified + 2000);
+			tm.poll();
+			// the previous store stays in use and the file is tried again
+			tm.checkServerTrusted(chain, "ECDHE_ECDSA");
+			assertEquals(modified, tm.lastModified);
+
+			store(f, "other");
+			tm.poll();
+			rejected(tm, chain);
+			tm.close();
+		} finally {
+			f.delete();
+		}
+	}
+
+	@Test
+	public void testStats() throws Exception {
+		TrustManagerStats stats = new TrustManagerStats();
+		AppendingTrustManager tm = new AppendingTrustManager(
+				AppendingTrustManager.localTrustManager(Fixtures.trustStore("ca")),
+				Fixtures.trustStore("intermediate"));
+		tm.setVerdictCache(new TrustVerdictCache());
+		tm.setMetrics(stats);
+		// a new client context each time, so the second is not resumed
+		Fixtures.handshake(tm, "host.example.org", 443);
+		Fixtures.handshake(tm, "host.example.org", 443);
+		// only the local store has the issuer of a chain without intermediate
+		tm.checkServerTrusted(Fixtures.chain("host"), "ECDHE_ECDSA");
+
+		AppendingTrustManager untrusting = Fixtures.appending("other");
+		untrusting.setMetrics(stats);
+		try {
+			Fixtures.handshake(untrusting, "host.example.org", 443);
+			fail("an untrusted chain was accepted");
+		} catch (SSLException ex) {
+			// expected
+		}
+
+		assertEquals(1L, stats.trusted[TrustManagerMetrics.PRIMARY].get());
+		assertEquals(1L, stats.getLocalTrusted());
+		assertEquals(1L, stats.trusted[TrustManagerMetrics.CACHE].get());
+		assertEquals(3L, stats.getTrusted());
+		assertEquals(1L, stats.getRejected());
+		assertEquals(Long.valueOf(1), stats.getRejectionReasons().get("ValidatorException"));
+		assertEquals(0L, stats.getClientChecks());
+		assertEquals(4L, stats.getServerChecks());
+		assertEquals(1L, stats.getCacheHits());
+		assertEquals(2L, stats.getCacheMisses());
+		assertEquals(1 / 3.0, stats.getCacheHitRatio(), 1e-9);
+
+		stats.reset();
+		assertEquals(0L, stats.getTrusted());
+		assertEquals(0.0, stats.getCacheHitRatio(), 0);
+		assertEquals(0L, stats.getLatencyPercentileMicros(50));
+	}
+
+	@Test
+	public void testLatencyBuckets() throws Exception {
+		assertEquals(0, TrustManagerStats.bucket(0));
+		assertEquals(1, TrustManagerStats.bucket(1));
+		assertEquals(2, TrustManagerStats.bucket(2));
+		assertEquals(2, TrustManagerStats.bucket(3));
+		assertEquals(3, TrustManagerStats.bucket(4));
+		assertEquals(38, TrustManagerStats.bucket((1L << 38) - 1));
+		assertEquals(39, TrustManagerStats.bucket(1L << 38));
+		assertEquals(39, TrustManagerStats.bucket(Long.MAX_VALUE));
+
+		TrustManagerStats stats = new TrustManagerStats();
+		// three checks of 1us, in bucket 1, and one of 1000us, in bucket 10
+		for(int i = 0; i < 3; i++)
+			stats.trusted(false, TrustManagerMetrics.PRIMARY, 1000);
+		stats.trusted(true, TrustManagerMetrics.PRIMARY, 1000000);
+		assertEquals(2L, stats.getLatencyPercentileMicros(0));
+		assertEquals(2L, stats.getLatencyPercentileMicros(75));
+		assertEquals(1024L, stats.getLatencyPercentileMicros(75.1));
+		assertEquals(1024L, stats.getLatencyPercentileMicros(100));
+		assertEquals(3L, stats.getLatencyHistogram()[1]);
+		assertEquals(1L, stats.getLatencyHistogram()[10]);
+		assertEquals(1000L, stats.getMaxLatencyMicros());
+		assertEquals(250.75, stats.getMeanLatencyMicros(), 1e-9);
+	}
+
+	@Test
+	public void testThrottledLog() throws Exception {
+		final List<String> records = new ArrayList<String>();
+		Handler handler = new Handler() {
+			public void publish(LogRecord record) {
+				records.add(record.getMessage());
+			}
+			public void flush() {
+			}
+			public void close() {
+			}
+		};
+		Logger logger = Logger.getLogger(TrustManagerTests.class.getName());
+		logger.addHandler(handler);
+		logger.setUseParentHandlers(false);
+		int sampleRate = ThrottledLog.sampleRate;
+		long intervalNanos = ThrottledLog.intervalNanos;
+		try {
+			ThrottledLog.configure(10, 3600 * 1000L);
+			ThrottledLog.Event event = ThrottledLog.event(TrustManagerTests.class,
+					Level.INFO, "throttled");
+			for(int i = 0; i < 25; i++)
+				event.log();
+			assertEquals(3, records.size());
+			assertEquals("throttled", records.get(0));
+			assertEquals("throttled (9 occurrences, 10 in total)", records.get(1));
+			assertEquals("throttled (10 occurrences, 20 in total)", records.get(2));
+
+			// only by time
+			ThrottledLog.configure(0, 50);
+			Thread.sleep(100);
+			event.log("detail");
+			event.log();
+			assertEquals(4, records.size());
+			assertEquals("throttled: detail (6 occurrences, 26 in total)", records.get(3));
+			assertEquals(Long.valueOf(27),
+					ThrottledLog.getCounts().get(TrustManagerTests.class.getName() + ": throttled"));
+		} finally {
+			ThrottledLog.sampleRate = sampleRate;
+			ThrottledLog.intervalNanos = intervalNanos;
+			logger.removeHandler(handler);
+			logger.setUseParentHandlers(true);
+		}
+	}
+
+	@Test
+	public void testResumptionCount() throws Exception {
+		SSLContextFactory factory = new SSLContextFactory(Fixtures.appending("ca"));
+		SSLContext clientContext = factory.createClientContext();
+		SSLContext serverContext = Fixtures.serverContext();
+		for(int i = 0; i < 3; i++) {
+			SSLEngine client = Fixtures.clientEngine(clientContext, "host.example.org", 443);
+			SSLEngine server = serverContext.createSSLEngine();
+			server.setUseClientMode(false);
+			Fixtures.handshake(client, server);
+			factory.handshakeCompleted(client.getSession());
+			factory.handshakeCompleted(server.getSession());
+		}
+		// whether the sessions were resumed by ID, ticket or pre-shared key
+		assertEquals(2L, factory.getFullHandshakes());
+		assertEquals(4L, factory.getResumedHandshakes());
+	}
+}
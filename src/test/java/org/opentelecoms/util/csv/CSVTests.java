@@ -0,0 +1,627 @@
+package org.opentelecoms.util.csv;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+public class CSVTests {
+
+	public static class Row {
+		final String name;
+		final int count;
+		final long total;
+		final BigDecimal price;
+
+		public Row(String name, int count, long total, BigDecimal price) {
+			this.name = name;
+			this.count = count;
+			this.total = total;
+			this.price = price;
+		}
+	}
+
+	public static class Pair {
+		final String name;
+		final long total;
+
+		public Pair(String name, long total) {
+			this.name = name;
+			this.total = total;
+		}
+	}
+
+	public static class Reading {
+		final String name;
+		final double value;
+
+		public Reading(String name, double value) {
+			this.name = name;
+			this.value = value;
+		}
+
+		public Reading(String name, float value) {
+			this(name, (double)value);
+		}
+	}
+
+	public static class Gauge {
+		final float level;
+		final double mean;
+
+		public Gauge(float level, double mean) {
+			this.level = level;
+			this.mean = mean;
+		}
+	}
+
+	static final Class<?>[] ROW_PARAMS = new Class<?>[] {
+		String.class, Integer.TYPE, Long.TYPE, BigDecimal.class };
+
+	static File write(String text) throws Exception {
+		File f = File.createTempFile("csvtest", ".csv");
+		f.deleteOnExit();
+		Writer w = new OutputStreamWriter(new FileOutputStream(f), "UTF-8");
+		w.write(text);
+		w.close();
+		return f;
+	}
+
+	/* Rows with quoted line breaks, commas and quotes, and CRLF endings */
+	static String sample(int rows) {
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < rows; i++) {
+			switch(i % 3) {
+			case 0:
+				sb.append("plain").append(i);
+				break;
+			case 1:
+				sb.append("\"line\nbreak, ").append(i).append('"');
+				break;
+			default:
+				sb.append("\"say \"\"").append(i).append("\"\"\"");
+			}
+			sb.append(',').append(i).append(',').append(i * 1000000000L).append(",1.5");
+			sb.append(i % 2 == 0 ? "\r\n" : "\n");
+		}
+		return sb.toString();
+	}
+
+	static String name(int i) {
+		switch(i % 3) {
+		case 0:
+			return "plain" + i;
+		case 1:
+			return "line\nbreak, " + i;
+		default:
+			return "say \"" + i + "\"";
+		}
+	}
+
+	@Test
+	public void testParallelLoad() throws Exception {
+		File f = write(sample(500));
+		ParallelCSVLoader<Row> loader = new ParallelCSVLoader<Row>(new CSVReader<Row>(Row.class, ROW_PARAMS));
+		// small chunks, so that many boundaries fall inside quoted fields
+		loader.setChunkSize(37);
+		List<Row> rows = loader.load(f);
+		assertEquals(500, rows.size());
+		for(int i = 0; i < 500; i++) {
+			Row r = rows.get(i);
+			assertEquals(name(i), r.name);
+			assertEquals(i, r.count);
+			assertEquals(i * 1000000000L, r.total);
+			assertEquals(new BigDecimal("1.5"), r.price);
+		}
+
+		rows = loader.load(f, new ForkJoinPool(3), false);
+		assertEquals(500, rows.size());
+
+		// a quote inside an unquoted field is just a char to the tokenizer,
+		// so it mustn't move the boundaries of the chunks after it
+		f = write("ab\"c,1,1,1\n" + sample(500));
+		MappedCSVSource in = new MappedCSVSource(f);
+		List<Row> sequential = new CSVReader<Row>(Row.class, ROW_PARAMS).readAll(in);
+		in.close();
+		rows = loader.load(f);
+		assertEquals(501, sequential.size());
+		assertEquals(501, rows.size());
+		assertEquals("ab\"c", rows.get(0).name);
+		for(int i = 1; i < 501; i++)
+			assertEquals(name(i - 1), rows.get(i).name);
+	}
+
+	@Test
+	public void testParallelLoadError() throws Exception {
+		File f = write("a,1,2,3\nb,x,2,3\n");
+		ParallelCSVLoader<Row> loader = new ParallelCSVLoader<Row>(new CSVReader<Row>(Row.class, ROW_PARAMS));
+		try {
+			loader.load(f);
+			fail("bad int accepted");
+		} catch (Exception ex) {
+			assertTrue(ex.getMessage(), ex.getMessage().indexOf("column 2") >= 0);
+		}
+	}
+
+	@Test
+	public void testMappedSource() throws Exception {
+		File f = write(sample(200) + "\nlast,-2147483648,-9223372036854775808,2");
+		CSVReader<Row> reader = new CSVReader<Row>(Row.class, ROW_PARAMS);
+		MappedCSVSource in = new MappedCSVSource(f);
+		// a tiny window, so that records are remapped and the window grows
+		in.windowSize = 8;
+		List<Row> rows = reader.readAll(in);
+		in.close();
+		assertEquals(201, rows.size());
+		for(int i = 0; i < 200; i++) {
+			Row r = rows.get(i);
+			assertEquals(name(i), r.name);
+			assertEquals(i, r.count);
+			assertEquals(i * 1000000000L, r.total);
+		}
+		Row r = rows.get(200);
+		assertEquals(Integer.MIN_VALUE, r.count);
+		assertEquals(Long.MIN_VALUE, r.total);
+
+		// too big for an int
+		f = write("a,2147483647,0,1\nb,2147483648,0,1\n");
+		in = new MappedCSVSource(f);
+		assertEquals(Integer.MAX_VALUE, reader.read(in).count);
+		try {
+			reader.read(in);
+			fail("int overflow accepted");
+		} catch (Exception ex) {
+			assertTrue(ex.getMessage(), ex.getMessage().indexOf("column 2") >= 0);
+		}
+		in.close();
+	}
+
+	@Test
+	public void testStream() throws Exception {
+		// more than one buffer of input, so records cross refills
+		String text = sample(3000);
+		assertTrue(text.length() > ReaderCSVSource.BUFFER_SIZE);
+		CSVReader<Row> reader = new CSVReader<Row>(Row.class, ROW_PARAMS);
+		Iterator<Row> it = reader.iterator(new StringReader(text));
+		for(int i = 0; i < 3000; i++) {
+			Row r = it.next();
+			assertEquals(name(i), r.name);
+			assertEquals(i * 1000000000L, r.total);
+		}
+		assertFalse(it.hasNext());
+
+		assertEquals(3000L, reader.stream(new StringReader(text)).parallel().count());
+		assertEquals(2999L * 3000 / 2, reader.stream(new StringReader(text)).parallel()
+				.mapToLong(r -> r.count).sum());
+	}
+
+	@Test
+	public void testProjectionAndFilter() throws Exception {
+		CSVReader<Pair> reader = new CSVReader<Pair>(Pair.class, new Class<?>[] { String.class, Long.TYPE });
+		reader.setProjection(0, 2);
+		reader.addFilter(0, CSVReader.startsWith("plain"));
+		// column 3 isn't a number, but it is never converted
+		String text = sample(300).replace(",1.5", ",x");
+
+		Iterator<Pair> it = reader.iterator(new StringReader(text));
+		for(int i = 0; i < 300; i += 3) {
+			Pair p = it.next();
+			assertEquals("plain" + i, p.name);
+			assertEquals(i * 1000000000L, p.total);
+		}
+		assertFalse(it.hasNext());
+
+		MappedCSVSource in = new MappedCSVSource(write(text));
+		assertEquals(100, reader.readAll(in).size());
+		in.close();
+
+		List<Pair> rows = reader.readAll(new BufferedReader(new StringReader(
+				"plain,x,1\nother,x,2\n\nplain2,x,3\n")));
+		assertEquals(2, rows.size());
+		assertEquals(3L, rows.get(1).total);
+	}
+
+	@Test
+	public void testColumns() throws Exception {
+		CSVColumns table = new CSVColumns(String.class, Long.TYPE, Double.TYPE);
+		table.setProjection(0, 2, 3);
+		String text = sample(3000);
+		assertEquals(3000, table.readAll(new StringReader(text)));
+		MappedCSVSource in = new MappedCSVSource(write(text));
+		assertEquals(3000, table.readAll(in));
+		in.close();
+		table.trim();
+		assertEquals(6000, table.size());
+		assertEquals(6000, table.getCodes(0).length);
+		for(int i = 0; i < 6000; i++) {
+			int row = i % 3000;
+			assertEquals(row * 1000000000L, table.getLongs(1)[i]);
+			assertEquals(1.5, table.getDoubles(2)[i], 0);
+		}
+		assertEquals("plain0", table.getString(0, 3000));
+		assertEquals("line\nbreak, 1", table.getString(0, 1));
+		assertEquals(name(2), table.getString(0, 2));
+		// each name twice, from the Reader and the mapped file
+		assertEquals(3000, table.getDictionary(0).length);
+		assertEquals(table.getCodes(0)[5], table.getCodes(0)[3005]);
+
+		// a record that fails adds nothing to the dictionary
+		table = new CSVColumns(String.class, Integer.TYPE);
+		try {
+			table.readAll(new StringReader("a,1\nb,x\n"));
+			fail("a bad int was accepted");
+		} catch (Exception e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("record 2, column 2"));
+		}
+		assertEquals(1, table.size());
+		assertEquals(1, table.getDictionary(0).length);
+	}
+
+	@Test
+	public void testFixedDateParser() throws Exception {
+		FixedDateParser p = new FixedDateParser("yyyy-MM-dd'T'HH:mm:ss.SSS", ZoneOffset.UTC);
+		SimpleDateFormat f = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS");
+		f.setTimeZone(TimeZone.getTimeZone("UTC"));
+		Random random = new Random(1);
+		for(int i = 0; i < 10000; i++) {
+			String s = f.format(new Date(random.nextLong() % (4000L * 365 * 86400000)));
+			// SimpleDateFormat uses the Julian calendar before 1582
+			if(s.length() == 23 && s.compareTo("1583") > 0) {
+				long ms = p.parseEpochMillis(s);
+				assertEquals(s, f.parse(s).getTime(), ms);
+				char[] buf = new char[23];
+				assertEquals(23, p.formatEpochMillis(ms, buf, 0));
+				assertEquals(s, new String(buf));
+			}
+		}
+		assertEquals(LocalDateTime.of(2012, 2, 29, 23, 59, 58, 999000000),
+				p.parseLocalDateTime("2012-02-29T23:59:58.999"));
+
+		p = new FixedDateParser(CSVReader.DEFAULT_DATE_FORMAT);
+		assertEquals(new SimpleDateFormat(CSVReader.DEFAULT_DATE_FORMAT).parse("01/03/2000").getTime(),
+				p.parseEpochMillis("01/03/2000"));
+		for(String bad : new String[] { "29/02/2011", "1/3/2000", "01-03-2000", "01/13/2000" }) {
+			try {
+				p.parseLocalDate(bad);
+				fail(bad + " accepted");
+			} catch (DateTimeParseException ex) {
+				// expected
+			}
+		}
+		try {
+			new FixedDateParser("d MMM yyyy");
+			fail("variable width pattern accepted");
+		} catch (IllegalArgumentException ex) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testWriter() throws Exception {
+		CSVReader<Row> reader = new CSVReader<Row>(Row.class, ROW_PARAMS);
+		List<Row> rows = new ArrayList<Row>();
+		Iterator<Row> it = reader.iterator(new StringReader(sample(20000)));
+		while(it.hasNext())
+			rows.add(it.next());
+		rows.add(new Row(null, Integer.MIN_VALUE, Long.MIN_VALUE, null));
+		String[] columns = { "name", "count", "total", "price" };
+
+		StringWriter sw = new StringWriter();
+		CSVWriter<Row> w = new CSVWriter<Row>(Row.class, columns, sw);
+		w.setLineSeparator("\n");
+		w.writeAll(rows.subList(0, 3));
+		w.close();
+		assertEquals("plain0,0,0,1.5\n\"line\nbreak, 1\",1,1000000000,1.5\n"
+				+ "\"say \"\"2\"\"\",2,2000000000,1.5\n", sw.toString());
+
+		File f = write("");
+		RandomAccessFile raf = new RandomAccessFile(f, "rw");
+		w = new CSVWriter<Row>(Row.class, columns, raf.getChannel());
+		w.writeAll(rows);
+		w.close();
+		List<Row> back = new ParallelCSVLoader<Row>(reader).load(f);
+		assertEquals(rows.size(), back.size());
+		for(int i = 0; i < 20000; i++) {
+			assertEquals(rows.get(i).name, back.get(i).name);
+			assertEquals(rows.get(i).total, back.get(i).total);
+		}
+		Row last = back.get(20000);
+		assertEquals("", last.name);
+		assertEquals(Integer.MIN_VALUE, last.count);
+		assertEquals(Long.MIN_VALUE, last.total);
+		assertNull(last.price);
+
+		// a high surrogate carried over by the flush still leaves room
+		// for a line separator as long as the buffer
+		f = write("");
+		raf = new RandomAccessFile(f, "rw");
+		w = new CSVWriter<Row>(Row.class, new String[] { "name" }, raf.getChannel());
+		w.buf = new char[2];
+		w.setLineSeparator("\r\n");
+		w.write(new Row("\ud83d", 0, 0, null));
+		w.close();
+		assertEquals("?\r\n", new String(Files.readAllBytes(f.toPath()), StandardCharsets.UTF_8));
+
+		// a float is written as a float, not widened to a double
+		sw = new StringWriter();
+		CSVWriter<Gauge> gauges = new CSVWriter<Gauge>(Gauge.class, new String[] { "level", "mean" }, sw);
+		gauges.setLineSeparator("\n");
+		gauges.write(new Gauge(0.1f, 0.1));
+		gauges.write(new Gauge(-1.5e-7f, 1e300));
+		gauges.close();
+		assertEquals("0.1,0.1\n-1.5E-7,1.0E300\n", sw.toString());
+	}
+
+	@Test
+	public void testPipelinedGzip() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		GZIPOutputStream gz = new GZIPOutputStream(bytes);
+		gz.write(sample(5000).getBytes(StandardCharsets.UTF_8));
+		gz.close();
+		byte[] data = bytes.toByteArray();
+
+		CSVReader<Row> reader = new CSVReader<Row>(Row.class, ROW_PARAMS);
+		// small buffers, so the reading thread waits for the parser
+		PipelinedReader in = new PipelinedReader(new InputStreamReader(
+				new GZIPInputStream(new ByteArrayInputStream(data)), StandardCharsets.UTF_8), 2, 100);
+		Iterator<Row> it = reader.iterator(in);
+		for(int i = 0; i < 5000; i++)
+			assertEquals(name(i), it.next().name);
+		assertFalse(it.hasNext());
+		in.close();
+
+		// a truncated file is an error after the rows before the break
+		in = PipelinedReader.gzip(new ByteArrayInputStream(data, 0, data.length / 2), StandardCharsets.UTF_8);
+		long n = 0;
+		try {
+			it = reader.iterator(in);
+			while(it.hasNext()) {
+				it.next();
+				n++;
+			}
+			fail("truncated input accepted");
+		} catch (UncheckedIOException ex) {
+			assertTrue(n > 0);
+		}
+
+		// a RuntimeException from the source is an error, not the end
+		PipelinedReader failing = new PipelinedReader(new Reader() {
+			int calls;
+
+			public int read(char[] cbuf, int off, int len) {
+				if(calls++ > 0)
+					throw new IllegalStateException("decoder failed");
+				cbuf[off] = 'a';
+				return 1;
+			}
+
+			public void close() {
+			}
+		});
+		assertEquals((int)'a', failing.read());
+		try {
+			failing.read();
+			fail("failed source read as the end of the input");
+		} catch (IOException ex) {
+			assertTrue(ex.getCause() instanceof IllegalStateException);
+		}
+	}
+
+	@Test
+	public void testPipelinedClose() throws Exception {
+		final CountDownLatch reading = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch closed = new CountDownLatch(1);
+		final Thread[] closedBy = new Thread[1];
+		// a source that is not safe to close during a read, nor interruptible
+		Reader source = new Reader() {
+			public int read(char[] cbuf, int off, int len) {
+				reading.countDown();
+				boolean interrupted = false;
+				while(true) {
+					try {
+						release.await();
+						break;
+					} catch (InterruptedException ex) {
+						interrupted = true;
+					}
+				}
+				if(interrupted)
+					Thread.currentThread().interrupt();
+				cbuf[off] = 'a';
+				return 1;
+			}
+
+			public void close() {
+				closedBy[0] = Thread.currentThread();
+				closed.countDown();
+			}
+		};
+		PipelinedReader in = new PipelinedReader(source, 2, 10);
+		assertTrue(reading.await(5, TimeUnit.SECONDS));
+		in.close();
+		assertEquals(1L, closed.getCount());
+		release.countDown();
+		assertTrue(closed.await(5, TimeUnit.SECONDS));
+		assertSame(in.thread, closedBy[0]);
+	}
+
+	static void append(File f, String text) throws Exception {
+		Writer w = new OutputStreamWriter(new FileOutputStream(f, true), "UTF-8");
+		w.write(text);
+		w.close();
+	}
+
+	@Test
+	public void testTailer() throws Exception {
+		CSVReader<Row> reader = new CSVReader<Row>(Row.class, ROW_PARAMS);
+		File f = write("a,1,1,1\n\"b\n");
+		File checkpoint = new File(f.getPath() + ".offset");
+		checkpoint.deleteOnExit();
+		final List<Row> rows = new ArrayList<Row>();
+		Consumer<Row> sink = new Consumer<Row>() {
+			public void accept(Row r) {
+				rows.add(r);
+			}
+		};
+
+		CSVTailer<Row> tailer = new CSVTailer<Row>(reader, f);
+		tailer.setCheckpoint(checkpoint);
+		// the second record is still in a quoted field
+		assertEquals(1, tailer.poll(sink));
+		assertEquals(8L, tailer.getOffset());
+		append(f, "c\",2,2,2");
+		assertEquals(0, tailer.poll(sink));
+		append(f, "\r\nd,3,3,3\n");
+		assertEquals(2, tailer.poll(sink));
+		assertEquals("b\nc", rows.get(1).name);
+		assertEquals(f.length(), tailer.getOffset());
+
+		// a new tailer resumes from the checkpoint
+		append(f, "e,4,4,4\n");
+		tailer = new CSVTailer<Row>(reader, f);
+		tailer.setCheckpoint(checkpoint);
+		assertEquals(1, tailer.poll(sink));
+		assertEquals("e", rows.get(3).name);
+
+		// a parse error is not hidden by a checkpoint that can't be saved
+		tailer.setCheckpoint(new File(f.getPath() + ".missing", "offset"));
+		append(f, "f,5,5,5\ng,x,1,1\n");
+		long offset = tailer.getOffset();
+		try {
+			tailer.poll(sink);
+			fail("a bad record was accepted");
+		} catch (IOException ex) {
+			fail("the parse error was replaced by " + ex);
+		} catch (Exception ex) {
+			assertEquals(1, ex.getSuppressed().length);
+			assertTrue(ex.getSuppressed()[0] instanceof IOException);
+		}
+		assertEquals("f", rows.get(4).name);
+		assertEquals(offset + 8, tailer.getOffset());
+
+		// rejects are numbered from the start of a rewritten file
+		final StringBuilder rejects = new StringBuilder();
+		reader.setErrorSink(new CSVErrorSink() {
+			public void reject(long record, int column, String reason) {
+				rejects.append(record).append(':').append(column).append(' ');
+			}
+		});
+		tailer = new CSVTailer<Row>(reader, f);
+		tailer.poll(sink);
+		assertEquals("6:2 ", rejects.toString());
+		Writer w = new OutputStreamWriter(new FileOutputStream(f), "UTF-8");
+		w.write("h,6,6,6\ni,x,1,1\n");
+		w.close();
+		rejects.setLength(0);
+		assertEquals(1, tailer.poll(sink));
+		assertEquals("2:2 ", rejects.toString());
+	}
+
+	@Test
+	public void testErrorSink() throws Exception {
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < 300; i++) {
+			if(i % 50 == 7)
+				sb.append("bad").append(i).append(",x,1,1\n");
+			else if(i % 50 == 21)
+				sb.append("short").append(i).append(",1\n");
+			else if(i % 50 == 33)
+				sb.append("price").append(i).append(",1,1,1.2.3\n");
+			else
+				sb.append("good").append(i).append(',').append(i).append(',').append(i).append(",1\n");
+		}
+		File f = write(sb.toString());
+		final StringBuilder rejects = new StringBuilder();
+		CSVReader<Row> reader = new CSVReader<Row>(Row.class, ROW_PARAMS);
+		reader.setErrorSink(new CSVErrorSink() {
+			public void reject(long record, int column, String reason) {
+				rejects.append(record).append(':').append(column).append(' ');
+			}
+		});
+		StringBuilder expected = new StringBuilder();
+		for(int i = 7; i < 300; i += 50)
+			expected.append(i + 1).append(":2 ").append(i + 15).append(":0 ").append(i + 27).append(":4 ");
+
+		MappedCSVSource in = new MappedCSVSource(f);
+		List<Row> rows = reader.readAll(in);
+		in.close();
+		assertEquals(282, rows.size());
+		assertEquals("good299", rows.get(281).name);
+		assertEquals(expected.toString(), rejects.toString());
+
+		rejects.setLength(0);
+		ParallelCSVLoader<Row> loader = new ParallelCSVLoader<Row>(reader);
+		loader.setChunkSize(100);
+		assertEquals(282, loader.load(f).size());
+		assertEquals(expected.toString(), rejects.toString());
+
+		rejects.setLength(0);
+		assertEquals(282L, reader.stream(new StringReader(sb.toString())).count());
+		assertEquals(expected.toString(), rejects.toString());
+	}
+
+	@Test
+	public void testDoubleParameter() throws Exception {
+		Class<?>[] params = new Class<?>[] { String.class, Double.TYPE };
+		CSVReader<Reading> reader = new CSVReader<Reading>(Reading.class, params);
+		File f = write("a,1.5\nb,\nc,-2e3\n");
+		MappedCSVSource in = new MappedCSVSource(f);
+		List<Reading> rows = reader.readAll(in);
+		in.close();
+		assertEquals(3, rows.size());
+		assertEquals(1.5, rows.get(0).value, 0);
+		assertEquals(0.0, rows.get(1).value, 0);
+		assertEquals(-2000.0, rows.get(2).value, 0);
+		assertEquals(1.5, reader.read(new BufferedReader(new StringReader("a,1.5\n"))).value, 0);
+
+		final StringBuilder rejects = new StringBuilder();
+		reader.setErrorSink(new CSVErrorSink() {
+			public void reject(long record, int column, String reason) {
+				rejects.append(record).append(':').append(column).append(' ');
+			}
+		});
+		assertEquals(2L, reader.stream(new StringReader("a,1\nb,x\nc,2\n")).count());
+		assertEquals("2:2 ", rejects.toString());
+
+		try {
+			new CSVReader<Reading>(Reading.class, new Class<?>[] { String.class, Float.TYPE });
+			fail("a float parameter was accepted");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
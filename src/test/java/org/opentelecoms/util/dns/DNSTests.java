@@ -3,8 +3,20 @@ package org.opentelecoms.util.dns;
 import static org.junit.Assert.*;
 
 import java.net.InetSocketAddress;
+import java.util.List;
 
 import org.junit.Test;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.ExtendedFlags;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.OPTRecord;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Resolver;
+import org.xbill.DNS.ResolverListener;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.TSIG;
 
 public class DNSTests {
 
@@ -26,5 +38,109 @@ public class DNSTests {
 		InetSocketAddress isa = new InetSocketAddress("stun-test.sip5060.net", 3478);
 		assertTrue(srh.contains(isa));
 	}
-	
+
+	@Test
+	public void testTLSA() {
+		assertEquals("_5061._tcp.sip.example.org.", TLSACache.name(5061, "TCP", "SIP.example.org"));
+		assertEquals("_443._tcp.example.org.", TLSACache.name(443, "tcp", "example.org."));
+
+		byte[] rdata = { 3, 1, 1, (byte)0xab, (byte)0xcd };
+		TLSAAssociation a = TLSAAssociation.fromWire(rdata);
+		assertEquals(TLSAAssociation.DANE_EE, a.getUsage());
+		assertEquals(TLSAAssociation.SPKI, a.getSelector());
+		assertEquals(TLSAAssociation.SHA256, a.getMatchingType());
+		assertTrue(a.matches(new byte[] { (byte)0xab, (byte)0xcd }));
+		assertEquals("3 1 1 abcd", a.toString());
+		assertNull(TLSAAssociation.fromWire(new byte[] { 3, 1, 1 }));
+	}
+
+	/*
+	 * Answers every query with rcode, the AD bit if authenticated and a
+	 * TLSA record for each of rdata.
+	 */
+	static class StubResolver implements Resolver {
+		int rcode = Rcode.NOERROR;
+		boolean authenticated = true;
+		byte[][] rdata = new byte[0][];
+		Message lastQuery;
+
+		public Message send(Message query) {
+			lastQuery = query;
+			Message response = new Message(query.getHeader().getID());
+			response.getHeader().setFlag(Flags.QR);
+			if(authenticated)
+				response.getHeader().setFlag(Flags.AD);
+			response.getHeader().setRcode(rcode);
+			Record question = query.getQuestion();
+			response.addRecord(question, Section.QUESTION);
+			for(byte[] r : rdata)
+				response.addRecord(Record.newRecord(question.getName(), TLSACache.TYPE_TLSA,
+						DClass.IN, 300, r), Section.ANSWER);
+			return response;
+		}
+
+		public Object sendAsync(Message query, ResolverListener listener) {
+			throw new UnsupportedOperationException();
+		}
+
+		public void setPort(int port) {
+		}
+
+		public void setTCP(boolean flag) {
+		}
+
+		public void setIgnoreTruncation(boolean flag) {
+		}
+
+		public void setEDNS(int level) {
+		}
+
+		@SuppressWarnings("rawtypes")
+		public void setEDNS(int level, int payloadSize, int flags, List options) {
+		}
+
+		public void setTSIGKey(TSIG key) {
+		}
+
+		public void setTimeout(int secs, int msecs) {
+		}
+
+		public void setTimeout(int secs) {
+		}
+	}
+
+	@Test
+	public void testTLSACache() throws Exception {
+		StubResolver resolver = new StubResolver();
+		resolver.rdata = new byte[][] { { 3, 1, 1, (byte)0xab }, { 2, 0, 1, (byte)0xcd } };
+		TLSACache cache = new TLSACache();
+		cache.setResolver(resolver);
+		List<TLSAAssociation> records = cache.lookup(443, "tcp", "example.org");
+		assertEquals(2, records.size());
+		assertEquals("3 1 1 ab", records.get(0).toString());
+		assertEquals("_443._tcp.example.org.", resolver.lastQuery.getQuestion().getName().toString());
+		assertTrue(resolver.lastQuery.getHeader().getFlag(Flags.AD));
+		OPTRecord opt = resolver.lastQuery.getOPT();
+		assertTrue(opt != null && (opt.getFlags() & ExtendedFlags.DO) != 0);
+		// cached
+		resolver.lastQuery = null;
+		assertSame(records, cache.lookup(443, "tcp", "example.org"));
+		assertNull(resolver.lastQuery);
+
+		// an answer the resolver didn't validate must not be used
+		resolver.authenticated = false;
+		assertEquals(0, cache.lookup(443, "tcp", "unsigned.example.org").size());
+
+		resolver.authenticated = true;
+		resolver.rcode = Rcode.NXDOMAIN;
+		resolver.rdata = new byte[0][];
+		assertEquals(0, cache.lookup(443, "tcp", "missing.example.org").size());
+
+		// failures are reported and not cached
+		resolver.rcode = Rcode.SERVFAIL;
+		assertNull(cache.lookup(443, "tcp", "bogus.example.org"));
+		resolver.rcode = Rcode.NOERROR;
+		resolver.rdata = new byte[][] { { 3, 0, 0, 1 } };
+		assertEquals(1, cache.lookup(443, "tcp", "bogus.example.org").size());
+	}
 }
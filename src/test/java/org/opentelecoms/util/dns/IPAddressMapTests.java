@@ -0,0 +1,108 @@
+
+
+package org.opentelecoms.util.dns;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class IPAddressMapTests {
+
+	@Test
+	public void testIPv4Counters() {
+		IPv4AddressMap<String> m = new IPv4AddressMap<String>();
+		int key = IPv4AddressMap.toKey(IPAddressUtil.textToNumericFormatV4("192.168.1.1"));
+		assertEquals(1L, m.increment(key));
+		assertEquals(3L, m.add(key, 2));
+		assertEquals(3L, m.getCount(key));
+		assertEquals(1, m.size());
+		assertNull(m.get(key));
+		assertEquals("192.168.1.1", m.computeIfAbsent(key, new IPv4AddressMap.ValueFactory<String>() {
+			public String create(int address) {
+				return "192.168.1.1";
+			}
+		}));
+		assertEquals("192.168.1.1", m.get(key));
+	}
+
+	@Test
+	public void testIPv4ZeroAddress() {
+		IPv4AddressMap<String> m = new IPv4AddressMap<String>();
+		m.put(0, "any");
+		m.increment(0);
+		assertTrue(m.containsKey(0));
+		assertEquals("any", m.get(0));
+		assertEquals(1L, m.getCount(0));
+		assertEquals("any", m.remove(0));
+		assertFalse(m.containsKey(0));
+		assertEquals(0, m.size());
+	}
+
+	// Compare against a HashMap while adding and removing at random
+	@Test
+	public void testIPv4AgainstHashMap() {
+		Random random = new Random(1);
+		IPv4AddressMap<Object> m = new IPv4AddressMap<Object>();
+		Map<Integer, Long> ref = new HashMap<Integer, Long>();
+		for(int i = 0; i < 100000; i++) {
+			int key = random.nextInt(5000) - 10;
+			if(random.nextInt(3) == 0) {
+				m.remove(key);
+				ref.remove(key);
+			} else {
+				m.increment(key);
+				Long v = ref.get(key);
+				ref.put(key, v == null ? 1 : v + 1);
+			}
+		}
+		assertEquals(ref.size(), m.size());
+		for(Map.Entry<Integer, Long> e : ref.entrySet())
+			assertEquals(e.getValue().longValue(), m.getCount(e.getKey()));
+	}
+
+	@Test
+	public void testIPv6() {
+		byte[] addr = IPAddressUtil.textToNumericFormatV6("2001:db8::1");
+		long high = IPv6AddressMap.highBits(addr);
+		long low = IPv6AddressMap.lowBits(addr);
+		assertEquals(0x20010db800000000L, high);
+		assertEquals(1L, low);
+
+		IPv6AddressMap<String> m = new IPv6AddressMap<String>(4);
+		for(int i = 0; i < 1000; i++)
+			m.increment(high, i);
+		assertEquals(1000, m.size());
+		assertEquals(1L, m.getCount(high, low));
+		for(int i = 0; i < 1000; i += 2)
+			m.remove(high, i);
+		assertEquals(500, m.size());
+		assertFalse(m.containsKey(high, 0));
+		assertTrue(m.containsKey(high, 1));
+		assertTrue(java.util.Arrays.equals(addr, IPv6AddressMap.toAddress(high, low)));
+	}
+
+	@Test
+	public void testConcurrentIncrement() throws InterruptedException {
+		final ConcurrentIPv4AddressMap<Object> m = new ConcurrentIPv4AddressMap<Object>();
+		Thread[] threads = new Thread[4];
+		for(int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread() {
+				public void run() {
+					for(int i = 0; i < 10000; i++)
+						m.increment(i % 100);
+				}
+			};
+			threads[t].start();
+		}
+		for(Thread t : threads)
+			t.join();
+		assertEquals(100, m.size());
+		for(int i = 0; i < 100; i++)
+			assertEquals(400L, m.getCount(i));
+	}
+
+}
@@ -0,0 +1,168 @@
+
+
+package org.opentelecoms.util.dns;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+public class IPAddressParsingTests {
+
+	static final String[] LITERALS = {
+		"192.168.1.1", "10.1", "::1", "fe80::1%eth0", "::ffff:1.2.3.4",
+		"1:2:3:4:5:6:7:8", "2001:db8::1.2.3.4", "", "1.2.3.256", "1::2::3",
+		"fe80::1%", "12345::", "4294967295", "sip.example.com"
+	};
+
+	// The batch parser must agree with IPAddressUtil on every literal
+	@Test
+	public void testBatchMatchesIPAddressUtil() {
+		IPAddressBatchParser.Result r = IPAddressBatchParser.parse(LITERALS);
+		assertEquals(LITERALS.length, r.size());
+		for(int i = 0; i < LITERALS.length; i++) {
+			String s = LITERALS[i];
+			byte[] addr = s.indexOf(':') < 0 ?
+				IPAddressUtil.textToNumericFormatV4(s) :
+				IPAddressUtil.textToNumericFormatV6(s);
+			assertEquals(s, Boolean.valueOf(addr != null), Boolean.valueOf(r.isValid(i)));
+			if(addr == null)
+				continue;
+			if(addr.length == 4) {
+				assertTrue(s, r.isIPv4(i));
+				assertEquals(s, Integer.valueOf(IPv4AddressMap.toKey(addr)),
+					Integer.valueOf(r.getIPv4(i)));
+			} else {
+				assertTrue(s, r.isIPv6(i));
+				assertEquals(s, Long.valueOf(IPv6AddressMap.highBits(addr)),
+					Long.valueOf(r.getHigh(i)));
+				assertEquals(s, Long.valueOf(IPv6AddressMap.lowBits(addr)),
+					Long.valueOf(r.getLow(i)));
+			}
+		}
+	}
+
+	@Test
+	public void testParallelBatch() {
+		String[] src = new String[100000];
+		for(int i = 0; i < src.length; i++)
+			src[i] = (i % 3 == 0) ? "bad" : ("10.0." + (i % 256) + ".1");
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			IPAddressBatchParser.Result r = IPAddressBatchParser.parse(src, pool);
+			assertEquals(src.length - (src.length + 2) / 3, r.validCount());
+			assertFalse(r.isValid(3));
+			assertTrue(r.isValid(4));
+			assertEquals(0x0a000401, r.getIPv4(4));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void testDelimitedBatch() {
+		char[] buf = "1.2.3.4\r\n::1\nbad\n\n10.0.0.1\n".toCharArray();
+		IPAddressBatchParser.Result r = IPAddressBatchParser.parse(buf, 0, buf.length, '\n');
+		assertEquals(5, r.size());
+		assertTrue(r.isIPv4(0));
+		assertTrue(r.isIPv6(1));
+		assertFalse(r.isValid(2));
+		assertFalse(r.isValid(3));
+		assertTrue(r.isIPv4(4));
+	}
+
+	@Test
+	public void testNormalizeEmbeddedIPv4() {
+		IPAddressNormalizer n = new IPAddressNormalizer();
+		String[] forms = { "64:ff9b::192.0.2.33", "2002:c000:0221::1", "::192.0.2.33" };
+		int[] kinds = { IPAddressNormalizer.NAT64, IPAddressNormalizer.SIX_TO_FOUR,
+			IPAddressNormalizer.IPV4_COMPATIBLE };
+		for(int i = 0; i < forms.length; i++) {
+			byte[] addr = IPAddressUtil.textToNumericFormatV6(forms[i]);
+			long[] key = { IPv6AddressMap.highBits(addr), IPv6AddressMap.lowBits(addr) };
+			assertEquals(forms[i], Long.valueOf(0xc0000221L),
+				Long.valueOf(n.embeddedIPv4(key[0], key[1])));
+			assertEquals(forms[i], Integer.valueOf(kinds[i]), Integer.valueOf(n.normalize(key)));
+			assertEquals(0L, key[0]);
+			assertEquals(0xffffc0000221L, key[1]);
+			n.normalize(addr);
+			assertTrue(forms[i], java.util.Arrays.equals(new byte[] {
+				0, 0, 0, 0, 0, 0, 0, 0, 0, 0, (byte)0xff, (byte)0xff,
+				(byte)192, 0, 2, 33 }, addr));
+		}
+	}
+
+	@Test
+	public void testNormalizeNative() {
+		IPAddressNormalizer n = new IPAddressNormalizer();
+		long[] key = new long[2];
+		String[] natives = { "::", "::1", "2001:db8::1", "64:ff9c::1.2.3.4" };
+		for(String s : natives) {
+			assertTrue(IPLiteralParser.parseIPv6(s, 0, s.length(), key));
+			assertEquals(s, Integer.valueOf(IPAddressNormalizer.NATIVE), Integer.valueOf(n.normalize(key)));
+			assertEquals(s, Long.valueOf(-1), Long.valueOf(n.embeddedIPv4(key[0], key[1])));
+		}
+
+		String nsp = "2001:db8:64::198.51.100.1";
+		assertTrue(IPLiteralParser.parseIPv6(nsp, 0, nsp.length(), key));
+		assertEquals(Long.valueOf(-1), Long.valueOf(n.embeddedIPv4(key[0], key[1])));
+		n.addNAT64Prefix(IPAddressUtil.textToNumericFormatV6("2001:db8:64::"));
+		assertEquals(Long.valueOf(0xc6336401L), Long.valueOf(n.embeddedIPv4(key[0], key[1])));
+	}
+
+	@Test
+	public void testHostPort() {
+		HostPort hp = new HostPort();
+
+		assertTrue(hp.parse("[2001:db8::1]:5061"));
+		assertEquals(HostPort.IPV6, hp.getKind());
+		assertEquals(5061, hp.getPort());
+		assertEquals("2001:db8::1", hp.getHost());
+		assertFalse(hp.hasZone());
+
+		assertTrue(hp.parse("fe80::1%eth0"));
+		assertEquals(HostPort.IPV6, hp.getKind());
+		assertEquals(HostPort.NO_PORT, hp.getPort());
+		assertEquals("eth0", hp.getZone());
+		assertEquals(-1, hp.getScopeId());
+
+		assertTrue(hp.parse("[fe80::1%2]:5060"));
+		assertEquals(2, hp.getScopeId());
+		assertEquals(5060, hp.getPort());
+
+		assertTrue(hp.parse("192.0.2.1:5060"));
+		assertEquals(HostPort.IPV4, hp.getKind());
+		assertEquals(0xc0000201, hp.getIPv4());
+		assertEquals(5060, hp.getPort());
+
+		assertTrue(hp.parse("sip.example.com"));
+		assertEquals(HostPort.HOSTNAME, hp.getKind());
+		assertEquals(5060, hp.getPort(5060));
+		assertEquals("sip.example.com", hp.getHost());
+
+		String[] bad = { "", "[::1", "[::1]5060", "host:", "host:65536",
+			"fe80::1%", "[::1]:x", "bad host", "1::2::3" };
+		for(String s : bad) {
+			assertFalse(s, hp.parse(s));
+			assertEquals(s, HostPort.INVALID, hp.getKind());
+			assertEquals(s, HostPort.NO_PORT, hp.getPort());
+		}
+	}
+
+	// PTR names must match those built by dnsjava's ReverseMap
+	@Test
+	public void testPTRName() {
+		char[] buf = new char[PTRName.MAX_LENGTH];
+		String[] literals = { "192.0.2.1", "10.0.0.255", "2001:db8::567:89ab" };
+		for(String s : literals) {
+			byte[] addr = s.indexOf(':') < 0 ?
+				IPAddressUtil.textToNumericFormatV4(s) :
+				IPAddressUtil.textToNumericFormatV6(s);
+			int len = PTRName.write(addr, buf, 0);
+			assertEquals(s, org.xbill.DNS.ReverseMap.fromAddress(addr).toString(),
+				new String(buf, 0, len));
+		}
+	}
+
+}